@@ -47,6 +47,17 @@ public class OidcProperties {
          */
         private int maxCodeChallengeLength = 128;
 
+        /**
+         * Hard cap on outstanding authorization codes held in memory
+         * When reached, the code closest to expiry is evicted
+         */
+        private int maxAuthCodes = 100_000;
+
+        /**
+         * Hard cap on pending transactions cached by txnId (branding/resume lookup)
+         */
+        private int maxCachedTransactions = 100_000;
+
         public boolean isAllowHttpRedirectUrisForLocalhost() {
             return allowHttpRedirectUrisForLocalhost;
         }
@@ -102,6 +113,22 @@ public class OidcProperties {
         public void setMaxCodeChallengeLength(int maxCodeChallengeLength) {
             this.maxCodeChallengeLength = maxCodeChallengeLength;
         }
+
+        public int getMaxAuthCodes() {
+            return maxAuthCodes;
+        }
+
+        public void setMaxAuthCodes(int maxAuthCodes) {
+            this.maxAuthCodes = maxAuthCodes;
+        }
+
+        public int getMaxCachedTransactions() {
+            return maxCachedTransactions;
+        }
+
+        public void setMaxCachedTransactions(int maxCachedTransactions) {
+            this.maxCachedTransactions = maxCachedTransactions;
+        }
     }
 
     public String getIssuer() {
@@ -26,7 +26,8 @@ import java.time.Duration;
  * - We create our own HazelcastInstance bean here for explicit control
  * - Embedded mode: single-node Hazelcast running in same JVM
  * - Works for both local development and Render single-container deployment
- * - For multi-instance clustering on Render, additional network config needed
+ * - For multi-instance clustering, set HAZELCAST_MEMBERS to the replicas' addresses
+ *   (TCP/IP join); required when oidc.auth-code-store.type=hazelcast runs on several nodes
  * 
  * Session storage: Hazelcast in-memory distributed map
  * DO NOT switch to JDBC session storage - keep Hazelcast!
@@ -46,6 +47,9 @@ public class SessionConfig {
     @Value("${session.timeout:1800}")
     private int sessionTimeoutSeconds;
 
+    @Value("${hazelcast.members:}")
+    private String hazelcastMembers;
+
     /**
      * Creates HazelcastInstance bean for Spring Session.
      * This is the ONLY place where HazelcastInstance is created.
@@ -106,13 +110,25 @@ public class SessionConfig {
         joinConfig.getMulticastConfig().setEnabled(false);
         joinConfig.getTcpIpConfig().setEnabled(false);
         joinConfig.getAutoDetectionConfig().setEnabled(false);
-        logger.info("[HAZELCAST-CONFIG] Cluster join: DISABLED (single-node embedded)");
-        
-        // Auto-assign available port (avoids conflicts on Render)
-        networkConfig.setPort(0);
-        networkConfig.setPortAutoIncrement(true);
-        networkConfig.setPortCount(100);
-        logger.info("[HAZELCAST-CONFIG] Network port: auto-assign (0)");
+
+        if (hazelcastMembers != null && !hazelcastMembers.isBlank()) {
+            // Multi-replica: explicit TCP/IP member list on the default Hazelcast port
+            for (String member : hazelcastMembers.split(",")) {
+                joinConfig.getTcpIpConfig().addMember(member.trim());
+            }
+            joinConfig.getTcpIpConfig().setEnabled(true);
+            networkConfig.setPort(5701);
+            networkConfig.setPortAutoIncrement(true);
+            logger.info("[HAZELCAST-CONFIG] Cluster join: TCP/IP, members={}", hazelcastMembers);
+        } else {
+            logger.info("[HAZELCAST-CONFIG] Cluster join: DISABLED (single-node embedded)");
+
+            // Auto-assign available port (avoids conflicts on Render)
+            networkConfig.setPort(0);
+            networkConfig.setPortAutoIncrement(true);
+            networkConfig.setPortCount(100);
+            logger.info("[HAZELCAST-CONFIG] Network port: auto-assign (0)");
+        }
         
         // Disable REST API for security
         networkConfig.getRestApiConfig().setEnabled(false);
@@ -0,0 +1,181 @@
+package ch.nullprofile.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "usage.metering")
+public class UsageMeteringProperties {
+
+    /**
+     * What to do when the event queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * Drop the event immediately (login latency is never affected)
+         */
+        DROP,
+        /**
+         * Wait up to offerTimeoutMillis for space, then drop
+         */
+        BLOCK
+    }
+
+    /**
+     * How monthly active users are counted
+     */
+    public enum MauMode {
+        /**
+         * COUNT(DISTINCT user_id) over monthly_active_users
+         */
+        EXACT,
+        /**
+         * HyperLogLog sketches per (RP, month) in mau_sketches, within sketchRelativeError. The
+         * monthly_active_users rows are still written: retention and active-recently need them.
+         */
+        SKETCH
+    }
+
+    /**
+     * Maximum number of metering events buffered in memory
+     */
+    private int queueCapacity = 10_000;
+
+    /**
+     * Maximum number of events written per flush
+     */
+    private int batchSize = 500;
+
+    /**
+     * Longest time an event waits in the queue before it is flushed
+     */
+    private long flushIntervalMillis = 1000;
+
+    /**
+     * Back-pressure behaviour when the queue is full
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    /**
+     * Maximum wait for queue space under the BLOCK policy
+     */
+    private long offerTimeoutMillis = 50;
+
+    /**
+     * Maximum time spent draining the queue on shutdown
+     */
+    private long shutdownTimeoutMillis = 10_000;
+
+    /**
+     * How often accumulated auth counter deltas are written to rp_monthly_counters
+     */
+    private long counterFlushIntervalMillis = 5000;
+
+    /**
+     * Source of MAU figures on the usage dashboard
+     */
+    private MauMode mauMode = MauMode.EXACT;
+
+    /**
+     * Target relative standard error of sketch-based MAU (0.01 = 1%, about 16 KB per RP and month)
+     */
+    private double sketchRelativeError = 0.01;
+
+    /**
+     * How often changed MAU sketches are merged into mau_sketches
+     */
+    private long sketchFlushIntervalMillis = 10_000;
+
+    /**
+     * How often newly active users are merged into the per-RP user bitmaps in mau_bitmaps
+     */
+    private long bitmapFlushIntervalMillis = 10_000;
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public long getOfferTimeoutMillis() {
+        return offerTimeoutMillis;
+    }
+
+    public void setOfferTimeoutMillis(long offerTimeoutMillis) {
+        this.offerTimeoutMillis = offerTimeoutMillis;
+    }
+
+    public long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    public long getCounterFlushIntervalMillis() {
+        return counterFlushIntervalMillis;
+    }
+
+    public void setCounterFlushIntervalMillis(long counterFlushIntervalMillis) {
+        this.counterFlushIntervalMillis = counterFlushIntervalMillis;
+    }
+
+    public MauMode getMauMode() {
+        return mauMode;
+    }
+
+    public void setMauMode(MauMode mauMode) {
+        this.mauMode = mauMode;
+    }
+
+    public double getSketchRelativeError() {
+        return sketchRelativeError;
+    }
+
+    public void setSketchRelativeError(double sketchRelativeError) {
+        this.sketchRelativeError = sketchRelativeError;
+    }
+
+    public long getSketchFlushIntervalMillis() {
+        return sketchFlushIntervalMillis;
+    }
+
+    public void setSketchFlushIntervalMillis(long sketchFlushIntervalMillis) {
+        this.sketchFlushIntervalMillis = sketchFlushIntervalMillis;
+    }
+
+    public long getBitmapFlushIntervalMillis() {
+        return bitmapFlushIntervalMillis;
+    }
+
+    public void setBitmapFlushIntervalMillis(long bitmapFlushIntervalMillis) {
+        this.bitmapFlushIntervalMillis = bitmapFlushIntervalMillis;
+    }
+}
@@ -6,6 +6,8 @@ import ch.nullprofile.repository.RelyingPartyRepository;
 import ch.nullprofile.repository.UserRepository;
 import ch.nullprofile.repository.WebAuthnCredentialRepository;
 import ch.nullprofile.service.OidcSessionTransactionService;
+import ch.nullprofile.service.RelyingPartyRegistry;
+import ch.nullprofile.service.UsageRollupService;
 import jakarta.servlet.http.HttpSession;
 import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
@@ -28,18 +30,24 @@ public class AccountController {
     private final WebAuthnCredentialRepository credentialRepository;
     private final RelyingPartyRepository relyingPartyRepository;
     private final RedirectUriRepository redirectUriRepository;
+    private final RelyingPartyRegistry relyingPartyRegistry;
+    private final UsageRollupService usageRollupService;
 
     public AccountController(
             OidcSessionTransactionService sessionService,
             UserRepository userRepository,
             WebAuthnCredentialRepository credentialRepository,
             RelyingPartyRepository relyingPartyRepository,
-            RedirectUriRepository redirectUriRepository) {
+            RedirectUriRepository redirectUriRepository,
+            RelyingPartyRegistry relyingPartyRegistry,
+            UsageRollupService usageRollupService) {
         this.sessionService = sessionService;
         this.userRepository = userRepository;
         this.credentialRepository = credentialRepository;
         this.relyingPartyRepository = relyingPartyRepository;
         this.redirectUriRepository = redirectUriRepository;
+        this.relyingPartyRegistry = relyingPartyRegistry;
+        this.usageRollupService = usageRollupService;
     }
 
     /**
@@ -80,6 +88,8 @@ public class AccountController {
                 int uris = redirectUriRepository.findByRelyingPartyId(rp.getId()).size();
                 redirectUriRepository.deleteByRelyingPartyId(rp.getId());
                 redirectUrisDeleted += uris;
+                relyingPartyRegistry.invalidateAfterCommit(rp.getRpId());
+                usageRollupService.evict(rp.getId());
             }
             
             // Delete relying parties
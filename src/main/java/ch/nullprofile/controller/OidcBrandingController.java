@@ -1,9 +1,9 @@
 package ch.nullprofile.controller;
 
 import ch.nullprofile.dto.OidcTransaction;
-import ch.nullprofile.entity.RelyingParty;
-import ch.nullprofile.repository.RelyingPartyRepository;
+import ch.nullprofile.dto.RelyingPartySnapshot;
 import ch.nullprofile.service.OidcSessionTransactionService;
+import ch.nullprofile.service.RelyingPartyRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -25,13 +25,13 @@ public class OidcBrandingController {
     private static final Logger logger = LoggerFactory.getLogger(OidcBrandingController.class);
 
     private final OidcSessionTransactionService sessionService;
-    private final RelyingPartyRepository relyingPartyRepository;
+    private final RelyingPartyRegistry relyingPartyRegistry;
 
     public OidcBrandingController(
             OidcSessionTransactionService sessionService,
-            RelyingPartyRepository relyingPartyRepository) {
+            RelyingPartyRegistry relyingPartyRegistry) {
         this.sessionService = sessionService;
-        this.relyingPartyRepository = relyingPartyRepository;
+        this.relyingPartyRegistry = relyingPartyRegistry;
     }
 
     /**
@@ -55,32 +55,32 @@ public class OidcBrandingController {
         OidcTransaction txn = txnOpt.get();
 
         // Get relying party by client_id (rpId)
-        Optional<RelyingParty> rpOpt = relyingPartyRepository.findByRpId(txn.rpId());
+        Optional<RelyingPartySnapshot> rpOpt = relyingPartyRegistry.find(txn.rpId());
         if (rpOpt.isEmpty()) {
             logger.warn("Relying party not found: rpId={}", txn.rpId());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
 
-        RelyingParty rp = rpOpt.get();
+        RelyingPartySnapshot rp = rpOpt.get();
 
         // Build branding response
         Map<String, String> branding = new HashMap<>();
-        branding.put("rpName", rp.getRpName());
-        branding.put("displayName", rp.getRpName()); // Use rpName as displayName
+        branding.put("rpName", rp.rpName());
+        branding.put("displayName", rp.rpName()); // Use rpName as displayName
         
-        if (rp.getBrandingPrimaryColor() != null && !rp.getBrandingPrimaryColor().isBlank()) {
-            branding.put("primaryColor", rp.getBrandingPrimaryColor());
+        if (rp.brandingPrimaryColor() != null && !rp.brandingPrimaryColor().isBlank()) {
+            branding.put("primaryColor", rp.brandingPrimaryColor());
         }
         
-        if (rp.getBrandingSecondaryColor() != null && !rp.getBrandingSecondaryColor().isBlank()) {
-            branding.put("secondaryColor", rp.getBrandingSecondaryColor());
+        if (rp.brandingSecondaryColor() != null && !rp.brandingSecondaryColor().isBlank()) {
+            branding.put("secondaryColor", rp.brandingSecondaryColor());
         }
         
-        if (rp.getBrandingLogoUrl() != null && !rp.getBrandingLogoUrl().isBlank()) {
-            branding.put("logoUrl", rp.getBrandingLogoUrl());
+        if (rp.brandingLogoUrl() != null && !rp.brandingLogoUrl().isBlank()) {
+            branding.put("logoUrl", rp.brandingLogoUrl());
         }
 
-        logger.info("Returning branding for RP: rpName={}", rp.getRpName());
+        logger.info("Returning branding for RP: rpName={}", rp.rpName());
 
         return ResponseEntity.ok(branding);
     }
@@ -2,40 +2,123 @@ package ch.nullprofile.controller;
 
 import ch.nullprofile.dto.OidcDiscoveryResponse;
 import ch.nullprofile.service.JwtService;
-import com.nimbusds.jose.jwk.JWK;
+import ch.nullprofile.service.SigningKeysChangedEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JWSAlgorithm;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.CacheControl;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * Discovery document and JWKS, rendered to bytes once and served from memory.
+ *
+ * Both carry a strong ETag (a SHA-256 of the bytes) and Cache-Control max-age; Spring answers a
+ * matching If-None-Match with 304. The discovery document only depends on configuration; the JWKS
+ * is re-rendered when {@link SigningKeysChangedEvent} reports a rotation or an expired key.
+ * Its max-age is kept short of the signing-key publish-ahead time, so a cached copy always
+ * contains the key that signs next.
+ */
 @RestController
 public class OidcDiscoveryController {
 
-    @Value("${oidc.issuer}")
-    private String issuer;
-
+    private final String issuer;
     private final JwtService jwtService;
+    private final ObjectMapper objectMapper;
+    private final CacheControl discoveryCacheControl;
+    private final CacheControl jwksCacheControl;
+
+    private volatile Document discovery;
+    private volatile Document jwks;
 
-    public OidcDiscoveryController(JwtService jwtService) {
+    public OidcDiscoveryController(
+            @Value("${oidc.issuer}") String issuer,
+            @Value("${oidc.discovery.max-age-seconds:3600}") long discoveryMaxAgeSeconds,
+            @Value("${oidc.discovery.jwks-max-age-seconds:900}") long jwksMaxAgeSeconds,
+            JwtService jwtService,
+            ObjectMapper objectMapper) {
+        this.issuer = issuer;
         this.jwtService = jwtService;
+        this.objectMapper = objectMapper;
+        this.discoveryCacheControl = CacheControl.maxAge(Duration.ofSeconds(discoveryMaxAgeSeconds)).cachePublic();
+        this.jwksCacheControl = CacheControl.maxAge(Duration.ofSeconds(jwksMaxAgeSeconds)).cachePublic();
     }
 
-    @GetMapping(value = "/.well-known/openid-configuration", produces = MediaType.APPLICATION_JSON_VALUE)
-    public OidcDiscoveryResponse discovery() {
+    @PostConstruct
+    public void render() {
         OidcDiscoveryResponse response = new OidcDiscoveryResponse();
         response.setIssuer(issuer);
         response.setAuthorizationEndpoint(issuer + "/authorize");
         response.setTokenEndpoint(issuer + "/token");
         response.setJwksUri(issuer + "/jwks.json");
-        return response;
+        response.setRevocationEndpoint(issuer + "/revoke");
+        response.setIntrospectionEndpoint(issuer + "/introspect");
+        response.setIdTokenSigningAlgValuesSupported(jwtService.getSigningAlgorithms().stream()
+                .map(JWSAlgorithm::getName)
+                .toArray(String[]::new));
+        discovery = Document.of(serialize(response));
+        renderJwks();
+    }
+
+    @EventListener(SigningKeysChangedEvent.class)
+    public void renderJwks() {
+        List<Map<String, Object>> keys = jwtService.getPublicJwks().stream()
+                .map(jwk -> jwk.toJSONObject())
+                .toList();
+        jwks = Document.of(serialize(Collections.singletonMap("keys", keys)));
+    }
+
+    @GetMapping(value = "/.well-known/openid-configuration", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> discovery() {
+        return serve(discovery, discoveryCacheControl);
     }
 
     @GetMapping(value = "/jwks.json", produces = MediaType.APPLICATION_JSON_VALUE)
-    public Map<String, Object> jwks() {
-        JWK publicJwk = jwtService.getPublicJwk();
-        return Collections.singletonMap("keys", Collections.singletonList(publicJwk.toJSONObject()));
+    public ResponseEntity<byte[]> jwks() {
+        return serve(jwks, jwksCacheControl);
+    }
+
+    private static ResponseEntity<byte[]> serve(Document document, CacheControl cacheControl) {
+        return ResponseEntity.ok()
+                .eTag(document.etag())
+                .cacheControl(cacheControl)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(document.body());
+    }
+
+    private byte[] serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to render " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private record Document(byte[] body, String etag) {
+
+        static Document of(byte[] body) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+                String etag = "\"" + Base64.getUrlEncoder().withoutPadding()
+                        .encodeToString(Arrays.copyOf(digest, 16)) + "\"";
+                return new Document(body, etag);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
     }
 }
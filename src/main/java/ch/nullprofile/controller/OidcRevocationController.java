@@ -0,0 +1,98 @@
+package ch.nullprofile.controller;
+
+import ch.nullprofile.dto.IntrospectionResponse;
+import ch.nullprofile.dto.OidcErrorResponse;
+import ch.nullprofile.service.JwtService;
+import ch.nullprofile.service.TokenRevocationService;
+import com.nimbusds.jwt.JWTClaimsSet;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.text.ParseException;
+import java.util.Optional;
+
+/**
+ * Token revocation (RFC 7009) and introspection (RFC 7662) for access tokens.
+ *
+ * Relying parties are public clients (token endpoint auth method "none"), so a client
+ * identifies itself by {@code client_id} and may only revoke or introspect tokens issued to it.
+ * ID tokens carry no jti and are neither revocable nor introspectable.
+ */
+@RestController
+public class OidcRevocationController {
+
+    private final JwtService jwtService;
+    private final TokenRevocationService revocationService;
+
+    public OidcRevocationController(JwtService jwtService, TokenRevocationService revocationService) {
+        this.jwtService = jwtService;
+        this.revocationService = revocationService;
+    }
+
+    @PostMapping(value = "/revoke", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> revoke(
+            @RequestParam("token") String token,
+            @RequestParam(value = "token_type_hint", required = false) String tokenTypeHint,
+            @RequestParam("client_id") String clientId) {
+
+        // Invalid, expired and unknown tokens are not an error (RFC 7009 section 2.2)
+        Optional<JWTClaimsSet> claims = jwtService.verifyAccessToken(token);
+        if (claims.isEmpty() || claims.get().getJWTID() == null) {
+            return ResponseEntity.ok().build();
+        }
+
+        if (!clientId.equals(clientId(claims.get()))) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new OidcErrorResponse("unauthorized_client", "Token was not issued to this client"));
+        }
+
+        revocationService.revoke(claims.get().getJWTID(),
+                claims.get().getExpirationTime().toInstant().getEpochSecond());
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping(value = "/introspect", produces = MediaType.APPLICATION_JSON_VALUE)
+    public IntrospectionResponse introspect(
+            @RequestParam("token") String token,
+            @RequestParam(value = "token_type_hint", required = false) String tokenTypeHint,
+            @RequestParam("client_id") String clientId) {
+
+        JWTClaimsSet claims = jwtService.verifyAccessToken(token).orElse(null);
+        if (claims == null || claims.getJWTID() == null || !clientId.equals(clientId(claims))) {
+            return IntrospectionResponse.inactive();
+        }
+
+        long expiresAt = claims.getExpirationTime().toInstant().getEpochSecond();
+        if (revocationService.isRevoked(claims.getJWTID(), expiresAt)) {
+            return IntrospectionResponse.inactive();
+        }
+
+        return new IntrospectionResponse(
+                true,
+                stringClaim(claims, "scope"),
+                clientId,
+                "Bearer",
+                expiresAt,
+                claims.getIssueTime() != null ? claims.getIssueTime().toInstant().getEpochSecond() : null,
+                claims.getSubject(),
+                claims.getAudience().isEmpty() ? null : claims.getAudience().get(0),
+                claims.getIssuer(),
+                claims.getJWTID());
+    }
+
+    private static String clientId(JWTClaimsSet claims) {
+        return stringClaim(claims, "client_id");
+    }
+
+    private static String stringClaim(JWTClaimsSet claims, String name) {
+        try {
+            return claims.getStringClaim(name);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+}
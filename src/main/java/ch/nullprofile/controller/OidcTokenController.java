@@ -3,11 +3,15 @@ package ch.nullprofile.controller;
 import ch.nullprofile.dto.OidcErrorResponse;
 import ch.nullprofile.dto.TokenResponse;
 import ch.nullprofile.entity.RelyingParty;
+import ch.nullprofile.exception.SigningCapacityExceededException;
 import ch.nullprofile.service.JwtService;
 import ch.nullprofile.service.OidcSessionTransactionService;
 import ch.nullprofile.service.PairwiseSubjectService;
 import ch.nullprofile.service.RelyingPartyService;
+import ch.nullprofile.service.TokenSigningExecutor;
+import com.nimbusds.jose.JWSAlgorithm;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -22,16 +26,19 @@ public class OidcTokenController {
     private final RelyingPartyService relyingPartyService;
     private final PairwiseSubjectService pairwiseSubjectService;
     private final JwtService jwtService;
+    private final TokenSigningExecutor signingExecutor;
 
     public OidcTokenController(
             OidcSessionTransactionService sessionService,
             RelyingPartyService relyingPartyService,
             PairwiseSubjectService pairwiseSubjectService,
-            JwtService jwtService) {
+            JwtService jwtService,
+            TokenSigningExecutor signingExecutor) {
         this.sessionService = sessionService;
         this.relyingPartyService = relyingPartyService;
         this.pairwiseSubjectService = pairwiseSubjectService;
         this.jwtService = jwtService;
+        this.signingExecutor = signingExecutor;
     }
 
     @PostMapping(value = "/token", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -49,6 +56,21 @@ public class OidcTokenController {
                     "Only grant_type=authorization_code is supported");
         }
 
+        // Reserve both signatures before the single-use code is consumed: if the signing queue is
+        // full the client can retry the same request, and once the code is gone signing cannot be refused
+        TokenSigningExecutor.Reservation reservation;
+        try {
+            reservation = signingExecutor.reserve(JwtService.TOKEN_BUNDLE_SIGNATURES);
+        } catch (SigningCapacityExceededException e) {
+            return busyResponse(e.getRetryAfterSeconds());
+        }
+        try (reservation) {
+            return exchangeCode(code, clientId, codeVerifier, redirectUri, reservation);
+        }
+    }
+
+    private ResponseEntity<?> exchangeCode(String code, String clientId, String codeVerifier, String redirectUri,
+                                           TokenSigningExecutor.Reservation reservation) {
         // Validate and consume auth code (session-independent lookup)
         var txnOpt = sessionService.validateAndConsumeAuthCode(code);
         if (txnOpt.isEmpty()) {
@@ -95,17 +117,23 @@ public class OidcTokenController {
                 txn.authenticatedUserId(), 
                 relyingParty.getSectorId());
 
-        // Generate ID token with nonce from transaction
-        String idToken = jwtService.generateIdToken(sub, clientId, txn.nonce());
+        // Both tokens are signed with the algorithm configured for the RP
+        JWSAlgorithm algorithm = JWSAlgorithm.parse(relyingParty.getSigningAlg());
 
-        // Generate access token (RFC 9068 JWT)
-        String accessToken = jwtService.generateAccessToken(sub, clientId);
+        // ID token (with nonce from transaction) and access token (RFC 9068 JWT), signed in parallel
+        JwtService.TokenBundle tokens = jwtService.generateTokens(sub, clientId, txn.nonce(), algorithm, reservation);
 
-        TokenResponse tokenResponse = new TokenResponse(accessToken, idToken);
-        tokenResponse.setExpiresIn(jwtService.getAccessTokenTtlSeconds());
+        TokenResponse tokenResponse = new TokenResponse(tokens.accessToken(), tokens.idToken());
+        tokenResponse.setExpiresIn(tokens.expiresIn());
         return ResponseEntity.ok(tokenResponse);
     }
 
+    private ResponseEntity<OidcErrorResponse> busyResponse(long retryAfterSeconds) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(new OidcErrorResponse("temporarily_unavailable", "Server is busy, retry later"));
+    }
+
     private ResponseEntity<OidcErrorResponse> errorResponse(
             HttpStatus status, String error, String description) {
         return ResponseEntity.status(status)
@@ -99,6 +99,11 @@ public class RelyingPartyController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
 
+        if (request.signingAlg() != null && !relyingPartyService.isSigningAlgSupported(request.signingAlg())) {
+            logger.warn("Invalid create request: unsupported signing algorithm {}", request.signingAlg());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
         UUID userId = UUID.fromString(sessionService.getUserId(session));
 
         try {
@@ -128,6 +133,11 @@ public class RelyingPartyController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
+        if (request.signingAlg() != null && !relyingPartyService.isSigningAlgSupported(request.signingAlg())) {
+            logger.warn("Invalid update request: unsupported signing algorithm {}", request.signingAlg());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
         UUID userId = UUID.fromString(sessionService.getUserId(session));
 
         try {
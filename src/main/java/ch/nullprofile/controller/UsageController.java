@@ -1,20 +1,23 @@
 package ch.nullprofile.controller;
 
+import ch.nullprofile.dto.MonthlyUsage;
 import ch.nullprofile.dto.UsageSummaryResponse;
-import ch.nullprofile.service.UsageMeteringService;
+import ch.nullprofile.service.UsageRollupService;
+import ch.nullprofile.util.CryptoPrimitives;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
-import java.time.LocalDate;
+import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -26,10 +29,10 @@ public class UsageController {
 
     private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
 
-    private final UsageMeteringService usageMeteringService;
+    private final UsageRollupService usageRollupService;
 
-    public UsageController(UsageMeteringService usageMeteringService) {
-        this.usageMeteringService = usageMeteringService;
+    public UsageController(UsageRollupService usageRollupService) {
+        this.usageRollupService = usageRollupService;
     }
 
     /**
@@ -37,12 +40,13 @@ public class UsageController {
      * 
      * @param rpIdParam Optional relying party ID ("ALL" for all RPs, or a UUID string)
      * @param months Number of months to retrieve (default 6)
-     * @return Usage summary with monthly data points
+     * @return Usage summary with monthly data points, or 304 if it matches If-None-Match
      */
     @GetMapping("/summary")
     public ResponseEntity<UsageSummaryResponse> getUsageSummary(
             @RequestParam(required = false) String rpId,
-            @RequestParam(defaultValue = "6") int months) {
+            @RequestParam(defaultValue = "6") int months,
+            WebRequest webRequest) {
 
         if (months < 1 || months > 24) {
             months = 6; // Default to 6 if invalid
@@ -59,19 +63,7 @@ public class UsageController {
             }
         }
 
-        // Get all metrics
-        Map<LocalDate, Integer> mauData = usageMeteringService.getMonthlyActiveUsers(relyingPartyId, months);
-        Map<LocalDate, Integer> authData = usageMeteringService.getAuthenticationCounts(relyingPartyId, months);
-        Map<LocalDate, Integer> retentionData = usageMeteringService.getRetentionRate(relyingPartyId, months);
-        Map<LocalDate, Integer> activeRecentlyData = usageMeteringService.getActiveRecently(relyingPartyId, months);
-
-        // Collect all unique months across all datasets (keeping insertion order)
-        Set<LocalDate> allMonthsSet = new LinkedHashSet<>();
-        allMonthsSet.addAll(mauData.keySet());
-        allMonthsSet.addAll(authData.keySet());
-        allMonthsSet.addAll(retentionData.keySet());
-        allMonthsSet.addAll(activeRecentlyData.keySet());
-        List<LocalDate> allMonths = new ArrayList<>(allMonthsSet);
+        List<MonthlyUsage> usage = usageRollupService.getMonthlyUsage(relyingPartyId, months);
 
         // Convert to parallel arrays
         List<String> monthStrings = new ArrayList<>();
@@ -80,12 +72,12 @@ public class UsageController {
         List<Integer> retentionValues = new ArrayList<>();
         List<Integer> activeRecentlyValues = new ArrayList<>();
 
-        for (LocalDate month : allMonths) {
-            monthStrings.add(month.format(MONTH_FORMATTER));
-            mauValues.add(mauData.getOrDefault(month, 0));
-            loginValues.add(authData.getOrDefault(month, 0));
-            retentionValues.add(retentionData.getOrDefault(month, 0));
-            activeRecentlyValues.add(activeRecentlyData.getOrDefault(month, 0));
+        for (MonthlyUsage month : usage) {
+            monthStrings.add(month.month().format(MONTH_FORMATTER));
+            mauValues.add(month.mau());
+            loginValues.add(month.authCount());
+            retentionValues.add(month.retentionRate());
+            activeRecentlyValues.add(month.activeRecently());
         }
 
         // Create response
@@ -97,6 +89,19 @@ public class UsageController {
                 activeRecentlyValues
         );
 
-        return ResponseEntity.ok(response);
+        // Polling dashboards revalidate and get a 304 while the figures are unchanged
+        String etag = etag(response);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(response);
+    }
+
+    private static String etag(UsageSummaryResponse response) {
+        byte[] hash = CryptoPrimitives.sha256(response.toString().getBytes(StandardCharsets.UTF_8));
+        return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16)) + "\"";
     }
 }
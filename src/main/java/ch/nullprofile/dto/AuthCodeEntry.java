@@ -0,0 +1,21 @@
+package ch.nullprofile.dto;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Authorization code entry held by an {@code AuthorizationCodeStore}, keyed by {@link AuthCodeKey}
+ * Serializable so it can be replicated through Hazelcast
+ */
+public record AuthCodeEntry(
+        OidcTransaction transaction,
+        Instant expiresAt
+) implements Serializable {
+
+    /**
+     * Check if the code has passed its expiry
+     */
+    public boolean isExpired(Instant now) {
+        return now.isAfter(expiresAt);
+    }
+}
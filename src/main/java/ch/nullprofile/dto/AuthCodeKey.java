@@ -0,0 +1,64 @@
+package ch.nullprofile.dto;
+
+import ch.nullprofile.util.CryptoPrimitives;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Lookup key for an authorization code: the 32-byte SHA-256 digest of the plaintext code.
+ *
+ * Stores are keyed by this digest, so plaintext codes never sit in a map (or a heap dump)
+ * while waiting for redemption. The hash code is taken from the digest once at construction,
+ * avoiding String hashing of 43-character codes on every lookup.
+ */
+public final class AuthCodeKey implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] digest;
+    private final int hash;
+
+    private AuthCodeKey(byte[] digest) {
+        this.digest = digest;
+        // SHA-256 output is uniformly distributed; the first four bytes make a good hash code
+        this.hash = (digest[0] & 0xFF) << 24 | (digest[1] & 0xFF) << 16 | (digest[2] & 0xFF) << 8 | (digest[3] & 0xFF);
+    }
+
+    /**
+     * Derive the key for a plaintext authorization code
+     */
+    public static AuthCodeKey of(String code) {
+        return new AuthCodeKey(CryptoPrimitives.sha256(code.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Standard Base64 of the digest (format stored in {@link OidcTransaction#authCodeHash()})
+     */
+    public String toBase64() {
+        return Base64.getEncoder().encodeToString(digest);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof AuthCodeKey other && hash == other.hash && MessageDigest.isEqual(digest, other.digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        // Never log the digest itself
+        return "AuthCodeKey[" + Integer.toHexString(hash) + "]";
+    }
+}
@@ -8,6 +8,7 @@ public record CreateRelyingPartyRequest(
         String sectorId,
         String logoUrl,
         String primaryColor,
-        String secondaryColor
+        String secondaryColor,
+        String signingAlg
 ) {
 }
@@ -0,0 +1,25 @@
+package ch.nullprofile.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Token introspection response (RFC 7662); an inactive token carries only {@code active=false}
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record IntrospectionResponse(
+        boolean active,
+        String scope,
+        @JsonProperty("client_id") String clientId,
+        @JsonProperty("token_type") String tokenType,
+        Long exp,
+        Long iat,
+        String sub,
+        String aud,
+        String iss,
+        String jti
+) {
+    public static IntrospectionResponse inactive() {
+        return new IntrospectionResponse(false, null, null, null, null, null, null, null, null, null);
+    }
+}
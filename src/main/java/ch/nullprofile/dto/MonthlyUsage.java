@@ -0,0 +1,21 @@
+package ch.nullprofile.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Dashboard figures for one month
+ *
+ * @param retentionRate percentage (0-100) of this month's users who were also active the month before
+ */
+public record MonthlyUsage(
+        LocalDate month,
+        int mau,
+        int authCount,
+        int retentionRate,
+        int activeRecently
+) {
+
+    public boolean isEmpty() {
+        return mau == 0 && authCount == 0 && activeRecently == 0;
+    }
+}
@@ -15,6 +15,12 @@ public class OidcDiscoveryResponse {
     @JsonProperty("jwks_uri")
     private String jwksUri;
     
+    @JsonProperty("revocation_endpoint")
+    private String revocationEndpoint;
+    
+    @JsonProperty("introspection_endpoint")
+    private String introspectionEndpoint;
+    
     @JsonProperty("response_types_supported")
     private String[] responseTypesSupported = new String[]{"code"};
     
@@ -70,6 +76,22 @@ public class OidcDiscoveryResponse {
         this.jwksUri = jwksUri;
     }
 
+    public String getRevocationEndpoint() {
+        return revocationEndpoint;
+    }
+
+    public void setRevocationEndpoint(String revocationEndpoint) {
+        this.revocationEndpoint = revocationEndpoint;
+    }
+
+    public String getIntrospectionEndpoint() {
+        return introspectionEndpoint;
+    }
+
+    public void setIntrospectionEndpoint(String introspectionEndpoint) {
+        this.introspectionEndpoint = introspectionEndpoint;
+    }
+
     public String[] getResponseTypesSupported() {
         return responseTypesSupported;
     }
@@ -9,7 +9,8 @@ public record RelyingPartyDetail(
         String name,
         String sectorId,
         List<String> redirectUris,
-        BrandingInfo branding
+        BrandingInfo branding,
+        String signingAlg
 ) {
     public record BrandingInfo(
             String logoUrl,
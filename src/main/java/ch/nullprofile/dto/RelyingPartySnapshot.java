@@ -0,0 +1,73 @@
+package ch.nullprofile.dto;
+
+import ch.nullprofile.entity.RelyingParty;
+import ch.nullprofile.util.RedirectUriMatcher;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Immutable view of a relying party and its registered redirect URIs, as held by the RP registry
+ */
+public record RelyingPartySnapshot(
+        UUID id,
+        String rpId,
+        String rpName,
+        String sectorId,
+        String brandingLogoUrl,
+        String brandingPrimaryColor,
+        String brandingSecondaryColor,
+        String status,
+        String planTier,
+        String signingAlg,
+        Instant createdAt,
+        UUID createdByUserId,
+        RedirectUriMatcher redirectUris
+) {
+
+    public static RelyingPartySnapshot of(RelyingParty rp, Collection<String> redirectUris) {
+        return new RelyingPartySnapshot(
+                rp.getId(),
+                rp.getRpId(),
+                rp.getRpName(),
+                rp.getSectorId(),
+                rp.getBrandingLogoUrl(),
+                rp.getBrandingPrimaryColor(),
+                rp.getBrandingSecondaryColor(),
+                rp.getStatus(),
+                rp.getPlanTier(),
+                rp.getSigningAlg(),
+                rp.getCreatedAt(),
+                rp.getCreatedByUserId(),
+                RedirectUriMatcher.of(redirectUris)
+        );
+    }
+
+    /**
+     * Exact-match check against the registered redirect URIs (scheme and host compared case-insensitively)
+     */
+    public boolean isRedirectUriRegistered(String redirectUri) {
+        return redirectUris.matches(redirectUri);
+    }
+
+    /**
+     * Detached entity copy for callers that work with {@link RelyingParty}; changes to it are not persisted
+     */
+    public RelyingParty toEntity() {
+        RelyingParty rp = new RelyingParty();
+        rp.setId(id);
+        rp.setRpId(rpId);
+        rp.setRpName(rpName);
+        rp.setSectorId(sectorId);
+        rp.setBrandingLogoUrl(brandingLogoUrl);
+        rp.setBrandingPrimaryColor(brandingPrimaryColor);
+        rp.setBrandingSecondaryColor(brandingSecondaryColor);
+        rp.setStatus(status);
+        rp.setPlanTier(planTier);
+        rp.setSigningAlg(signingAlg);
+        rp.setCreatedAt(createdAt);
+        rp.setCreatedByUserId(createdByUserId);
+        return rp;
+    }
+}
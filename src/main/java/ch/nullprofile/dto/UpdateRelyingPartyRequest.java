@@ -8,6 +8,7 @@ public record UpdateRelyingPartyRequest(
         String sectorId,
         String logoUrl,
         String primaryColor,
-        String secondaryColor
+        String secondaryColor,
+        String signingAlg
 ) {
 }
@@ -0,0 +1,13 @@
+package ch.nullprofile.dto;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * One successful authentication, queued for the usage metering writer
+ *
+ * @param month first day of the event's month (Europe/Zurich)
+ */
+public record UsageEvent(UUID relyingPartyId, UUID userId, LocalDate month, Instant eventTime) {
+}
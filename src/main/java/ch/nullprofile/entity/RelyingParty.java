@@ -37,6 +37,10 @@ public class RelyingParty {
     @Column(name = "plan_tier", nullable = false, length = 50)
     private String planTier = "FREE";
 
+    // JWS algorithm for this RP's ID and access tokens (RS256, ES256 or EdDSA)
+    @Column(name = "signing_alg", nullable = false, length = 16)
+    private String signingAlg = "RS256";
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private Instant createdAt;
@@ -118,6 +122,14 @@ public class RelyingParty {
         this.planTier = planTier;
     }
 
+    public String getSigningAlg() {
+        return signingAlg;
+    }
+
+    public void setSigningAlg(String signingAlg) {
+        this.signingAlg = signingAlg;
+    }
+
     public Instant getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,19 @@
+package ch.nullprofile.exception;
+
+/**
+ * Thrown when the token signing queue is full; the client should retry after
+ * {@link #getRetryAfterSeconds()} seconds.
+ */
+public class SigningCapacityExceededException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public SigningCapacityExceededException(long retryAfterSeconds) {
+        super("Token signing capacity exhausted");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,132 @@
+package ch.nullprofile.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of database-bound requests processed at once.
+ *
+ * With virtual threads Tomcat no longer limits concurrency through its worker pool, so a login
+ * burst would start thousands of requests that all queue inside Hikari and time out after
+ * {@code connection-timeout}. This filter admits at most {@code admission.max-concurrent-requests}
+ * (by default the Hikari {@code maximum-pool-size}); a request waits up to
+ * {@code admission.wait-millis} for a slot and is otherwise rejected with 503 and Retry-After,
+ * so clients back off instead of piling up.
+ *
+ * Only the paths that use the database are limited: /authorize, /token, /api/** and /webauthn/**.
+ * Discovery, JWKS, actuator, revocation and introspection (Hazelcast only) pass straight through.
+ * On by default, since virtual threads are; {@code admission.enabled=false} turns it off.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class AdmissionLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionLimitFilter.class);
+
+    private static final List<String> LIMITED_PATHS = List.of("/authorize", "/token", "/api/", "/webauthn/");
+    private static final String REJECTED_BODY =
+            "{\"error\":\"temporarily_unavailable\",\"error_description\":\"Server is busy, retry later\"}";
+
+    private final boolean enabled;
+    private final int maxConcurrentRequests;
+    private final Semaphore permits;
+    private final long waitNanos;
+    private final long retryAfterSeconds;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public AdmissionLimitFilter(
+            @Value("${admission.enabled:true}") boolean enabled,
+            @Value("${admission.max-concurrent-requests:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrentRequests,
+            @Value("${admission.wait-millis:200}") long waitMillis,
+            @Value("${admission.retry-after-seconds:1}") long retryAfterSeconds,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.permits = new Semaphore(maxConcurrentRequests);
+        this.waitNanos = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.waitTimer = Timer.builder("http.admission.wait")
+                .description("Time requests waited for an admission slot")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("http.admission.rejected")
+                .description("Requests rejected with 503 because no admission slot became free in time")
+                .register(meterRegistry);
+        Gauge.builder("http.admission.active", this, filter -> filter.activeRequests())
+                .description("Requests currently holding an admission slot")
+                .register(meterRegistry);
+        logger.info("Admission limit: enabled={}, maxConcurrentRequests={}, waitMillis={}",
+                enabled, maxConcurrentRequests, waitMillis);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!enabled) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return LIMITED_PATHS.stream().noneMatch(path::startsWith);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        if (!acquire()) {
+            rejected.increment();
+            logger.warn("Request rejected, no admission slot: method={}, uri={}",
+                    request.getMethod(), request.getRequestURI());
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write(REJECTED_BODY);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+
+    int activeRequests() {
+        return maxConcurrentRequests - permits.availablePermits();
+    }
+
+    private boolean acquire() {
+        if (permits.tryAcquire()) {
+            waitTimer.record(0, TimeUnit.NANOSECONDS);
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            return permits.tryAcquire(waitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
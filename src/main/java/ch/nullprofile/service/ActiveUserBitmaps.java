@@ -0,0 +1,457 @@
+package ch.nullprofile.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-(RP, month) bitmaps of active users (users.dense_id), kept in mau_bitmaps for retention.
+ *
+ * Month-over-month retention is the cardinality of {@code thisMonth AND previousMonth}, so it
+ * costs two bitmap reads instead of a self-join over monthly_active_users. After each usage batch
+ * commits, its users are added to an in-memory pending bitmap; on a schedule the pending users
+ * not yet known to be stored are merged into the row under FOR UPDATE, as with
+ * {@link MauSketchAccumulator}. A missing row is always built from monthly_active_users in full,
+ * and (RP, month) pairs that predate the table are backfilled once per process, so a stored
+ * bitmap never misses a user whose activity row was committed before it.
+ *
+ * Pending users only live in memory, so a crash or a failed dense-id lookup can drop users whose
+ * activity rows did commit. Each process therefore rebuilds the last closed month from
+ * monthly_active_users once that month is over (and once after startup) and unions it into the
+ * stored rows. Pending bitmaps of past months are dropped once merged; an add that races with the
+ * drop puts the bitmap back, as in {@link MauSketchAccumulator}.
+ */
+@Component
+public class ActiveUserBitmaps {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActiveUserBitmaps.class);
+    private static final ZoneId EUROPE_ZURICH = ZoneId.of("Europe/Zurich");
+
+    // Dashboard horizon plus the month before it, which retention compares against
+    private static final int BACKFILL_MONTHS = 25;
+
+    // A month counts as closed, and its idle bitmaps are dropped, once logins from its last hour are in
+    private static final Duration CLOSE_GRACE = Duration.ofHours(1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final Map<BitmapKey, LocalBitmap> bitmaps = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Counter failedMerges;
+    private final Counter failedResolves;
+    private volatile boolean backfilled;
+    // Last closed month rebuilt from monthly_active_users by this process
+    private volatile LocalDate reconciledMonth;
+
+    @Autowired
+    public ActiveUserBitmaps(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this(jdbcTemplate, transactionManager, meterRegistry, Clock.systemUTC());
+    }
+
+    ActiveUserBitmaps(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                      MeterRegistry meterRegistry, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clock = clock;
+
+        Gauge.builder("usage.metering.bitmaps.active", bitmaps, Map::size)
+                .description("(RP, month) user bitmaps held in memory")
+                .register(meterRegistry);
+        this.failedMerges = Counter.builder("usage.metering.bitmaps.merge.failures")
+                .description("User bitmap merges that failed and will be retried")
+                .register(meterRegistry);
+        this.failedResolves = Counter.builder("usage.metering.bitmaps.resolve.failures")
+                .description("Written usage batches whose users could not be added to the bitmaps")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Once the current transaction commits (immediately if there is none), resolve the dense ids
+     * of a written batch and queue them for the next merge. Nothing runs inside the transaction
+     * and nothing is thrown, so a failure here never costs the metering write itself.
+     */
+    public void addAfterCommit(Collection<UsageEventWriter.ActiveUserKey> activeUsers) {
+        if (activeUsers.isEmpty()) {
+            return;
+        }
+        List<UsageEventWriter.ActiveUserKey> users = List.copyOf(activeUsers);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(users);
+                }
+            });
+        } else {
+            add(users);
+        }
+    }
+
+    /**
+     * Merge pending users into mau_bitmaps; the first successful run also backfills missing rows,
+     * and the first run after a month closes reconciles it with monthly_active_users
+     *
+     * @return number of bitmaps written
+     */
+    @Scheduled(fixedDelayString = "${usage.metering.bitmap-flush-interval-millis:10000}")
+    public int flush() {
+        // A lock rather than synchronized: the flush blocks on JDBC and must not pin a virtual thread's carrier
+        flushLock.lock();
+        try {
+            return flushLocked();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int flushLocked() {
+        if (!backfilled) {
+            backfill();
+        }
+        LocalDate closedMonth = oldestLiveMonth().minusMonths(1);
+        if (!closedMonth.equals(reconciledMonth)) {
+            reconcile(closedMonth);
+        }
+        int written = 0;
+        for (Map.Entry<BitmapKey, LocalBitmap> entry : bitmaps.entrySet()) {
+            LocalBitmap local = entry.getValue();
+            RoaringBitmap fresh = RoaringBitmap.andNot(local.takePending(), local.stored);
+            if (fresh.isEmpty()) {
+                continue;
+            }
+            try {
+                local.stored = mergeIntoDatabase(entry.getKey(), fresh);
+                written++;
+            } catch (RuntimeException e) {
+                local.addPending(fresh);
+                failedMerges.increment();
+                logger.error("Failed to merge user bitmap: rpId={}, month={}",
+                        entry.getKey().relyingPartyId(), entry.getKey().month(), e);
+            }
+        }
+        pruneIdle();
+        if (written > 0) {
+            logger.debug("Merged user bitmaps: count={}", written);
+        }
+        return written;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Whether (RP, month) pairs from before mau_bitmaps existed have been backfilled
+     */
+    public boolean isBackfilled() {
+        return backfilled;
+    }
+
+    /**
+     * Stored user bitmaps per month in [startMonth, endMonth]; relyingPartyId null unions all RPs
+     */
+    public Map<LocalDate, RoaringBitmap> load(UUID relyingPartyId, LocalDate startMonth, LocalDate endMonth) {
+        String sql = relyingPartyId != null
+                ? "SELECT month, users FROM mau_bitmaps WHERE relying_party_id = ? AND month >= ? AND month <= ? ORDER BY month"
+                : "SELECT month, users FROM mau_bitmaps WHERE month >= ? AND month <= ? ORDER BY month";
+        Object[] params = relyingPartyId != null
+                ? new Object[]{relyingPartyId, Date.valueOf(startMonth), Date.valueOf(endMonth)}
+                : new Object[]{Date.valueOf(startMonth), Date.valueOf(endMonth)};
+
+        Map<LocalDate, RoaringBitmap> result = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            LocalDate month = rs.getDate("month").toLocalDate();
+            RoaringBitmap users = deserialize(rs.getBytes("users"));
+            result.merge(month, users, (a, b) -> {
+                a.or(b);
+                return a;
+            });
+        }, params);
+        return result;
+    }
+
+    /**
+     * Stored user bitmap of every RP for one month
+     */
+    public Map<UUID, RoaringBitmap> loadMonth(LocalDate month) {
+        Map<UUID, RoaringBitmap> result = new HashMap<>();
+        jdbcTemplate.query("SELECT relying_party_id, users FROM mau_bitmaps WHERE month = ?", rs -> {
+            result.put(rs.getObject("relying_party_id", UUID.class), deserialize(rs.getBytes("users")));
+        }, Date.valueOf(month));
+        return result;
+    }
+
+    static byte[] serialize(RoaringBitmap bitmap) {
+        bitmap.runOptimize();
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+        bitmap.serialize(buffer);
+        return buffer.array();
+    }
+
+    static RoaringBitmap deserialize(byte[] bytes) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        try {
+            bitmap.deserialize(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt user bitmap", e);
+        }
+        return bitmap;
+    }
+
+    private void add(List<UsageEventWriter.ActiveUserKey> activeUsers) {
+        Map<UUID, Integer> denseIds;
+        try {
+            denseIds = denseIds(activeUsers.stream().map(UsageEventWriter.ActiveUserKey::userId)
+                    .distinct().toArray(UUID[]::new));
+        } catch (RuntimeException e) {
+            failedResolves.increment();
+            logger.error("Failed to resolve dense ids, users not added to bitmaps: count={}", activeUsers.size(), e);
+            return;
+        }
+
+        Map<BitmapKey, RoaringBitmap> batch = new HashMap<>();
+        for (UsageEventWriter.ActiveUserKey user : activeUsers) {
+            Integer denseId = denseIds.get(user.userId());
+            if (denseId != null) {
+                batch.computeIfAbsent(new BitmapKey(user.relyingPartyId(), user.month()), key -> new RoaringBitmap())
+                        .add(denseId);
+            }
+        }
+        addPending(batch);
+    }
+
+    private void addPending(Map<BitmapKey, RoaringBitmap> batch) {
+        batch.forEach((key, users) -> {
+            LocalBitmap local = bitmaps.computeIfAbsent(key, k -> new LocalBitmap());
+            local.addPending(users);
+            // Pruned between the lookup and the add: put it back rather than lose the users
+            if (bitmaps.get(key) != local) {
+                reinstate(key, local);
+            }
+        });
+    }
+
+    private Map<UUID, Integer> denseIds(UUID[] userIds) {
+        Map<UUID, Integer> result = new HashMap<>(userIds.length * 2);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("SELECT id, dense_id FROM users WHERE id = ANY(?)");
+            Array ids = connection.createArrayOf("uuid", userIds);
+            statement.setArray(1, ids);
+            return statement;
+        }, rs -> {
+            result.put(rs.getObject("id", UUID.class), rs.getInt("dense_id"));
+        });
+        return result;
+    }
+
+    /**
+     * Add fresh users to the stored bitmap (creating it from monthly_active_users if needed)
+     *
+     * @return the stored bitmap after the merge
+     */
+    private RoaringBitmap mergeIntoDatabase(BitmapKey key, RoaringBitmap fresh) {
+        Date month = Date.valueOf(key.month());
+        return transactionTemplate.execute(status -> {
+            List<byte[]> stored = lockRow(key.relyingPartyId(), month);
+            if (stored.isEmpty()) {
+                RoaringBitmap built = buildFromActiveUsers(key.relyingPartyId(), month);
+                built.or(fresh);
+                if (insertIfAbsent(key.relyingPartyId(), month, built)) {
+                    return built;
+                }
+                // Created concurrently by another replica: merge into that row instead
+                stored = lockRow(key.relyingPartyId(), month);
+            }
+            RoaringBitmap merged = deserialize(stored.get(0));
+            int before = merged.getCardinality();
+            merged.or(fresh);
+            if (merged.getCardinality() != before) {
+                jdbcTemplate.update(
+                        "UPDATE mau_bitmaps SET users = ?, cardinality = ?, updated_at = ? WHERE relying_party_id = ? AND month = ?",
+                        serialize(merged), merged.getCardinality(), Timestamp.from(clock.instant()), key.relyingPartyId(), month);
+            }
+            return merged;
+        });
+    }
+
+    private void backfill() {
+        try {
+            LocalDate oldest = currentMonth().minusMonths(BACKFILL_MONTHS - 1L);
+            List<BitmapKey> missing = jdbcTemplate.query("""
+                    SELECT DISTINCT m.relying_party_id, m.month
+                    FROM monthly_active_users m
+                    WHERE m.month >= ?
+                      AND NOT EXISTS (SELECT 1 FROM mau_bitmaps b
+                                      WHERE b.relying_party_id = m.relying_party_id AND b.month = m.month)
+                    """, (rs, rowNum) -> new BitmapKey(rs.getObject("relying_party_id", UUID.class),
+                    rs.getDate("month").toLocalDate()), Date.valueOf(oldest));
+            for (BitmapKey key : missing) {
+                Date month = Date.valueOf(key.month());
+                transactionTemplate.executeWithoutResult(status ->
+                        insertIfAbsent(key.relyingPartyId(), month, buildFromActiveUsers(key.relyingPartyId(), month)));
+            }
+            backfilled = true;
+            if (!missing.isEmpty()) {
+                logger.info("Backfilled user bitmaps: count={}", missing.size());
+            }
+        } catch (RuntimeException e) {
+            logger.error("User bitmap backfill failed, will retry", e);
+        }
+    }
+
+    /**
+     * Union every RP's users of a closed month, as recorded in monthly_active_users, into its stored row
+     */
+    private void reconcile(LocalDate month) {
+        try {
+            Map<UUID, RoaringBitmap> byRelyingParty = new HashMap<>();
+            jdbcTemplate.query("""
+                    SELECT m.relying_party_id, u.dense_id
+                    FROM monthly_active_users m
+                    JOIN users u ON u.id = m.user_id
+                    WHERE m.month = ?
+                    """, rs -> {
+                byRelyingParty.computeIfAbsent(rs.getObject("relying_party_id", UUID.class), rp -> new RoaringBitmap())
+                        .add(rs.getInt("dense_id"));
+            }, Date.valueOf(month));
+            byRelyingParty.forEach((relyingPartyId, users) -> mergeIntoDatabase(new BitmapKey(relyingPartyId, month), users));
+            reconciledMonth = month;
+            logger.info("Reconciled user bitmaps: month={}, count={}", month, byRelyingParty.size());
+        } catch (RuntimeException e) {
+            logger.error("User bitmap reconciliation failed, will retry: month={}", month, e);
+        }
+    }
+
+    private List<byte[]> lockRow(UUID relyingPartyId, Date month) {
+        return jdbcTemplate.query(
+                "SELECT users FROM mau_bitmaps WHERE relying_party_id = ? AND month = ? FOR UPDATE",
+                (rs, rowNum) -> rs.getBytes("users"),
+                relyingPartyId, month);
+    }
+
+    private RoaringBitmap buildFromActiveUsers(UUID relyingPartyId, Date month) {
+        RoaringBitmap users = new RoaringBitmap();
+        jdbcTemplate.query("""
+                SELECT u.dense_id
+                FROM monthly_active_users m
+                JOIN users u ON u.id = m.user_id
+                WHERE m.relying_party_id = ? AND m.month = ?
+                """, rs -> {
+            users.add(rs.getInt("dense_id"));
+        }, relyingPartyId, month);
+        return users;
+    }
+
+    private boolean insertIfAbsent(UUID relyingPartyId, Date month, RoaringBitmap users) {
+        return jdbcTemplate.update("""
+                INSERT INTO mau_bitmaps (relying_party_id, month, users, cardinality, updated_at)
+                VALUES (?, ?, ?, ?, ?)
+                ON CONFLICT (relying_party_id, month) DO NOTHING
+                """, relyingPartyId, month, serialize(users), users.getCardinality(),
+                Timestamp.from(clock.instant())) == 1;
+    }
+
+    private void pruneIdle() {
+        LocalDate oldestLiveMonth = oldestLiveMonth();
+        for (Map.Entry<BitmapKey, LocalBitmap> entry : bitmaps.entrySet()) {
+            BitmapKey key = entry.getKey();
+            LocalBitmap local = entry.getValue();
+            if (key.month().isBefore(oldestLiveMonth) && !local.hasPending()
+                    && bitmaps.remove(key, local) && local.hasPending()) {
+                // An add got in after the check; either it or this re-check sees the removal
+                reinstate(key, local);
+            }
+        }
+    }
+
+    /**
+     * Put a pruned bitmap back, moving its pending users into a replacement if an add already created one
+     */
+    private void reinstate(BitmapKey key, LocalBitmap local) {
+        bitmaps.merge(key, local, (current, pruned) -> {
+            if (current != pruned) {
+                current.addPending(pruned.takePending());
+            }
+            return current;
+        });
+    }
+
+    private LocalDate currentMonth() {
+        return monthOf(clock.instant());
+    }
+
+    private LocalDate oldestLiveMonth() {
+        return monthOf(clock.instant().minus(CLOSE_GRACE));
+    }
+
+    private static LocalDate monthOf(Instant instant) {
+        ZonedDateTime zoned = instant.atZone(EUROPE_ZURICH);
+        return LocalDate.of(zoned.getYear(), zoned.getMonth(), 1);
+    }
+
+    private record BitmapKey(UUID relyingPartyId, LocalDate month) {
+    }
+
+    /**
+     * Users waiting to be merged, plus a copy of the stored bitmap as of the last merge so
+     * users already persisted (the common case after the first login of a month) are skipped
+     */
+    private static final class LocalBitmap {
+
+        private RoaringBitmap pending = new RoaringBitmap();
+        // Only touched by flush()
+        private RoaringBitmap stored = new RoaringBitmap();
+
+        synchronized void addPending(RoaringBitmap users) {
+            pending.or(users);
+        }
+
+        synchronized RoaringBitmap takePending() {
+            RoaringBitmap taken = pending;
+            pending = new RoaringBitmap();
+            return taken;
+        }
+
+        synchronized boolean hasPending() {
+            return !pending.isEmpty();
+        }
+    }
+}
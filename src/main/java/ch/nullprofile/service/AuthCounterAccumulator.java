@@ -0,0 +1,164 @@
+package ch.nullprofile.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory authentication counters per (RP, month), flushed to rp_monthly_counters as deltas.
+ *
+ * A login only increments a striped {@link LongAdder}; every flush interval (and on shutdown) the
+ * accumulated value is taken with {@code sum()} and subtracted back out with {@code add(-n)}, so
+ * increments racing with a flush simply carry over to the next one. Each RP with activity then
+ * costs one upsert per flush instead of one contended row update per login.
+ */
+@Component
+public class AuthCounterAccumulator {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuthCounterAccumulator.class);
+    private static final ZoneId EUROPE_ZURICH = ZoneId.of("Europe/Zurich");
+
+    // Idle counters of past months are dropped once no late increment can still target them
+    private static final Duration PRUNE_GRACE = Duration.ofHours(1);
+
+    private static final String DELTA_SQL = """
+        INSERT INTO rp_monthly_counters (relying_party_id, month, auth_count, created_at, updated_at)
+        VALUES (?, ?, ?, ?, ?)
+        ON CONFLICT (relying_party_id, month)
+        DO UPDATE SET
+            auth_count = rp_monthly_counters.auth_count + EXCLUDED.auth_count,
+            updated_at = EXCLUDED.updated_at
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Clock clock;
+    private final Map<CounterKey, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Timer flushTimer;
+    private final Counter failedFlushes;
+
+    @Autowired
+    public AuthCounterAccumulator(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this(jdbcTemplate, meterRegistry, Clock.systemUTC());
+    }
+
+    AuthCounterAccumulator(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clock = clock;
+        Gauge.builder("usage.metering.counters.active", counters, Map::size)
+                .description("(RP, month) auth counters held in memory")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("usage.metering.counters.flush")
+                .description("Time to flush accumulated auth counter deltas")
+                .register(meterRegistry);
+        this.failedFlushes = Counter.builder("usage.metering.counters.flush.failures")
+                .description("Auth counter flushes that failed and were carried over")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Count one successful authentication for the RP in the given month
+     */
+    public void increment(UUID relyingPartyId, LocalDate month) {
+        counters.computeIfAbsent(new CounterKey(relyingPartyId, month), key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Upsert all accumulated deltas; on failure the deltas are put back for the next attempt
+     *
+     * @return number of counter rows written
+     */
+    @Scheduled(fixedDelayString = "${usage.metering.counter-flush-interval-millis:5000}")
+    public int flush() {
+        flushLock.lock();
+        try {
+            return flushLocked();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int flushLocked() {
+        List<CounterKey> keys = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        counters.forEach((key, adder) -> {
+            long delta = adder.sum();
+            if (delta != 0) {
+                adder.add(-delta);
+                keys.add(key);
+                deltas.add(delta);
+            }
+        });
+        pruneIdle();
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        Timestamp now = Timestamp.from(clock.instant());
+        List<Object[]> rows = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            CounterKey key = keys.get(i);
+            rows.add(new Object[]{key.relyingPartyId(), Date.valueOf(key.month()), deltas.get(i), now, now});
+        }
+
+        try {
+            flushTimer.record(() -> jdbcTemplate.batchUpdate(DELTA_SQL, rows));
+            logger.debug("Flushed auth counters: rows={}", rows.size());
+            return rows.size();
+        } catch (RuntimeException e) {
+            failedFlushes.increment();
+            logger.error("Failed to flush auth counters, carrying over: rows={}", rows.size(), e);
+            for (int i = 0; i < keys.size(); i++) {
+                counters.computeIfAbsent(keys.get(i), key -> new LongAdder()).add(deltas.get(i));
+            }
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        int rows = flush();
+        logger.info("Flushed auth counters on shutdown: rows={}", rows);
+    }
+
+    /**
+     * Current unflushed count for (RP, month)
+     */
+    long pending(UUID relyingPartyId, LocalDate month) {
+        LongAdder adder = counters.get(new CounterKey(relyingPartyId, month));
+        return adder == null ? 0 : adder.sum();
+    }
+
+    private void pruneIdle() {
+        ZonedDateTime cutoff = clock.instant().minus(PRUNE_GRACE).atZone(EUROPE_ZURICH);
+        LocalDate oldestLiveMonth = LocalDate.of(cutoff.getYear(), cutoff.getMonth(), 1);
+        counters.entrySet().removeIf(entry ->
+                entry.getKey().month().isBefore(oldestLiveMonth) && entry.getValue().sum() == 0);
+    }
+
+    private record CounterKey(UUID relyingPartyId, LocalDate month) {
+    }
+}
@@ -0,0 +1,48 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.dto.AuthCodeEntry;
+import ch.nullprofile.dto.AuthCodeKey;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Storage for issued authorization codes, keyed by the SHA-256 digest of the code
+ * ({@link AuthCodeKey}); plaintext codes are never stored.
+ *
+ * Implementations must guarantee one-time consumption: for a given code, at most one
+ * caller of {@link #consume(AuthCodeKey)} may ever receive the entry, even when redemptions
+ * race across threads or cluster members. Redemption is a single atomic remove; a small
+ * tombstone of the redeemed code is kept until its original expiry for replay detection.
+ */
+public interface AuthorizationCodeStore {
+
+    /**
+     * Store a newly issued code; the entry must disappear after {@code ttl}
+     */
+    void save(AuthCodeKey key, AuthCodeEntry entry, Duration ttl);
+
+    /**
+     * Atomically remove and return the entry for a code (one-time use),
+     * leaving a tombstone so a later replay can be recognised
+     */
+    Optional<AuthCodeEntry> consume(AuthCodeKey key);
+
+    /**
+     * txnId of a code that has already been redeemed, if its tombstone is still held
+     */
+    Optional<String> findRedeemed(AuthCodeKey key);
+
+    /**
+     * Remove entries whose expiry has passed. Returns the number removed.
+     * Stores with native TTL eviction may return 0.
+     */
+    int removeExpired(Instant now);
+
+    /**
+     * Number of codes held by this replica; clustered stores count only the entries this member
+     * owns, without a cluster round trip, so the members' sizes add up to the cluster total
+     */
+    int size();
+}
@@ -0,0 +1,81 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.dto.AuthCodeEntry;
+import ch.nullprofile.dto.AuthCodeKey;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster-wide authorization code store backed by a Hazelcast {@link IMap}.
+ *
+ * - Each code is written with its own TTL, so Hazelcast evicts it natively on expiry
+ * - Consumption is a single {@code IMap.remove(key)}, which is atomic on the partition
+ *   owner: only one redemption across the whole cluster can receive the entry
+ * - Redeemed codes leave an asynchronously written tombstone for replay detection
+ *
+ * Lets /token land on any replica behind a round-robin balancer (no sticky sessions).
+ */
+@Component
+@ConditionalOnProperty(prefix = "oidc.auth-code-store", name = "type", havingValue = "hazelcast")
+public class HazelcastAuthorizationCodeStore implements AuthorizationCodeStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(HazelcastAuthorizationCodeStore.class);
+
+    static final String MAP_NAME = "oidc:auth-codes";
+    static final String TOMBSTONE_MAP_NAME = "oidc:auth-code-tombstones";
+
+    private final IMap<AuthCodeKey, AuthCodeEntry> codes;
+    private final IMap<AuthCodeKey, String> tombstones;
+
+    public HazelcastAuthorizationCodeStore(HazelcastInstance hazelcastInstance) {
+        this.codes = hazelcastInstance.getMap(MAP_NAME);
+        this.tombstones = hazelcastInstance.getMap(TOMBSTONE_MAP_NAME);
+        logger.info("[HAZELCAST] Authorization codes stored in distributed map: {}", MAP_NAME);
+    }
+
+    @Override
+    public void save(AuthCodeKey key, AuthCodeEntry entry, Duration ttl) {
+        codes.set(key, entry, Math.max(1, ttl.toSeconds()), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Optional<AuthCodeEntry> consume(AuthCodeKey key) {
+        AuthCodeEntry entry = codes.remove(key);
+        if (entry != null) {
+            // Fire-and-forget: the redemption itself stays a single blocking map operation
+            long ttlSeconds = Duration.between(Instant.now(), entry.expiresAt()).toSeconds();
+            if (ttlSeconds > 0) {
+                tombstones.setAsync(key, entry.transaction().txnId(), ttlSeconds, TimeUnit.SECONDS);
+            }
+        }
+        return Optional.ofNullable(entry);
+    }
+
+    @Override
+    public Optional<String> findRedeemed(AuthCodeKey key) {
+        return Optional.ofNullable(tombstones.get(key));
+    }
+
+    @Override
+    public int removeExpired(Instant now) {
+        // Entries carry a per-entry TTL and are evicted by Hazelcast
+        return 0;
+    }
+
+    /**
+     * Codes owned by this member (backups excluded); {@code IMap.size()} would ask every member
+     */
+    @Override
+    public int size() {
+        return (int) codes.getLocalMapStats().getOwnedEntryCount();
+    }
+}
@@ -0,0 +1,91 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.config.OidcProperties;
+import ch.nullprofile.dto.AuthCodeEntry;
+import ch.nullprofile.dto.AuthCodeKey;
+import ch.nullprofile.util.TimingWheelCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * JVM-local authorization code store (default).
+ * Only suitable for single-replica deployments: /token must hit the node that ran /authorize.
+ *
+ * Codes are held in a {@link TimingWheelCache}: each code is dropped at its own deadline
+ * and the number of outstanding codes is capped (oidc.security.maxAuthCodes).
+ */
+@Component
+@ConditionalOnProperty(prefix = "oidc.auth-code-store", name = "type", havingValue = "memory", matchIfMissing = true)
+public class InMemoryAuthorizationCodeStore implements AuthorizationCodeStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryAuthorizationCodeStore.class);
+    private static final int WHEEL_SIZE = 1024; // 1s ticks, ~17 minutes per revolution
+
+    private final TimingWheelCache<AuthCodeKey, AuthCodeEntry> codes;
+
+    // Redeemed code -> txnId, kept until the code's original expiry
+    private final TimingWheelCache<AuthCodeKey, String> tombstones;
+
+    public InMemoryAuthorizationCodeStore(OidcProperties oidcProperties, MeterRegistry meterRegistry) {
+        this.codes = new TimingWheelCache<>(
+                Duration.ofSeconds(1),
+                WHEEL_SIZE,
+                oidcProperties.getSecurity().getMaxAuthCodes());
+        this.tombstones = new TimingWheelCache<>(
+                Duration.ofSeconds(1),
+                WHEEL_SIZE,
+                oidcProperties.getSecurity().getMaxAuthCodes());
+        Gauge.builder("oidc.auth_codes.size", codes, TimingWheelCache::size)
+                .description("Outstanding authorization codes held in memory")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void save(AuthCodeKey key, AuthCodeEntry entry, Duration ttl) {
+        codes.put(key, entry, entry.expiresAt());
+    }
+
+    @Override
+    public Optional<AuthCodeEntry> consume(AuthCodeKey key) {
+        AuthCodeEntry entry = codes.remove(key);
+        if (entry != null) {
+            tombstones.put(key, entry.transaction().txnId(), entry.expiresAt());
+        }
+        return Optional.ofNullable(entry);
+    }
+
+    @Override
+    public Optional<String> findRedeemed(AuthCodeKey key) {
+        return Optional.ofNullable(tombstones.get(key));
+    }
+
+    @Override
+    public int removeExpired(Instant now) {
+        tombstones.advance(now);
+        return codes.advance(now);
+    }
+
+    @Override
+    public int size() {
+        return codes.size();
+    }
+
+    /**
+     * Cleanup on shutdown
+     */
+    @PreDestroy
+    public void shutdown() {
+        logger.info("Clearing {} authorization codes on shutdown", codes.size());
+        codes.clear();
+        tombstones.clear();
+    }
+}
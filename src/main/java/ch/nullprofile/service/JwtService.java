@@ -1,30 +1,45 @@
 package ch.nullprofile.service;
 
+import ch.nullprofile.util.CompactJws;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JOSEObjectType;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
-import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.Ed25519Verifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
 import com.nimbusds.jose.jwk.JWK;
-import com.nimbusds.jose.jwk.RSAKey;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
-import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
+import java.text.ParseException;
 import java.time.Instant;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 @Service
 public class JwtService {
 
+    private static final JOSEObjectType ACCESS_TOKEN_TYPE = new JOSEObjectType("at+jwt");
+    private static final int MAX_CACHED_HEADERS = 64;
+    private static final int MAX_CACHED_VERIFIERS = 64;
+
+    /**
+     * Signatures in one {@link TokenBundle}, i.e. the capacity to reserve for it
+     */
+    public static final int TOKEN_BUNDLE_SIGNATURES = 2;
+
     @Value("${oidc.issuer}")
     private String issuer;
 
@@ -34,58 +49,36 @@ public class JwtService {
     @Value("${oidc.token.access-token-ttl-seconds:1800}")
     private int accessTokenTtlSeconds;
 
-    private RSAKey rsaKey;
-    private RSASSASigner signer;
-
-    @PostConstruct
-    public void init() throws NoSuchAlgorithmException {
-        // Generate RSA keypair at startup (dev mode)
-        // TODO: In production, load from secure storage
-        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
-        keyGen.initialize(2048);
-        KeyPair keyPair = keyGen.generateKeyPair();
+    private final SigningKeyService signingKeys;
+    private final TokenSigningExecutor signingExecutor;
+    private final Map<HeaderKey, CompactJws.Header> headers = new ConcurrentHashMap<>();
+    private final Map<String, JWSVerifier> verifiers = new ConcurrentHashMap<>();
 
-        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
-        RSAPrivateKey privateKey = (RSAPrivateKey) keyPair.getPrivate();
-
-        // Create JWK with kid
-        this.rsaKey = new RSAKey.Builder(publicKey)
-                .privateKey(privateKey)
-                .keyID(UUID.randomUUID().toString())
-                .algorithm(JWSAlgorithm.RS256)
-                .build();
+    /**
+     * Without a signing executor: both tokens of {@link #generateTokens} are signed on the caller thread
+     */
+    public JwtService(SigningKeyService signingKeys) {
+        this(signingKeys, null);
+    }
 
-        this.signer = new RSASSASigner(privateKey);
+    @Autowired
+    public JwtService(SigningKeyService signingKeys, TokenSigningExecutor signingExecutor) {
+        this.signingKeys = Objects.requireNonNull(signingKeys, "signingKeys");
+        this.signingExecutor = signingExecutor;
     }
 
     /**
      * Generate ID token. Lifetime is controlled by {@code oidc.token.id-token-ttl-seconds}.
      */
     public String generateIdToken(String sub, String audience, String nonce) {
-        try {
-            Instant now = Instant.now();
-            Instant expiry = now.plusSeconds(idTokenTtlSeconds);
-
-            JWTClaimsSet claims = new JWTClaimsSet.Builder()
-                    .issuer(issuer)
-                    .subject(sub)
-                    .audience(audience)
-                    .issueTime(Date.from(now))
-                    .expirationTime(Date.from(expiry))
-                    .claim("nonce", nonce)
-                    .build();
-
-            JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.RS256)
-                    .keyID(rsaKey.getKeyID())
-                    .build();
-
-            SignedJWT signedJWT = new SignedJWT(header, claims);
-            signedJWT.sign(signer);
-
-            return signedJWT.serialize();
-        } catch (JOSEException e) {
-            throw new RuntimeException("Failed to generate ID token", e);
-        }
+        return generateIdToken(sub, audience, nonce, JWSAlgorithm.RS256);
+    }
+
+    /**
+     * Generate ID token signed with {@code algorithm} (RS256 if that algorithm is not enabled)
+     */
+    public String generateIdToken(String sub, String audience, String nonce, JWSAlgorithm algorithm) {
+        return signIdToken(signingKeys.current(algorithm), Instant.now().getEpochSecond(), sub, audience, nonce);
     }
 
     /**
@@ -94,40 +87,194 @@ public class JwtService {
      * Contains only minimal OAuth 2.0 claims — no user profile data.
      */
     public String generateAccessToken(String sub, String clientId) {
+        return generateAccessToken(sub, clientId, JWSAlgorithm.RS256);
+    }
+
+    /**
+     * Generate access token signed with {@code algorithm} (RS256 if that algorithm is not enabled)
+     */
+    public String generateAccessToken(String sub, String clientId, JWSAlgorithm algorithm) {
+        return signAccessToken(signingKeys.current(algorithm), Instant.now().getEpochSecond(), sub, clientId);
+    }
+
+    /**
+     * ID token and access token for one /token response.
+     *
+     * Both share the signing key and issue time. They are signed in parallel on the
+     * {@link TokenSigningExecutor}, so the response waits for one signature rather than two and
+     * request threads never do the private-key work themselves. Throws
+     * {@link ch.nullprofile.exception.SigningCapacityExceededException} if the signing queue is full.
+     */
+    public TokenBundle generateTokens(String sub, String clientId, String nonce, JWSAlgorithm algorithm) {
+        if (signingExecutor == null) {
+            return generateTokens(sub, clientId, nonce, algorithm, null);
+        }
+        try (TokenSigningExecutor.Reservation reservation = signingExecutor.reserve(TOKEN_BUNDLE_SIGNATURES)) {
+            return generateTokens(sub, clientId, nonce, algorithm, reservation);
+        }
+    }
+
+    /**
+     * As {@link #generateTokens(String, String, String, JWSAlgorithm)}, on capacity the caller
+     * reserved beforehand ({@link #TOKEN_BUNDLE_SIGNATURES} signatures), so it is never rejected.
+     * A null reservation signs both tokens on the caller thread.
+     */
+    public TokenBundle generateTokens(String sub, String clientId, String nonce, JWSAlgorithm algorithm,
+                                      TokenSigningExecutor.Reservation reservation) {
+        SigningKeyService.SigningKey key = signingKeys.current(algorithm);
+        long now = Instant.now().getEpochSecond();
+
+        if (reservation == null) {
+            return new TokenBundle(
+                    signIdToken(key, now, sub, clientId, nonce),
+                    signAccessToken(key, now, sub, clientId),
+                    accessTokenTtlSeconds);
+        }
+
+        Future<String> idToken = reservation.submit(() -> signIdToken(key, now, sub, clientId, nonce));
+        Future<String> accessToken = reservation.submit(() -> signAccessToken(key, now, sub, clientId));
+        try {
+            return new TokenBundle(await(idToken), await(accessToken), accessTokenTtlSeconds);
+        } finally {
+            accessToken.cancel(false);
+        }
+    }
+
+    private String signIdToken(SigningKeyService.SigningKey key, long now,
+                               String sub, String audience, String nonce) {
+        try {
+            return CompactJws.sign(header(key, null), key.signer(), json -> {
+                json.writeStringField("iss", issuer);
+                json.writeStringField("sub", sub);
+                json.writeStringField("aud", audience);
+                json.writeNumberField("iat", now);
+                json.writeNumberField("exp", now + idTokenTtlSeconds);
+                if (nonce != null) {
+                    json.writeStringField("nonce", nonce);
+                }
+            });
+        } catch (JOSEException e) {
+            throw new RuntimeException("Failed to generate ID token", e);
+        }
+    }
+
+    private String signAccessToken(SigningKeyService.SigningKey key, long now, String sub, String clientId) {
         try {
-            Instant now = Instant.now();
-            Instant expiry = now.plusSeconds(accessTokenTtlSeconds);
-
-            JWTClaimsSet claims = new JWTClaimsSet.Builder()
-                    .issuer(issuer)
-                    .subject(sub)
-                    .audience(clientId)
-                    .issueTime(Date.from(now))
-                    .expirationTime(Date.from(expiry))
-                    .claim("scope", "openid")
-                    .claim("client_id", clientId)
-                    .jwtID(UUID.randomUUID().toString())
-                    .build();
-
-            JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.RS256)
-                    .keyID(rsaKey.getKeyID())
-                    .type(new JOSEObjectType("at+jwt"))
-                    .build();
-
-            SignedJWT signedJWT = new SignedJWT(header, claims);
-            signedJWT.sign(signer);
-
-            return signedJWT.serialize();
+            String jti = UUID.randomUUID().toString();
+
+            return CompactJws.sign(header(key, ACCESS_TOKEN_TYPE), key.signer(), json -> {
+                json.writeStringField("iss", issuer);
+                json.writeStringField("sub", sub);
+                json.writeStringField("aud", clientId);
+                json.writeNumberField("iat", now);
+                json.writeNumberField("exp", now + accessTokenTtlSeconds);
+                json.writeStringField("scope", "openid");
+                json.writeStringField("client_id", clientId);
+                json.writeStringField("jti", jti);
+            });
         } catch (JOSEException e) {
             throw new RuntimeException("Failed to generate access token", e);
         }
     }
 
+    private static String await(Future<String> token) {
+        try {
+            return token.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException("Failed to sign token", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            token.cancel(false);
+            throw new RuntimeException("Interrupted while signing token", e);
+        }
+    }
+
+    /**
+     * Encoded header for a signing key and token type; built once per (alg, kid, typ)
+     */
+    private CompactJws.Header header(SigningKeyService.SigningKey key, JOSEObjectType type) {
+        HeaderKey cacheKey = new HeaderKey(key.algorithm(), key.kid(), type);
+        CompactJws.Header header = headers.get(cacheKey);
+        if (header == null) {
+            if (headers.size() >= MAX_CACHED_HEADERS) {
+                // Only rotated-out kids accumulate; start over rather than track them
+                headers.clear();
+            }
+            header = headers.computeIfAbsent(cacheKey, k -> CompactJws.header(k.algorithm(), k.kid(), k.type()));
+        }
+        return header;
+    }
+
+    /**
+     * Claims of an access token we issued: signed by one of our published keys, typ at+jwt, our
+     * issuer and not yet expired. Empty for anything else, including ID tokens and tampered tokens.
+     */
+    public Optional<JWTClaimsSet> verifyAccessToken(String token) {
+        try {
+            SignedJWT jwt = SignedJWT.parse(token);
+            JWSHeader header = jwt.getHeader();
+            if (!ACCESS_TOKEN_TYPE.equals(header.getType()) || header.getKeyID() == null) {
+                return Optional.empty();
+            }
+            SigningKeyService.SigningKey key = signingKeys.published(header.getKeyID()).orElse(null);
+            if (key == null || !key.algorithm().equals(header.getAlgorithm()) || !jwt.verify(verifier(key))) {
+                return Optional.empty();
+            }
+
+            JWTClaimsSet claims = jwt.getJWTClaimsSet();
+            Date expiresAt = claims.getExpirationTime();
+            if (!issuer.equals(claims.getIssuer()) || expiresAt == null || !expiresAt.toInstant().isAfter(Instant.now())) {
+                return Optional.empty();
+            }
+            return Optional.of(claims);
+        } catch (ParseException | JOSEException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Verifier for a published key; built once per kid
+     */
+    private JWSVerifier verifier(SigningKeyService.SigningKey key) throws JOSEException {
+        JWSVerifier verifier = verifiers.get(key.kid());
+        if (verifier == null) {
+            if (verifiers.size() >= MAX_CACHED_VERIFIERS) {
+                // As with headers, only retired kids accumulate
+                verifiers.clear();
+            }
+            JWK publicJwk = key.jwk().toPublicJWK();
+            verifier = switch (publicJwk.getKeyType().getValue()) {
+                case "RSA" -> new RSASSAVerifier(publicJwk.toRSAKey());
+                case "EC" -> new ECDSAVerifier(publicJwk.toECKey());
+                default -> new Ed25519Verifier(publicJwk.toOctetKeyPair());
+            };
+            verifiers.put(key.kid(), verifier);
+        }
+        return verifier;
+    }
+
     /**
-     * Get public JWK for JWKS endpoint
+     * Public JWK of the key currently used for signing
      */
     public JWK getPublicJwk() {
-        return rsaKey.toPublicJWK();
+        return signingKeys.current().jwk().toPublicJWK();
+    }
+
+    /**
+     * All public JWKs for the JWKS endpoint, including upcoming and recently retired keys
+     */
+    public List<JWK> getPublicJwks() {
+        return signingKeys.publicKeys();
+    }
+
+    /**
+     * Enabled signing algorithms, for {@code id_token_signing_alg_values_supported}
+     */
+    public List<JWSAlgorithm> getSigningAlgorithms() {
+        return signingKeys.algorithms();
     }
 
     /**
@@ -136,4 +283,13 @@ public class JwtService {
     public int getAccessTokenTtlSeconds() {
         return accessTokenTtlSeconds;
     }
+
+    /**
+     * Tokens of one /token response; {@code expiresIn} is the access token lifetime in seconds
+     */
+    public record TokenBundle(String idToken, String accessToken, int expiresIn) {
+    }
+
+    private record HeaderKey(JWSAlgorithm algorithm, String kid, JOSEObjectType type) {
+    }
 }
@@ -0,0 +1,262 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.config.UsageMeteringProperties;
+import ch.nullprofile.util.HyperLogLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * HyperLogLog-backed MAU counting (usage.metering.mau-mode=SKETCH).
+ *
+ * Each (RP, month) seen by this replica has an in-memory sketch that the login path updates
+ * without locking. Sketches that changed are merged into mau_sketches on a schedule: the stored
+ * sketch is read FOR UPDATE, combined register-wise with the local one and written back, so
+ * replicas never overwrite each other's users. Re-merging the same registers is harmless, which
+ * lets the local sketch stay cumulative for the whole month.
+ *
+ * Clean sketches of past months are dropped after each flush. An {@link #add} that races with
+ * the drop puts the sketch back, so no user is lost to pruning.
+ *
+ * The sketches only replace the COUNT(DISTINCT) behind the MAU figures. The per-user rows in
+ * monthly_active_users are written in this mode too, on purpose: a sketch cannot say which users
+ * were active, and the retention bitmaps (built and reconciled from those rows), the
+ * active-recently count (last_seen_at) and the exact MAU that rollups measure retention against
+ * all need to. Skipping them would save the row writes but leave those figures empty.
+ */
+@Component
+public class MauSketchAccumulator {
+
+    private static final Logger logger = LoggerFactory.getLogger(MauSketchAccumulator.class);
+    private static final ZoneId EUROPE_ZURICH = ZoneId.of("Europe/Zurich");
+
+    // Idle sketches of past months are dropped once logins from the month's last hour are in
+    private static final Duration PRUNE_GRACE = Duration.ofHours(1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UsageMeteringProperties properties;
+    private final Clock clock;
+    private final int precision;
+    private final Map<SketchKey, LocalSketch> sketches = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Counter failedMerges;
+
+    @Autowired
+    public MauSketchAccumulator(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            UsageMeteringProperties properties,
+            MeterRegistry meterRegistry) {
+        this(jdbcTemplate, transactionManager, properties, meterRegistry, Clock.systemUTC());
+    }
+
+    MauSketchAccumulator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         UsageMeteringProperties properties, MeterRegistry meterRegistry, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.clock = clock;
+        this.precision = HyperLogLog.precisionFor(properties.getSketchRelativeError());
+
+        Gauge.builder("usage.metering.sketches.active", sketches, Map::size)
+                .description("(RP, month) MAU sketches held in memory")
+                .register(meterRegistry);
+        this.failedMerges = Counter.builder("usage.metering.sketches.merge.failures")
+                .description("MAU sketch merges that failed and will be retried")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.getMauMode() == UsageMeteringProperties.MauMode.SKETCH;
+    }
+
+    /**
+     * Record that userId was active for the RP in the given month
+     */
+    public void add(UUID relyingPartyId, LocalDate month, UUID userId) {
+        SketchKey key = new SketchKey(relyingPartyId, month);
+        LocalSketch sketch = sketches.computeIfAbsent(key, k -> new LocalSketch(new HyperLogLog(precision)));
+        if (sketch.hll().add(userId)) {
+            sketch.dirty().set(true);
+            // Pruned between the lookup and the add: put it back rather than lose the user
+            if (sketches.get(key) != sketch) {
+                reinstate(key, sketch);
+            }
+        }
+    }
+
+    /**
+     * Merge every changed sketch into mau_sketches
+     *
+     * @return number of sketches written
+     */
+    @Scheduled(fixedDelayString = "${usage.metering.sketch-flush-interval-millis:10000}")
+    public int flush() {
+        // Not synchronized: the merge transaction would pin the carrier of a virtual thread
+        flushLock.lock();
+        try {
+            return flushLocked();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int flushLocked() {
+        int written = 0;
+        for (Map.Entry<SketchKey, LocalSketch> entry : sketches.entrySet()) {
+            LocalSketch sketch = entry.getValue();
+            // Clear before serializing: an add racing with the write marks it dirty again
+            if (!sketch.dirty().compareAndSet(true, false)) {
+                continue;
+            }
+            try {
+                mergeIntoDatabase(entry.getKey(), sketch.hll());
+                written++;
+            } catch (RuntimeException e) {
+                sketch.dirty().set(true);
+                failedMerges.increment();
+                logger.error("Failed to merge MAU sketch: rpId={}, month={}",
+                        entry.getKey().relyingPartyId(), entry.getKey().month(), e);
+            }
+        }
+        pruneIdle();
+        if (written > 0) {
+            logger.debug("Merged MAU sketches: count={}", written);
+        }
+        return written;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Approximate MAU per month from the stored sketches; relyingPartyId null merges all RPs
+     */
+    public Map<LocalDate, Integer> estimateMonthlyActiveUsers(UUID relyingPartyId, LocalDate startMonth, LocalDate endMonth) {
+        String sql = relyingPartyId != null
+                ? "SELECT month, registers FROM mau_sketches WHERE relying_party_id = ? AND month >= ? AND month <= ? ORDER BY month"
+                : "SELECT month, registers FROM mau_sketches WHERE month >= ? AND month <= ? ORDER BY month";
+        Object[] params = relyingPartyId != null
+                ? new Object[]{relyingPartyId, Date.valueOf(startMonth), Date.valueOf(endMonth)}
+                : new Object[]{Date.valueOf(startMonth), Date.valueOf(endMonth)};
+
+        Map<LocalDate, HyperLogLog> byMonth = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            LocalDate month = rs.getDate("month").toLocalDate();
+            byMonth.merge(month, HyperLogLog.fromBytes(rs.getBytes("registers")), MauSketchAccumulator::union);
+        }, params);
+
+        Map<LocalDate, Integer> result = new LinkedHashMap<>();
+        byMonth.forEach((month, hll) -> result.put(month, (int) hll.estimate()));
+        return result;
+    }
+
+    /**
+     * Approximate MAU of every RP for one month from the stored sketches
+     */
+    public Map<UUID, Integer> estimateMonth(LocalDate month) {
+        Map<UUID, Integer> result = new HashMap<>();
+        jdbcTemplate.query("SELECT relying_party_id, registers FROM mau_sketches WHERE month = ?", rs -> {
+            result.put(rs.getObject("relying_party_id", UUID.class),
+                    (int) HyperLogLog.fromBytes(rs.getBytes("registers")).estimate());
+        }, Date.valueOf(month));
+        return result;
+    }
+
+    private void mergeIntoDatabase(SketchKey key, HyperLogLog local) {
+        Date month = Date.valueOf(key.month());
+        transactionTemplate.executeWithoutResult(status -> {
+            Timestamp now = Timestamp.from(clock.instant());
+            int inserted = jdbcTemplate.update("""
+                    INSERT INTO mau_sketches (relying_party_id, month, registers, updated_at)
+                    VALUES (?, ?, ?, ?)
+                    ON CONFLICT (relying_party_id, month) DO NOTHING
+                    """, key.relyingPartyId(), month, local.toBytes(), now);
+            if (inserted == 1) {
+                return;
+            }
+            List<byte[]> stored = jdbcTemplate.query(
+                    "SELECT registers FROM mau_sketches WHERE relying_party_id = ? AND month = ? FOR UPDATE",
+                    (rs, rowNum) -> rs.getBytes("registers"),
+                    key.relyingPartyId(), month);
+            HyperLogLog merged = union(HyperLogLog.fromBytes(stored.get(0)), local);
+            jdbcTemplate.update(
+                    "UPDATE mau_sketches SET registers = ?, updated_at = ? WHERE relying_party_id = ? AND month = ?",
+                    merged.toBytes(), now, key.relyingPartyId(), month);
+        });
+    }
+
+    /**
+     * Register-wise union; mismatched precisions are folded to the lower one
+     */
+    private static HyperLogLog union(HyperLogLog a, HyperLogLog b) {
+        int target = Math.min(a.precision(), b.precision());
+        HyperLogLog result = a.reducedTo(target);
+        result.merge(b.precision() == target ? b : b.reducedTo(target));
+        return result;
+    }
+
+    private void pruneIdle() {
+        ZonedDateTime cutoff = clock.instant().minus(PRUNE_GRACE).atZone(EUROPE_ZURICH);
+        LocalDate oldestLiveMonth = LocalDate.of(cutoff.getYear(), cutoff.getMonth(), 1);
+        for (Map.Entry<SketchKey, LocalSketch> entry : sketches.entrySet()) {
+            SketchKey key = entry.getKey();
+            LocalSketch sketch = entry.getValue();
+            if (key.month().isBefore(oldestLiveMonth) && !sketch.dirty().get()
+                    && sketches.remove(key, sketch) && sketch.dirty().get()) {
+                // An add got in after the check; either it or this re-check sees the removal
+                reinstate(key, sketch);
+            }
+        }
+    }
+
+    /**
+     * Put a pruned sketch back, folding it into a replacement if an add already created one
+     */
+    private void reinstate(SketchKey key, LocalSketch sketch) {
+        sketches.merge(key, sketch, (current, pruned) -> {
+            if (current != pruned) {
+                current.hll().merge(pruned.hll());
+                current.dirty().set(true);
+            }
+            return current;
+        });
+    }
+
+    private record SketchKey(UUID relyingPartyId, LocalDate month) {
+    }
+
+    private record LocalSketch(HyperLogLog hll, AtomicBoolean dirty) {
+        LocalSketch(HyperLogLog hll) {
+            this(hll, new AtomicBoolean());
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package ch.nullprofile.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Maintains the monthly range partitions of the metering tables (see V8 migration).
+ *
+ * Partitions for the current month and {@code usage.partitions.months-ahead} months after it are
+ * created ahead of time, so the usage writer rarely hits a month without a partition. If it does
+ * (this job lagging or failing), the rows land in the DEFAULT partition (V12); the next run creates
+ * the partition for every month found there and moves the rows into it. With
+ * {@code usage.partitions.retain-months} set, partitions older than that are detached and left
+ * behind as standalone tables for archiving; they are never dropped here.
+ *
+ * Does nothing unless the table is actually partitioned (e.g. on H2 or before the migration).
+ */
+@Component
+public class MeteringPartitionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(MeteringPartitionManager.class);
+    private static final ZoneId EUROPE_ZURICH = ZoneId.of("Europe/Zurich");
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    static final List<String> PARTITIONED_TABLES = List.of("monthly_active_users", "rp_monthly_counters");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int monthsAhead;
+    private final int retainMonths;
+
+    public MeteringPartitionManager(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${usage.partitions.months-ahead:3}") int monthsAhead,
+            @Value("${usage.partitions.retain-months:0}") int retainMonths,
+            @Value("${usage.rollup.horizon-months:24}") int horizonMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.monthsAhead = monthsAhead;
+        // The dashboard, rollups and retention need the horizon plus the month before it
+        int minimumRetain = horizonMonths + 1;
+        if (retainMonths > 0 && retainMonths < minimumRetain) {
+            logger.warn("usage.partitions.retain-months={} is below the dashboard horizon, using {}",
+                    retainMonths, minimumRetain);
+            retainMonths = minimumRetain;
+        }
+        this.retainMonths = retainMonths;
+    }
+
+    /**
+     * Create upcoming partitions and detach expired ones
+     */
+    @Scheduled(initialDelayString = "${usage.partitions.initial-delay-millis:10000}",
+            fixedDelayString = "${usage.partitions.interval-millis:86400000}")
+    public void maintain() {
+        try {
+            if (!isPostgres()) {
+                return;
+            }
+            LocalDate currentMonth = LocalDate.now(EUROPE_ZURICH).withDayOfMonth(1);
+            for (String table : PARTITIONED_TABLES) {
+                if (isPartitioned(table)) {
+                    maintain(table, currentMonth);
+                } else {
+                    logger.debug("Table is not partitioned, skipping: table={}", table);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Partition maintenance failed", e);
+        }
+    }
+
+    private void maintain(String table, LocalDate currentMonth) {
+        Set<String> existing = new HashSet<>(jdbcTemplate.queryForList("""
+                SELECT c.relname
+                FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                JOIN pg_class p ON p.oid = i.inhparent
+                WHERE p.relname = ?
+                """, String.class, table));
+
+        String defaultPartition = defaultPartitionName(table);
+        boolean hasDefault = existing.contains(defaultPartition);
+        LocalDate oldestRetained = retainMonths > 0 ? currentMonth.minusMonths(retainMonths - 1L) : null;
+
+        Set<LocalDate> months = new TreeSet<>();
+        for (int i = 0; i <= monthsAhead; i++) {
+            months.add(currentMonth.plusMonths(i));
+        }
+        if (hasDefault) {
+            // Months written while they had no partition; archived months stay where they are
+            jdbcTemplate.queryForList("SELECT DISTINCT month FROM %s".formatted(defaultPartition), Date.class).stream()
+                    .map(Date::toLocalDate)
+                    .filter(month -> oldestRetained == null || !month.isBefore(oldestRetained))
+                    .forEach(months::add);
+        }
+
+        for (LocalDate month : months) {
+            String partition = partitionName(table, month);
+            if (existing.contains(partition)) {
+                continue;
+            }
+            if (hasDefault) {
+                createMovingDefaultRows(table, defaultPartition, partition, month);
+            } else {
+                // IF NOT EXISTS: another replica may have just created it
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')"
+                        .formatted(partition, table, month, month.plusMonths(1)));
+                logger.info("Created partition: table={}, partition={}", table, partition);
+            }
+        }
+
+        if (oldestRetained == null) {
+            return;
+        }
+        for (String partition : existing) {
+            LocalDate month = monthOf(table, partition);
+            if (month != null && month.isBefore(oldestRetained)) {
+                jdbcTemplate.execute("ALTER TABLE %s DETACH PARTITION %s".formatted(table, partition));
+                logger.info("Detached partition for archiving: table={}, partition={}", table, partition);
+            }
+        }
+    }
+
+    /**
+     * Create a month's partition while rows of that month may sit in the default partition.
+     *
+     * PostgreS"""L refuses to add a partition for a range the default partition holds rows of, so
+     * the partition is created standalone, the rows are moved into it and it is then attached.
+     * Locking the default partition keeps writers and other replicas out until the transaction ends.
+     */
+    private void createMovingDefaultRows(String table, String defaultPartition, String partition, LocalDate month) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("LOCK TABLE %s IN EXCLUSIVE MODE".formatted(defaultPartition));
+            Boolean exists = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition);
+            if (Boolean.TRUE.equals(exists)) {
+                // Created by another replica meanwhile, or an archived partition of the same month
+                return;
+            }
+            jdbcTemplate.execute("CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS INCLUDING CONSTRAINTS)"
+                    .formatted(partition, table));
+            int moved = jdbcTemplate.update("""
+                    WITH moved AS (DELETE FROM %s WHERE month >= ? AND month < ? RETURNING *)
+                    INSERT INTO %s SELECT * FROM moved
+                    """.formatted(defaultPartition, partition), Date.valueOf(month), Date.valueOf(month.plusMonths(1)));
+            jdbcTemplate.execute("ALTER TABLE %s ATTACH PARTITION %s FOR VALUES FROM ('%s') TO ('%s')"
+                    .formatted(table, partition, month, month.plusMonths(1)));
+            if (moved > 0) {
+                logger.warn("Created partition and moved rows out of the default partition: table={}, partition={}, rows={}",
+                        table, partition, moved);
+            } else {
+                logger.info("Created partition: table={}, partition={}", table, partition);
+            }
+        });
+    }
+
+    static String defaultPartitionName(String table) {
+        return table + "_default";
+    }
+
+    static String partitionName(String table, LocalDate month) {
+        return table + "_p" + month.format(SUFFIX);
+    }
+
+    /**
+     * Month of a partition created by this class or the migration, or null for any other name
+     */
+    static LocalDate monthOf(String table, String partition) {
+        String prefix = table + "_p";
+        if (!partition.startsWith(prefix) || partition.length() != prefix.length() + 6) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(partition.substring(prefix.length()) + "01", DateTimeFormatter.ofPattern("yyyyMMdd"));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private boolean isPostgres() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        return "PostgreSQL".equals(product);
+    }
+
+    private boolean isPartitioned(String table) {
+        Boolean partitioned = jdbcTemplate.queryForObject("""
+                SELECT EXISTS (
+                    SELECT 1 FROM pg_partitioned_table pt
+                    JOIN pg_class c ON c.oid = pt.partrelid
+                    WHERE c.relname = ?
+                )
+                """, Boolean.class, table);
+        return Boolean.TRUE.equals(partitioned);
+    }
+}
@@ -1,7 +1,13 @@
 package ch.nullprofile.service;
 
 import ch.nullprofile.config.OidcProperties;
+import ch.nullprofile.dto.AuthCodeEntry;
+import ch.nullprofile.dto.AuthCodeKey;
 import ch.nullprofile.dto.OidcTransaction;
+import ch.nullprofile.util.CryptoPrimitives;
+import ch.nullprofile.util.TimingWheelCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpSession;
 import org.slf4j.Logger;
@@ -10,18 +16,17 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Base64;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Service for managing OIDC transactions in HTTP session
- * Authorization codes are stored in-memory indexed by code for session-independent token exchange
+ * Authorization codes are kept in an {@link AuthorizationCodeStore} indexed by the code's SHA-256
+ * digest for session-independent token exchange (in-memory or cluster-wide, see oidc.auth-code-store.type)
  */
 @Service
 public class OidcSessionTransactionService {
@@ -34,23 +39,15 @@ public class OidcSessionTransactionService {
     private final OidcProperties oidcProperties;
     
     // Store authorization codes independently of sessions
-    private final ConcurrentHashMap<String, AuthCodeEntry> authCodeStore = new ConcurrentHashMap<>();
+    private final AuthorizationCodeStore authCodeStore;
 
     // Store transactions by txnId for session-independent branding lookup
     // Needed because the branding request is cross-origin and may not carry the session cookie
-    private final ConcurrentHashMap<String, TxnCacheEntry> txnCache = new ConcurrentHashMap<>();
+    // Entries expire individually via a timing wheel (no periodic full scan)
+    private final TimingWheelCache<String, TxnCacheEntry> txnCache;
 
     private static final int TXN_CACHE_TTL_SECONDS = 600; // 10 minutes
-
-    /**
-     * Entry for authorization code store
-     */
-    private record AuthCodeEntry(
-            String codeHash,
-            OidcTransaction transaction,
-            Instant expiresAt,
-            boolean consumed
-    ) {}
+    private static final int TXN_CACHE_WHEEL_SIZE = 1024; // 1s ticks, ~17 minutes per revolution
 
     /**
      * Entry for transaction cache (branding + resume lookup without session)
@@ -65,8 +62,19 @@ public class OidcSessionTransactionService {
         }
     }
 
-    public OidcSessionTransactionService(OidcProperties oidcProperties) {
+    public OidcSessionTransactionService(
+            OidcProperties oidcProperties,
+            AuthorizationCodeStore authCodeStore,
+            MeterRegistry meterRegistry) {
         this.oidcProperties = oidcProperties;
+        this.authCodeStore = authCodeStore;
+        this.txnCache = new TimingWheelCache<>(
+                Duration.ofSeconds(1),
+                TXN_CACHE_WHEEL_SIZE,
+                oidcProperties.getSecurity().getMaxCachedTransactions());
+        Gauge.builder("oidc.txn_cache.size", txnCache, TimingWheelCache::size)
+                .description("Pending OIDC transactions cached by txnId")
+                .register(meterRegistry);
     }
 
     /**
@@ -97,7 +105,8 @@ public class OidcSessionTransactionService {
         session.setAttribute(ATTR_OIDC_TXN, txn);
 
         // Also cache by txnId for session-independent branding lookup
-        txnCache.put(txn.txnId(), new TxnCacheEntry(txn, Instant.now().plusSeconds(TXN_CACHE_TTL_SECONDS), null));
+        Instant txnExpiresAt = Instant.now().plusSeconds(TXN_CACHE_TTL_SECONDS);
+        txnCache.put(txn.txnId(), new TxnCacheEntry(txn, txnExpiresAt, null), txnExpiresAt);
 
         logger.info("Created OIDC transaction: txnId={}, rpId={}, authnRequired={}",
                 txn.txnId(), rpId, authnRequired);
@@ -157,16 +166,17 @@ public class OidcSessionTransactionService {
         secureRandom.nextBytes(randomBytes);
         String authCode = Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
 
-        // Hash the code
-        String authCodeHash = sha256Hash(authCode);
+        // Hash the code; only the digest is kept server-side
+        AuthCodeKey authCodeKey = AuthCodeKey.of(authCode);
+        String authCodeHash = authCodeKey.toBase64();
 
         // Calculate expiry
         int validitySeconds = oidcProperties.getSecurity().getAuthCodeValiditySeconds();
         Instant expiresAt = Instant.now().plusSeconds(validitySeconds);
 
-        // Store in auth code store (indexed by plaintext code for lookup during token exchange)
-        AuthCodeEntry entry = new AuthCodeEntry(authCodeHash, txn, expiresAt, false);
-        authCodeStore.put(authCode, entry);
+        // Store in auth code store (indexed by code digest for lookup during token exchange)
+        AuthCodeEntry entry = new AuthCodeEntry(txn, expiresAt);
+        authCodeStore.save(authCodeKey, entry, Duration.ofSeconds(validitySeconds));
 
         // Update transaction with auth code
         OidcTransaction updatedTxn = txn.withAuthCode(authCodeHash, expiresAt);
@@ -205,7 +215,7 @@ public class OidcSessionTransactionService {
         }
 
         // Verify hash
-        String providedHash = sha256Hash(authCode);
+        String providedHash = AuthCodeKey.of(authCode).toBase64();
         if (!txn.authCodeHash().equals(providedHash)) {
             logger.warn("Auth code hash mismatch: txnId={}", txn.txnId());
             return false;
@@ -226,42 +236,29 @@ public class OidcSessionTransactionService {
      * Returns the transaction if valid, empty if invalid/expired/consumed
      */
     public Optional<OidcTransaction> validateAndConsumeAuthCode(String authCode) {
-        AuthCodeEntry entry = authCodeStore.get(authCode);
+        // Single atomic remove: only one redemption can ever receive the entry (one-time use)
+        AuthCodeKey authCodeKey = AuthCodeKey.of(authCode);
+        Optional<AuthCodeEntry> entryOpt = authCodeStore.consume(authCodeKey);
         
-        if (entry == null) {
-            logger.warn("Auth code not found in store");
+        if (entryOpt.isEmpty()) {
+            // Miss path only: distinguish a replayed code from an unknown/expired one
+            authCodeStore.findRedeemed(authCodeKey).ifPresentOrElse(
+                    txnId -> logger.warn("Auth code replay detected: txnId={}", txnId),
+                    () -> logger.warn("Auth code not found in store"));
             return Optional.empty();
         }
 
-        // Check if already consumed
-        if (entry.consumed()) {
-            logger.warn("Auth code already consumed: txnId={}", entry.transaction().txnId());
-            authCodeStore.remove(authCode);
-            return Optional.empty();
-        }
+        AuthCodeEntry entry = entryOpt.get();
 
         // Check expiry
-        if (Instant.now().isAfter(entry.expiresAt())) {
+        if (entry.isExpired(Instant.now())) {
             logger.warn("Auth code expired: txnId={}, expiresAt={}", 
                     entry.transaction().txnId(), entry.expiresAt());
-            authCodeStore.remove(authCode);
             return Optional.empty();
         }
 
-        // Mark as consumed (one-time use)
-        AuthCodeEntry consumedEntry = new AuthCodeEntry(
-                entry.codeHash(), 
-                entry.transaction(), 
-                entry.expiresAt(), 
-                true
-        );
-        authCodeStore.put(authCode, consumedEntry);
-
         logger.info("Auth code validated and consumed: txnId={}", entry.transaction().txnId());
 
-        // Remove from store after brief delay to prevent replay attacks
-        authCodeStore.remove(authCode);
-
         return Optional.of(entry.transaction());
     }
 
@@ -320,9 +317,8 @@ public class OidcSessionTransactionService {
      * Called after WebAuthn verify so /authorize/resume can retrieve it without a session cookie.
      */
     public void setAuthenticatedUserIdForTxn(String txnId, UUID userId) {
-        TxnCacheEntry entry = txnCache.get(txnId);
+        TxnCacheEntry entry = txnCache.update(txnId, e -> e.withAuthenticatedUserId(userId));
         if (entry != null) {
-            txnCache.put(txnId, entry.withAuthenticatedUserId(userId));
             logger.info("Stored authenticated userId in txnCache: txnId={}, userId={}", txnId, userId);
         } else {
             logger.warn("Cannot store userId: txnId not found in cache: {}", txnId);
@@ -334,7 +330,7 @@ public class OidcSessionTransactionService {
      */
     public Optional<UUID> getAuthenticatedUserIdByTxnId(String txnId) {
         TxnCacheEntry entry = txnCache.get(txnId);
-        if (entry == null || Instant.now().isAfter(entry.expiresAt())) {
+        if (entry == null) {
             return Optional.empty();
         }
         return Optional.ofNullable(entry.authenticatedUserId());
@@ -347,47 +343,29 @@ public class OidcSessionTransactionService {
     public Optional<OidcTransaction> getTransactionByTxnId(String txnId) {
         TxnCacheEntry entry = txnCache.get(txnId);
         if (entry == null) {
-            logger.warn("txnId not found in cache: {}", txnId);
-            return Optional.empty();
-        }
-        if (Instant.now().isAfter(entry.expiresAt())) {
-            logger.warn("txnId cache entry expired: {}", txnId);
-            txnCache.remove(txnId);
+            logger.warn("txnId not found in cache or expired: {}", txnId);
             return Optional.empty();
         }
         return Optional.of(entry.transaction());
     }
 
     /**
-     * Cleanup expired authorization codes and transaction cache entries.
-     * Runs every minute
+     * Expire authorization codes and transaction cache entries at their deadline.
+     * Runs every second; each tick only visits the timing-wheel buckets that just elapsed
      */
-    @Scheduled(fixedRate = 60000)
+    @Scheduled(fixedRate = 1000)
     public void cleanupExpiredAuthCodes() {
         Instant now = Instant.now();
-        int removed = 0;
-        
-        for (var entry : authCodeStore.entrySet()) {
-            if (now.isAfter(entry.getValue().expiresAt())) {
-                authCodeStore.remove(entry.getKey());
-                removed++;
-            }
-        }
+        int removed = authCodeStore.removeExpired(now);
         
         if (removed > 0) {
-            logger.info("Cleaned up {} expired authorization codes", removed);
+            logger.debug("Expired {} authorization codes", removed);
         }
 
-        int txnRemoved = 0;
-        for (var entry : txnCache.entrySet()) {
-            if (now.isAfter(entry.getValue().expiresAt())) {
-                txnCache.remove(entry.getKey());
-                txnRemoved++;
-            }
-        }
+        int txnRemoved = txnCache.advance(now);
 
         if (txnRemoved > 0) {
-            logger.info("Cleaned up {} expired transaction cache entries", txnRemoved);
+            logger.debug("Expired {} transaction cache entries", txnRemoved);
         }
     }
 
@@ -396,8 +374,6 @@ public class OidcSessionTransactionService {
      */
     @PreDestroy
     public void shutdown() {
-        logger.info("Clearing {} authorization codes on shutdown", authCodeStore.size());
-        authCodeStore.clear();
         logger.info("Clearing {} transaction cache entries on shutdown", txnCache.size());
         txnCache.clear();
     }
@@ -452,23 +428,8 @@ public class OidcSessionTransactionService {
 
     // Helper methods
 
-    private String sha256Hash(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(hash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 not available", e);
-        }
-    }
-
     private String sha256Base64Url(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes(StandardCharsets.US_ASCII));
-            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 not available", e);
-        }
+        byte[] hash = CryptoPrimitives.sha256(input.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
     }
 }
@@ -1,26 +1,48 @@
 package ch.nullprofile.service;
 
+import ch.nullprofile.util.CryptoPrimitives;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Base64;
 import java.util.UUID;
 
 @Service
 public class PairwiseSubjectService {
 
-    private final String platformSalt;
+    // Keyed once with the platform salt; instances are pooled and reused across requests
+    private final CryptoPrimitives.HmacSha256 hmac;
 
-    public PairwiseSubjectService(@Value("${platform.sub.salt}") String platformSalt) {
+    // Optional memo of derived subs; null when disabled
+    private final Cache<SubjectKey, String> cache;
+
+    public PairwiseSubjectService(
+            @Value("${platform.sub.salt}") String platformSalt,
+            @Value("${platform.sub.cache.enabled:false}") boolean cacheEnabled,
+            @Value("${platform.sub.cache.max-size:100000}") long cacheMaxSize,
+            @Value("${platform.sub.cache.ttl-seconds:3600}") long cacheTtlSeconds,
+            MeterRegistry meterRegistry) {
         if (platformSalt == null || platformSalt.isBlank()) {
             throw new IllegalArgumentException("PLATFORM_SUB_SALT must be set");
         }
-        this.platformSalt = platformSalt;
+        this.hmac = CryptoPrimitives.hmacSha256(platformSalt.getBytes(StandardCharsets.UTF_8));
+
+        if (cacheEnabled) {
+            this.cache = Caffeine.newBuilder()
+                    .maximumSize(cacheMaxSize)
+                    .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "pairwise-subs");
+        } else {
+            this.cache = null;
+        }
     }
 
     /**
@@ -28,24 +50,22 @@ public class PairwiseSubjectService {
      * sub = base64url(HMAC-SHA-256(platformSalt, userId + 0x1F + sectorId))
      */
     public String generatePairwiseSub(UUID userId, String sectorId) {
-        try {
-            // Concatenate userId + 0x1F + sectorId
-            String input = userId.toString() + "\u001F" + sectorId;
-            
-            // Create HMAC-SHA-256
-            Mac mac = Mac.getInstance("HmacSHA256");
-            SecretKeySpec secretKey = new SecretKeySpec(
-                platformSalt.getBytes(StandardCharsets.UTF_8),
-                "HmacSHA256"
-            );
-            mac.init(secretKey);
-            
-            byte[] hash = mac.doFinal(input.getBytes(StandardCharsets.UTF_8));
-            
-            // Base64 URL encode without padding
-            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
-        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-            throw new RuntimeException("Failed to generate pairwise subject", e);
+        if (cache == null) {
+            return computePairwiseSub(userId, sectorId);
         }
+        return cache.get(new SubjectKey(userId, sectorId), key -> computePairwiseSub(key.userId(), key.sectorId()));
+    }
+
+    private String computePairwiseSub(UUID userId, String sectorId) {
+        // Concatenate userId + 0x1F + sectorId
+        String input = userId.toString() + "\u001F" + sectorId;
+
+        byte[] hash = hmac.mac(input.getBytes(StandardCharsets.UTF_8));
+
+        // Base64 URL encode without padding
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    private record SubjectKey(UUID userId, String sectorId) {
     }
 }
@@ -0,0 +1,115 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.dto.RelyingPartySnapshot;
+import ch.nullprofile.entity.RedirectUri;
+import ch.nullprofile.repository.RedirectUriRepository;
+import ch.nullprofile.repository.RelyingPartyRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.topic.ITopic;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Read-through cache of relying parties for the login hot path.
+ *
+ * Each entry is an immutable {@link RelyingPartySnapshot} (RP plus redirect URIs) loaded with
+ * two queries on first use and then served from memory. Writes evict the entry after their
+ * transaction commits and broadcast the rpId on a Hazelcast topic so other replicas evict too.
+ * The TTL is only a safety net for a missed broadcast.
+ */
+@Service
+public class RelyingPartyRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(RelyingPartyRegistry.class);
+
+    static final String INVALIDATION_TOPIC = "oidc:rp-invalidations";
+
+    private final RelyingPartyRepository relyingPartyRepository;
+    private final RedirectUriRepository redirectUriRepository;
+    private final Cache<String, RelyingPartySnapshot> snapshots;
+    private final ITopic<String> invalidations;
+    private final UUID listenerRegistration;
+
+    public RelyingPartyRegistry(
+            RelyingPartyRepository relyingPartyRepository,
+            RedirectUriRepository redirectUriRepository,
+            HazelcastInstance hazelcastInstance,
+            MeterRegistry meterRegistry,
+            @Value("${oidc.rp-cache.max-size:10000}") long maxSize,
+            @Value("${oidc.rp-cache.ttl-seconds:900}") long ttlSeconds) {
+        this.relyingPartyRepository = relyingPartyRepository;
+        this.redirectUriRepository = redirectUriRepository;
+        this.snapshots = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, snapshots, "relying-parties");
+
+        this.invalidations = hazelcastInstance.getTopic(INVALIDATION_TOPIC);
+        this.listenerRegistration = invalidations.addMessageListener(message -> {
+            logger.debug("Relying party invalidated by cluster: rpId={}", message.getMessageObject());
+            snapshots.invalidate(message.getMessageObject());
+        });
+    }
+
+    /**
+     * Lookup relying party by rpId (client_id); unknown clients are not cached
+     */
+    public Optional<RelyingPartySnapshot> find(String rpId) {
+        if (rpId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(snapshots.get(rpId, this::load));
+    }
+
+    /**
+     * Evict rpId on every replica once the current transaction commits (immediately if there is none)
+     */
+    public void invalidateAfterCommit(String rpId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(rpId);
+                }
+            });
+        } else {
+            invalidate(rpId);
+        }
+    }
+
+    private void invalidate(String rpId) {
+        // Evict locally first so this replica reads its own write without waiting for the broadcast
+        snapshots.invalidate(rpId);
+        invalidations.publish(rpId);
+    }
+
+    private RelyingPartySnapshot load(String rpId) {
+        return relyingPartyRepository.findByRpId(rpId)
+                .map(rp -> RelyingPartySnapshot.of(rp,
+                        redirectUriRepository.findByRelyingPartyId(rp.getId()).stream()
+                                .map(RedirectUri::getUri)
+                                .toList()))
+                .orElse(null);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        invalidations.removeMessageListener(listenerRegistration);
+        snapshots.invalidateAll();
+    }
+}
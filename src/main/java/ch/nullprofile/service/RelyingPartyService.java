@@ -5,6 +5,7 @@ import ch.nullprofile.entity.RedirectUri;
 import ch.nullprofile.entity.RelyingParty;
 import ch.nullprofile.repository.RedirectUriRepository;
 import ch.nullprofile.repository.RelyingPartyRepository;
+import com.nimbusds.jose.JWSAlgorithm;
 import jakarta.persistence.EntityManager;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -21,30 +22,46 @@ public class RelyingPartyService {
     private final RelyingPartyRepository relyingPartyRepository;
     private final RedirectUriRepository redirectUriRepository;
     private final EntityManager entityManager;
+    private final RelyingPartyRegistry relyingPartyRegistry;
+    private final UsageRollupService usageRollupService;
+    private final SigningKeyService signingKeyService;
 
     public RelyingPartyService(
             RelyingPartyRepository relyingPartyRepository,
             RedirectUriRepository redirectUriRepository,
-            EntityManager entityManager) {
+            EntityManager entityManager,
+            RelyingPartyRegistry relyingPartyRegistry,
+            UsageRollupService usageRollupService,
+            SigningKeyService signingKeyService) {
         this.relyingPartyRepository = relyingPartyRepository;
         this.redirectUriRepository = redirectUriRepository;
         this.entityManager = entityManager;
+        this.relyingPartyRegistry = relyingPartyRegistry;
+        this.usageRollupService = usageRollupService;
+        this.signingKeyService = signingKeyService;
     }
 
     /**
-     * Lookup relying party by rpId (client_id)
+     * Whether tokens can be signed with this JWS algorithm name (RS256, ES256, EdDSA, if enabled)
+     */
+    public boolean isSigningAlgSupported(String signingAlg) {
+        return signingKeyService.isEnabled(JWSAlgorithm.parse(signingAlg));
+    }
+
+    /**
+     * Lookup relying party by rpId (client_id), served from the registry
      */
     public Optional<RelyingParty> findByRpId(String rpId) {
-        return relyingPartyRepository.findByRpId(rpId);
+        return relyingPartyRegistry.find(rpId).map(RelyingPartySnapshot::toEntity);
     }
 
     /**
-     * Validate redirect URI with exact match
+     * Validate redirect URI with exact match against the registry snapshot
      */
     public boolean isRedirectUriValid(RelyingParty relyingParty, String redirectUri) {
-        return redirectUriRepository
-                .findByRelyingPartyIdAndUri(relyingParty.getId(), redirectUri)
-                .isPresent();
+        return relyingPartyRegistry.find(relyingParty.getRpId())
+                .map(snapshot -> snapshot.isRedirectUriRegistered(redirectUri))
+                .orElse(false);
     }
 
     /**
@@ -84,7 +101,8 @@ public class RelyingPartyService {
                                     rp.getBrandingLogoUrl(),
                                     rp.getBrandingPrimaryColor(),
                                     rp.getBrandingSecondaryColor()
-                            )
+                            ),
+                            rp.getSigningAlg()
                     );
                 });
     }
@@ -107,11 +125,15 @@ public class RelyingPartyService {
         rp.setBrandingLogoUrl(request.logoUrl());
         rp.setBrandingPrimaryColor(request.primaryColor());
         rp.setBrandingSecondaryColor(request.secondaryColor());
+        if (request.signingAlg() != null) {
+            rp.setSigningAlg(request.signingAlg());
+        }
         rp.setCreatedByUserId(userId);
         rp.setStatus("ACTIVE");
         rp.setPlanTier("FREE");
 
         rp = relyingPartyRepository.save(rp);
+        relyingPartyRegistry.invalidateAfterCommit(rp.getRpId());
 
         // Create redirect URIs
         for (String uri : request.redirectUris()) {
@@ -131,7 +153,8 @@ public class RelyingPartyService {
                         rp.getBrandingLogoUrl(),
                         rp.getBrandingPrimaryColor(),
                         rp.getBrandingSecondaryColor()
-                )
+                ),
+                rp.getSigningAlg()
         );
     }
 
@@ -159,8 +182,12 @@ public class RelyingPartyService {
                     if (request.secondaryColor() != null) {
                         rp.setBrandingSecondaryColor(request.secondaryColor());
                     }
+                    if (request.signingAlg() != null) {
+                        rp.setSigningAlg(request.signingAlg());
+                    }
 
                     rp = relyingPartyRepository.save(rp);
+                    relyingPartyRegistry.invalidateAfterCommit(rp.getRpId());
 
                     // Update redirect URIs if provided
                     if (request.redirectUris() != null) {
@@ -193,7 +220,8 @@ public class RelyingPartyService {
                                     rp.getBrandingLogoUrl(),
                                     rp.getBrandingPrimaryColor(),
                                     rp.getBrandingSecondaryColor()
-                            )
+                            ),
+                            rp.getSigningAlg()
                     );
                 });
     }
@@ -212,6 +240,8 @@ public class RelyingPartyService {
                     
                     // Delete relying party
                     relyingPartyRepository.delete(rp);
+                    relyingPartyRegistry.invalidateAfterCommit(rp.getRpId());
+                    usageRollupService.evict(rp.getId());
                     
                     return true;
                 })
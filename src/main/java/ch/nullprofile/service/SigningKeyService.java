@@ -0,0 +1,469 @@
+package ch.nullprofile.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.Ed25519Signer;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.OctetKeyPairGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * JWT signing keys, persisted in signing_keys and shared by all replicas.
+ *
+ * There is one signing key per enabled algorithm ({@code oidc.signing-keys.algorithms}; RS256 is
+ * always enabled as the OIDC default). Every replica loads the same rows and picks the same key per
+ * algorithm: the one with the latest activation that is not yet retired. A successor is created
+ * {@code publish-ahead-hours} before the current key has been active for
+ * {@code rotation-interval-days}, so relying parties see it in the JWKS before the first token is
+ * signed with it. Retired keys stay published until the longest token lifetime has passed.
+ * Whichever replica gets the table lock first creates the successor; the others pick it up on
+ * their next refresh.
+ *
+ * Private keys are stored AES-GCM encrypted with {@code oidc.signing-keys.encryption-key}. Startup
+ * fails without that key unless {@code oidc.signing-keys.ephemeral} is set: in-memory keys per
+ * process, for local development and tests only. Tokens then do not survive a restart and replicas
+ * cannot share keys.
+ */
+@Service
+public class SigningKeyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SigningKeyService.class);
+
+    /**
+     * Algorithms a relying party can choose; RS256 is the default and always enabled
+     */
+    public static final List<JWSAlgorithm> SUPPORTED_ALGORITHMS =
+            List.of(JWSAlgorithm.RS256, JWSAlgorithm.ES256, JWSAlgorithm.EdDSA);
+
+    private static final int RSA_KEY_SIZE = 2048;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    // A key activating this soon counts as current, so replicas with slightly different clocks
+    // neither create a second key next to one just inserted nor find no current key
+    static final Duration CLOCK_SKEW = Duration.ofMinutes(1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SecretKey encryptionKey;
+    private final List<JWSAlgorithm> algorithms;
+    private final Duration rotationInterval;
+    private final Duration publishAhead;
+    private final Duration verificationGrace;
+    private final Clock clock;
+    private final SecureRandom random = new SecureRandom();
+    // Decrypted keys by kid, so a refresh only decrypts new rows
+    private final Map<String, SigningKey> decrypted = new HashMap<>();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    private volatile KeySet keySet;
+    private final ApplicationEventPublisher events;
+
+    @Autowired
+    public SigningKeyService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ApplicationEventPublisher events,
+            @Value("${oidc.signing-keys.encryption-key:}") String encryptionKey,
+            @Value("${oidc.signing-keys.ephemeral:false}") boolean ephemeral,
+            @Value("${oidc.signing-keys.algorithms:RS256,ES256,EdDSA}") List<String> algorithms,
+            @Value("${oidc.signing-keys.rotation-interval-days:30}") int rotationIntervalDays,
+            @Value("${oidc.signing-keys.publish-ahead-hours:24}") int publishAheadHours,
+            @Value("${oidc.token.id-token-ttl-seconds:3600}") int idTokenTtlSeconds,
+            @Value("${oidc.token.access-token-ttl-seconds:1800}") int accessTokenTtlSeconds) {
+        this(jdbcTemplate, transactionManager, events, encryptionKey, ephemeral, parseAlgorithms(algorithms),
+                Duration.ofDays(rotationIntervalDays), Duration.ofHours(publishAheadHours),
+                Duration.ofSeconds(Math.max(idTokenTtlSeconds, accessTokenTtlSeconds)), Clock.systemUTC());
+    }
+
+    SigningKeyService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                      ApplicationEventPublisher events, String encryptionKey, boolean ephemeral,
+                      List<JWSAlgorithm> algorithms, Duration rotationInterval, Duration publishAhead,
+                      Duration verificationGrace, Clock clock) {
+        boolean persistent = encryptionKey != null && !encryptionKey.isBlank();
+        if (!persistent && !ephemeral) {
+            throw new IllegalStateException("oidc.signing-keys.encryption-key is not set; "
+                    + "set oidc.signing-keys.ephemeral=true to use per-process keys (development only)");
+        }
+        this.jdbcTemplate = persistent ? jdbcTemplate : null;
+        this.transactionTemplate = persistent ? new TransactionTemplate(transactionManager) : null;
+        this.encryptionKey = persistent ? parseEncryptionKey(encryptionKey) : null;
+        this.algorithms = List.copyOf(algorithms);
+        this.rotationInterval = rotationInterval;
+        this.publishAhead = publishAhead;
+        this.verificationGrace = verificationGrace;
+        this.clock = clock;
+        this.events = events;
+    }
+
+    /**
+     * In-memory service with one generated key per supported algorithm (no database)
+     */
+    public static SigningKeyService ephemeral() {
+        SigningKeyService service = new SigningKeyService(null, null, null, null, true, SUPPORTED_ALGORITHMS,
+                Duration.ZERO, Duration.ZERO, Duration.ZERO, Clock.systemUTC());
+        service.init();
+        return service;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isPersistent()) {
+            logger.warn("oidc.signing-keys.ephemeral is set: using ephemeral signing keys, "
+                    + "tokens will not survive a restart and replicas will not share keys");
+            Map<JWSAlgorithm, SigningKey> current = new LinkedHashMap<>();
+            for (JWSAlgorithm algorithm : algorithms) {
+                current.put(algorithm, generate(algorithm, clock.instant(), Instant.MAX, Instant.MAX));
+            }
+            keySet = new KeySet(Map.copyOf(current), List.copyOf(current.values()));
+            return;
+        }
+        // Fail startup rather than sign with a key the other replicas do not publish
+        refresh();
+        logger.info("Signing keys loaded: algorithms={}, publishedKids={}", algorithms,
+                keySet.published().stream().map(SigningKey::kid).toList());
+    }
+
+    /**
+     * RS256 key for signing new tokens
+     */
+    public SigningKey current() {
+        return current(JWSAlgorithm.RS256);
+    }
+
+    /**
+     * Key for signing new tokens with {@code algorithm}; the RS256 key if that algorithm is not enabled
+     */
+    public SigningKey current(JWSAlgorithm algorithm) {
+        SigningKey key = keySet.current().get(algorithm);
+        return key != null ? key : keySet.current().get(JWSAlgorithm.RS256);
+    }
+
+    /**
+     * Enabled signing algorithms, RS256 first
+     */
+    public List<JWSAlgorithm> algorithms() {
+        return algorithms;
+    }
+
+    public boolean isEnabled(JWSAlgorithm algorithm) {
+        return algorithms.contains(algorithm);
+    }
+
+    /**
+     * Public keys for the JWKS: upcoming, current and recently retired keys of every algorithm
+     */
+    public List<JWK> publicKeys() {
+        return keySet.published().stream().map(key -> key.jwk().toPublicJWK()).toList();
+    }
+
+    /**
+     * Published key with this kid (any algorithm, including upcoming and retired keys), for verification
+     */
+    public Optional<SigningKey> published(String kid) {
+        for (SigningKey key : keySet.published()) {
+            if (key.kid().equals(kid)) {
+                return Optional.of(key);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public boolean isPersistent() {
+        return encryptionKey != null;
+    }
+
+    /**
+     * Reload the keys and create successors when rotation is due; a failure keeps the loaded keys
+     */
+    @Scheduled(initialDelayString = "${oidc.signing-keys.refresh-interval-millis:60000}",
+            fixedDelayString = "${oidc.signing-keys.refresh-interval-millis:60000}")
+    public void scheduledRefresh() {
+        if (!isPersistent()) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            logger.error("Failed to refresh signing keys, keeping the loaded keys", e);
+        }
+    }
+
+    void refresh() {
+        refreshLock.lock();
+        try {
+            refreshLocked();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private void refreshLocked() {
+        Instant now = clock.instant();
+        List<StoredKey> stored = load(now);
+        if (algorithms.stream().anyMatch(algorithm -> rotationDue(stored, algorithm, now) != null)) {
+            transactionTemplate.executeWithoutResult(status -> {
+                // Serializes rotation across replicas; the loser sees the winner's rows and does nothing
+                jdbcTemplate.execute("LOCK TABLE signing_keys IN EXCLUSIVE MODE");
+                // Waiting for the lock can take a while: decide with the time it was acquired at
+                Instant lockedAt = clock.instant();
+                List<StoredKey> locked = load(lockedAt);
+                for (JWSAlgorithm algorithm : algorithms) {
+                    Instant activatesAt = rotationDue(locked, algorithm, lockedAt);
+                    if (activatesAt != null) {
+                        insert(generate(algorithm, activatesAt, activatesAt.plus(rotationInterval).plus(publishAhead), null));
+                    }
+                }
+            });
+        }
+        Instant loadedAt = clock.instant();
+        List<StoredKey> rows = load(loadedAt);
+
+        // Keys of a disabled algorithm stay published until they expire, but no longer sign
+        List<SigningKey> published = new ArrayList<>(rows.size());
+        for (StoredKey row : rows) {
+            published.add(decrypted.computeIfAbsent(row.kid(), kid -> decrypt(row)));
+        }
+        decrypted.keySet().retainAll(rows.stream().map(StoredKey::kid).toList());
+
+        Map<JWSAlgorithm, SigningKey> current = new LinkedHashMap<>();
+        for (JWSAlgorithm algorithm : algorithms) {
+            SigningKey key = published.stream()
+                    .filter(candidate -> candidate.algorithm().equals(algorithm))
+                    .filter(candidate -> isCurrent(candidate.activatesAt(), candidate.retiresAt(), loadedAt))
+                    .max(Comparator.comparing(SigningKey::activatesAt))
+                    .orElseThrow(() -> new IllegalStateException("No active signing key for " + algorithm));
+            current.put(algorithm, key);
+        }
+
+        KeySet previous = keySet;
+        keySet = new KeySet(Map.copyOf(current), List.copyOf(published));
+        if (previous != null) {
+            current.forEach((algorithm, key) -> {
+                SigningKey before = previous.current().get(algorithm);
+                if (before != null && !before.kid().equals(key.kid())) {
+                    logger.info("Signing key rotated: algorithm={}, previousKid={}, signingKid={}",
+                            algorithm, before.kid(), key.kid());
+                }
+            });
+            List<String> publishedKids = published.stream().map(SigningKey::kid).toList();
+            if (events != null && !publishedKids.equals(previous.published().stream().map(SigningKey::kid).toList())) {
+                events.publishEvent(new SigningKeysChangedEvent(publishedKids));
+            }
+        }
+    }
+
+    /**
+     * Activation time for a new key of {@code algorithm}, or null if none is needed
+     */
+    private Instant rotationDue(List<StoredKey> stored, JWSAlgorithm algorithm, Instant now) {
+        List<StoredKey> keys = stored.stream().filter(key -> key.algorithm().equals(algorithm)).toList();
+        StoredKey current = keys.stream()
+                .filter(key -> isCurrent(key.activatesAt(), key.retiresAt(), now))
+                .max(Comparator.comparing(StoredKey::activatesAt))
+                .orElse(null);
+        if (current == null) {
+            // First start, newly enabled algorithm, or every key retired while the service was down
+            return now;
+        }
+        boolean successorExists = keys.stream().anyMatch(key -> key.activatesAt().isAfter(current.activatesAt()));
+        Instant rotateAt = current.activatesAt().plus(rotationInterval);
+        if (successorExists || now.isBefore(rotateAt.minus(publishAhead))) {
+            return null;
+        }
+        // Late (e.g. after downtime): still give relying parties notice, but never leave a gap
+        Instant activatesAt = rotateAt.isAfter(now.plus(publishAhead)) ? rotateAt : now.plus(publishAhead);
+        return activatesAt.isAfter(current.retiresAt()) ? current.retiresAt() : activatesAt;
+    }
+
+    private static boolean isCurrent(Instant activatesAt, Instant retiresAt, Instant now) {
+        return !activatesAt.isAfter(now.plus(CLOCK_SKEW)) && retiresAt.isAfter(now);
+    }
+
+    private List<StoredKey> load(Instant now) {
+        return jdbcTemplate.query("""
+                SELECT kid, algorithm, private_jwk_encrypted, activates_at, retires_at, expires_at
+                FROM signing_keys
+                WHERE expires_at > ?
+                ORDER BY activates_at
+                """, (rs, rowNum) -> new StoredKey(
+                rs.getString("kid"),
+                JWSAlgorithm.parse(rs.getString("algorithm")),
+                rs.getBytes("private_jwk_encrypted"),
+                rs.getTimestamp("activates_at").toInstant(),
+                rs.getTimestamp("retires_at").toInstant(),
+                rs.getTimestamp("expires_at").toInstant()), Timestamp.from(now));
+    }
+
+    private void insert(SigningKey key) {
+        jdbcTemplate.update("""
+                INSERT INTO signing_keys (kid, algorithm, public_jwk, private_jwk_encrypted, created_at, activates_at, retires_at, expires_at)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+                """,
+                key.kid(), key.algorithm().getName(), key.jwk().toPublicJWK().toJSONString(),
+                encrypt(key.kid(), key.jwk().toJSONString()), Timestamp.from(clock.instant()),
+                Timestamp.from(key.activatesAt()), Timestamp.from(key.retiresAt()), Timestamp.from(key.expiresAt()));
+        logger.info("Created signing key: algorithm={}, kid={}, activatesAt={}, retiresAt={}",
+                key.algorithm(), key.kid(), key.activatesAt(), key.retiresAt());
+    }
+
+    private SigningKey generate(JWSAlgorithm algorithm, Instant activatesAt, Instant retiresAt, Instant expiresAt) {
+        String kid = UUID.randomUUID().toString();
+        try {
+            JWK jwk;
+            if (JWSAlgorithm.RS256.equals(algorithm)) {
+                jwk = new RSAKeyGenerator(RSA_KEY_SIZE).keyID(kid).algorithm(algorithm).keyUse(KeyUse.SIGNATURE).generate();
+            } else if (JWSAlgorithm.ES256.equals(algorithm)) {
+                jwk = new ECKeyGenerator(Curve.P_256).keyID(kid).algorithm(algorithm).keyUse(KeyUse.SIGNATURE).generate();
+            } else if (JWSAlgorithm.EdDSA.equals(algorithm)) {
+                jwk = new OctetKeyPairGenerator(Curve.Ed25519).keyID(kid).algorithm(algorithm).keyUse(KeyUse.SIGNATURE).generate();
+            } else {
+                throw new IllegalArgumentException("Unsupported signing algorithm: " + algorithm);
+            }
+            Instant expiry = expiresAt != null ? expiresAt : retiresAt.plus(verificationGrace);
+            return toSigningKey(algorithm, jwk, activatesAt, retiresAt, expiry);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Failed to generate signing key: algorithm=" + algorithm, e);
+        }
+    }
+
+    private SigningKey decrypt(StoredKey row) {
+        try {
+            JWK jwk = JWK.parse(decrypt(row.kid(), row.privateJwkEncrypted()));
+            return toSigningKey(row.algorithm(), jwk, row.activatesAt(), row.retiresAt(), row.expiresAt());
+        } catch (ParseException e) {
+            throw new IllegalStateException("Stored signing key is not a valid JWK: kid=" + row.kid(), e);
+        }
+    }
+
+    private SigningKey toSigningKey(JWSAlgorithm algorithm, JWK jwk, Instant activatesAt, Instant retiresAt, Instant expiresAt) {
+        try {
+            JWSSigner signer = switch (jwk) {
+                case RSAKey rsa -> new RSASSASigner(rsa);
+                case ECKey ec -> new ECDSASigner(ec);
+                case OctetKeyPair okp -> new Ed25519Signer(okp);
+                default -> throw new IllegalStateException("Unsupported key type: kid=" + jwk.getKeyID());
+            };
+            return new SigningKey(jwk.getKeyID(), algorithm, jwk, signer, activatesAt, retiresAt, expiresAt);
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Unusable signing key: kid=" + jwk.getKeyID(), e);
+        }
+    }
+
+    private byte[] encrypt(String kid, String privateJwk) {
+        try {
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            cipher.updateAAD(kid.getBytes(StandardCharsets.UTF_8));
+            byte[] ciphertext = cipher.doFinal(privateJwk.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.allocate(iv.length + ciphertext.length).put(iv).put(ciphertext).array();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to encrypt signing key", e);
+        }
+    }
+
+    private String decrypt(String kid, byte[] stored) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, stored, 0, GCM_IV_LENGTH));
+            cipher.updateAAD(kid.getBytes(StandardCharsets.UTF_8));
+            byte[] plaintext = cipher.doFinal(stored, GCM_IV_LENGTH, stored.length - GCM_IV_LENGTH);
+            return new String(plaintext, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            // Wrong encryption key or tampered row
+            throw new IllegalStateException("Failed to decrypt signing key: kid=" + kid, e);
+        }
+    }
+
+    private static SecretKey parseEncryptionKey(String encoded) {
+        byte[] key;
+        try {
+            key = Base64.getDecoder().decode(encoded.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("oidc.signing-keys.encryption-key must be base64", e);
+        }
+        if (key.length != 32) {
+            throw new IllegalStateException("oidc.signing-keys.encryption-key must be 32 bytes (AES-256), got " + key.length);
+        }
+        return new SecretKeySpec(key, "AES");
+    }
+
+    static List<JWSAlgorithm> parseAlgorithms(List<String> names) {
+        Set<JWSAlgorithm> parsed = new LinkedHashSet<>();
+        parsed.add(JWSAlgorithm.RS256);
+        for (String name : names) {
+            if (name == null || name.isBlank()) {
+                continue;
+            }
+            JWSAlgorithm algorithm = JWSAlgorithm.parse(name.trim());
+            if (!SUPPORTED_ALGORITHMS.contains(algorithm)) {
+                throw new IllegalStateException("Unsupported oidc.signing-keys.algorithms entry: " + name
+                        + " (supported: " + SUPPORTED_ALGORITHMS + ")");
+            }
+            parsed.add(algorithm);
+        }
+        return List.copyOf(parsed);
+    }
+
+    /**
+     * A key with its signer; {@code activatesAt}..{@code retiresAt} is when it may sign,
+     * it is published until {@code expiresAt}
+     */
+    public record SigningKey(String kid, JWSAlgorithm algorithm, JWK jwk, JWSSigner signer,
+                             Instant activatesAt, Instant retiresAt, Instant expiresAt) {
+    }
+
+    private record KeySet(Map<JWSAlgorithm, SigningKey> current, List<SigningKey> published) {
+    }
+
+    private record StoredKey(String kid, JWSAlgorithm algorithm, byte[] privateJwkEncrypted,
+                             Instant activatesAt, Instant retiresAt, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,9 @@
+package ch.nullprofile.service;
+
+import java.util.List;
+
+/**
+ * Published after a refresh changed the set of published signing keys (rotation, expiry)
+ */
+public record SigningKeysChangedEvent(List<String> publishedKids) {
+}
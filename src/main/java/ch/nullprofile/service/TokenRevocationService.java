@@ -0,0 +1,148 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.util.BloomFilter;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Revoked access tokens (RFC 7009), by jti.
+ *
+ * The exact list lives in a Hazelcast {@link IMap} (jti → token expiry), each entry with a TTL
+ * running out when the token would have expired anyway. Every replica mirrors it into local
+ * Bloom filters fed by an entry listener, so checking a token is a few memory probes; only a
+ * Bloom hit (a revoked token or a ~{@code fpp} false positive) costs a map lookup.
+ *
+ * The filters are partitioned by token expiry into windows of {@code access-token-ttl / partitions}
+ * seconds. A token is only probed against the window its {@code exp} falls into, and a window is
+ * dropped as a whole once every token in it has expired, so the filters never need deletes and
+ * stay sized for the revocations of one TTL. A window that receives more revocations than it was
+ * sized for only raises the false-positive rate, never misses a revoked token.
+ */
+@Service
+public class TokenRevocationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    static final String MAP_NAME = "oidc:revoked-access-tokens";
+
+    private final IMap<String, Long> revoked;
+    private final ConcurrentSkipListMap<Long, BloomFilter> partitions = new ConcurrentSkipListMap<>();
+    private final long partitionSeconds;
+    private final long expectedPerPartition;
+    private final double fpp;
+    private final Clock clock;
+    private final UUID listenerRegistration;
+    private final Counter falsePositives;
+
+    @Autowired
+    public TokenRevocationService(
+            HazelcastInstance hazelcastInstance,
+            MeterRegistry meterRegistry,
+            @Value("${oidc.token.access-token-ttl-seconds:1800}") long accessTokenTtlSeconds,
+            @Value("${oidc.revocation.partitions:6}") int partitionCount,
+            @Value("${oidc.revocation.expected-revocations:100000}") long expectedRevocations,
+            @Value("${oidc.revocation.false-positive-rate:0.01}") double fpp) {
+        this(hazelcastInstance, meterRegistry, accessTokenTtlSeconds, partitionCount, expectedRevocations, fpp,
+                Clock.systemUTC());
+    }
+
+    TokenRevocationService(HazelcastInstance hazelcastInstance, MeterRegistry meterRegistry,
+                           long accessTokenTtlSeconds, int partitionCount, long expectedRevocations,
+                           double fpp, Clock clock) {
+        this.partitionSeconds = Math.max(1, (accessTokenTtlSeconds + partitionCount - 1) / partitionCount);
+        this.expectedPerPartition = Math.max(1, expectedRevocations / partitionCount);
+        this.fpp = fpp;
+        this.clock = clock;
+        this.revoked = hazelcastInstance.getMap(MAP_NAME);
+        this.falsePositives = Counter.builder("token.revocation.false-positives")
+                .description("Revocation checks where the Bloom filter matched but the jti was not revoked")
+                .register(meterRegistry);
+        Gauge.builder("token.revocation.partitions", partitions, Map::size)
+                .description("Live Bloom filter partitions of revoked access tokens")
+                .register(meterRegistry);
+
+        // Listen before loading, so a revocation made meanwhile is seen by one or the other
+        this.listenerRegistration = revoked.addEntryListener(
+                (EntryAddedListener<String, Long>) event -> index(event.getKey(), event.getValue()), true);
+        int loaded = 0;
+        for (Map.Entry<String, Long> entry : revoked.entrySet()) {
+            index(entry.getKey(), entry.getValue());
+            loaded++;
+        }
+        logger.info("Token revocation: {} revoked jtis loaded, partition window {}s, {} expected per window",
+                loaded, partitionSeconds, expectedPerPartition);
+    }
+
+    /**
+     * Revoke the token with this jti until its expiry (epoch seconds); no-op if already expired
+     */
+    public void revoke(String jti, long expiresAt) {
+        long ttlSeconds = expiresAt - clock.instant().getEpochSecond();
+        if (ttlSeconds <= 0) {
+            return;
+        }
+        revoked.set(jti, expiresAt, ttlSeconds, TimeUnit.SECONDS);
+        // Visible to this replica right away, without waiting for the listener
+        index(jti, expiresAt);
+    }
+
+    /**
+     * Whether the token with this jti and expiry (epoch seconds) has been revoked
+     */
+    public boolean isRevoked(String jti, long expiresAt) {
+        BloomFilter filter = partitions.get(partition(expiresAt));
+        if (filter == null || !filter.mightContain(jti)) {
+            return false;
+        }
+        if (revoked.containsKey(jti)) {
+            return true;
+        }
+        falsePositives.increment();
+        return false;
+    }
+
+    private void index(String jti, long expiresAt) {
+        partitions.computeIfAbsent(partition(expiresAt), p -> BloomFilter.create(expectedPerPartition, fpp))
+                .add(jti);
+    }
+
+    private long partition(long expiresAt) {
+        return Math.floorDiv(expiresAt, partitionSeconds);
+    }
+
+    /**
+     * Drop the windows in which every token has expired
+     */
+    @Scheduled(fixedDelayString = "${oidc.revocation.purge-interval-millis:60000}")
+    public void purgeExpiredPartitions() {
+        Instant now = clock.instant();
+        partitions.headMap(partition(now.getEpochSecond())).clear();
+    }
+
+    int partitionCount() {
+        return partitions.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        revoked.removeEntryListener(listenerRegistration);
+    }
+}
@@ -0,0 +1,167 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.exception.SigningCapacityExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Platform threads for private-key operations, one per core by default
+ * ({@code oidc.token.signing-threads}, 0 = available processors).
+ *
+ * Signing is pure CPU work: more threads than cores would only time-slice signatures against each
+ * other, and running them on virtual threads would pin the carriers request handling runs on.
+ *
+ * At most {@code oidc.token.signing-queue-capacity} signatures wait beyond the ones running.
+ * Capacity is taken up front with {@link #reserve}, which throws
+ * {@link SigningCapacityExceededException} when it is exhausted; /token then answers 503 with
+ * Retry-After, so a burst of logins backs off instead of queueing unboundedly behind the CPU.
+ * A {@link Reservation} cannot be rejected afterwards, so a caller reserves before doing work
+ * that cannot be repeated, such as consuming an authorization code.
+ */
+@Component
+public class TokenSigningExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenSigningExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+    private final LinkedBlockingQueue<Runnable> queue;
+    // One permit per signature running or queued; the queue itself is bounded by these
+    private final Semaphore capacity;
+    private final int threads;
+    private final long retryAfterSeconds;
+    private final Timer queueWait;
+    private final Timer execution;
+    private final Counter rejected;
+
+    @Autowired
+    public TokenSigningExecutor(
+            @Value("${oidc.token.signing-threads:0}") int threads,
+            @Value("${oidc.token.signing-queue-capacity:64}") int queueCapacity,
+            @Value("${oidc.token.signing-retry-after-seconds:1}") long retryAfterSeconds,
+            MeterRegistry meterRegistry) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.queue = new LinkedBlockingQueue<>();
+        this.capacity = new Semaphore(this.threads + queueCapacity);
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS, queue,
+                Thread.ofPlatform().name("token-signing-", 0).daemon(true).factory());
+        this.executor.prestartAllCoreThreads();
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.queueWait = Timer.builder("token.signing.queue.wait")
+                .description("Time signatures waited in the queue for a signing thread")
+                .register(meterRegistry);
+        this.execution = Timer.builder("token.signing.execution")
+                .description("Time spent computing signatures")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("token.signing.rejected")
+                .description("Signatures refused because the signing queue was full")
+                .register(meterRegistry);
+        Gauge.builder("token.signing.queue.depth", queue, LinkedBlockingQueue::size)
+                .description("Signatures waiting for a signing thread")
+                .register(meterRegistry);
+        logger.info("Token signing: threads={}, queueCapacity={}", this.threads, queueCapacity);
+    }
+
+    /**
+     * Executor with a generous queue and its own meter registry, for unit tests and benchmarks
+     */
+    public TokenSigningExecutor(int threads) {
+        this(threads, 1024, 1, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Take capacity for {@code signatures} signatures; throws {@link SigningCapacityExceededException}
+     * if the queue cannot hold them. Capacity not submitted is returned on {@link Reservation#close()}.
+     */
+    public Reservation reserve(int signatures) {
+        if (!capacity.tryAcquire(signatures)) {
+            rejected.increment();
+            throw new SigningCapacityExceededException(retryAfterSeconds);
+        }
+        return new Reservation(signatures);
+    }
+
+    /**
+     * Queue a single signature; throws {@link SigningCapacityExceededException} if the queue is full
+     */
+    public <T> Future<T> submit(Callable<T> signing) {
+        try (Reservation reservation = reserve(1)) {
+            return reservation.submit(signing);
+        }
+    }
+
+    /**
+     * Signing capacity held by one caller. Not thread-safe: submit and close from the reserving thread.
+     */
+    public final class Reservation implements AutoCloseable {
+
+        private int remaining;
+
+        private Reservation(int signatures) {
+            this.remaining = signatures;
+        }
+
+        /**
+         * Queue a signature on reserved capacity; never rejected
+         */
+        public <T> Future<T> submit(Callable<T> signing) {
+            if (remaining == 0) {
+                throw new IllegalStateException("Signing reservation already used up");
+            }
+            remaining--;
+            return execute(signing);
+        }
+
+        @Override
+        public void close() {
+            capacity.release(remaining);
+            remaining = 0;
+        }
+    }
+
+    private <T> Future<T> execute(Callable<T> signing) {
+        long queuedAt = System.nanoTime();
+        FutureTask<T> task = new FutureTask<>(() -> {
+            long startedAt = System.nanoTime();
+            queueWait.record(startedAt - queuedAt, TimeUnit.NANOSECONDS);
+            try {
+                return signing.call();
+            } finally {
+                execution.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            }
+        }) {
+            @Override
+            protected void done() {
+                // Completed, failed or cancelled before running: the permit is free again
+                capacity.release();
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,178 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.config.UsageMeteringProperties;
+import ch.nullprofile.dto.UsageEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-process queue between the login path and the usage metering writer.
+ *
+ * {@link #submit} never touches the database: events are queued and a single background thread
+ * drains them in batches of up to {@code batchSize} (or whatever arrived within
+ * {@code flushIntervalMillis}) and hands each batch to {@link UsageEventWriter}. A failed batch
+ * is logged and counted, never propagated to a login.
+ *
+ * On shutdown the pipeline stops after the web server (so in-flight logins can still enqueue)
+ * and drains the queue before the DataSource is closed.
+ */
+@Component
+public class UsageEventPipeline implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(UsageEventPipeline.class);
+
+    // Stop after the embedded web server (DEFAULT_PHASE - 2048) has stopped accepting requests
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private final UsageMeteringProperties properties;
+    private final UsageEventWriter writer;
+    private final BlockingQueue<UsageEvent> queue;
+    private final Counter droppedEvents;
+    private final Counter failedEvents;
+    private final Timer flushTimer;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public UsageEventPipeline(
+            UsageMeteringProperties properties,
+            UsageEventWriter writer,
+            MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+
+        Gauge.builder("usage.metering.queue.depth", queue, BlockingQueue::size)
+                .description("Usage events waiting to be written")
+                .register(meterRegistry);
+        this.droppedEvents = Counter.builder("usage.metering.events.dropped")
+                .description("Usage events dropped because the queue was full")
+                .register(meterRegistry);
+        this.failedEvents = Counter.builder("usage.metering.events.failed")
+                .description("Usage events lost because their batch could not be written")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("usage.metering.flush")
+                .description("Time to write one batch of usage events")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue an event for writing; applies the overflow policy when the queue is full
+     *
+     * @return false if the event was dropped
+     */
+    public boolean submit(UsageEvent event) {
+        boolean accepted = queue.offer(event);
+        if (!accepted && properties.getOverflowPolicy() == UsageMeteringProperties.OverflowPolicy.BLOCK) {
+            try {
+                accepted = queue.offer(event, properties.getOfferTimeoutMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!accepted) {
+            droppedEvents.increment();
+            logger.warn("Usage event queue full, dropping event: rpId={}, month={}",
+                    event.relyingPartyId(), event.month());
+        }
+        return accepted;
+    }
+
+    /**
+     * Events currently waiting in the queue
+     */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writerThread = Thread.ofPlatform()
+                .name("usage-metering-writer")
+                .daemon(true)
+                .start(this::runWriter);
+        logger.info("Usage metering pipeline started: queueCapacity={}, batchSize={}, flushIntervalMillis={}",
+                properties.getQueueCapacity(), properties.getBatchSize(), properties.getFlushIntervalMillis());
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        // No interrupt: the writer may be mid-JDBC call; it notices within one flush interval
+        running = false;
+        try {
+            writerThread.join(properties.getShutdownTimeoutMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            logger.warn("Usage metering writer did not finish draining in time: remaining={}", queue.size());
+        }
+        writerThread = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void runWriter() {
+        List<UsageEvent> batch = new ArrayList<>(properties.getBatchSize());
+        while (running) {
+            try {
+                UsageEvent first = queue.poll(properties.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, properties.getBatchSize() - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Only happens if the JVM is tearing the thread down; fall through to the final drain
+                break;
+            }
+        }
+
+        // Drain whatever was queued before shutdown
+        int drained = 0;
+        while (queue.drainTo(batch, properties.getBatchSize()) > 0) {
+            drained += batch.size();
+            flush(batch);
+        }
+        logger.info("Usage metering pipeline stopped: drainedOnShutdown={}", drained);
+    }
+
+    private void flush(List<UsageEvent> batch) {
+        try {
+            flushTimer.record(() -> writer.write(batch));
+        } catch (RuntimeException e) {
+            failedEvents.increment(batch.size());
+            logger.error("Failed to write usage batch: events={}", batch.size(), e);
+        } finally {
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.dto.UsageEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes batches of usage events to monthly_active_users with one JDBC batch.
+ *
+ * Events are coalesced first: repeated logins of the same user to the same RP in the same month
+ * collapse into a single row (earliest first_seen_at, latest last_seen_at). Authentication
+ * counts are not written here; see {@link AuthCounterAccumulator}. The batch's users are handed
+ * to {@link ActiveUserBitmaps} once the transaction commits.
+ */
+@Component
+public class UsageEventWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UsageEventWriter.class);
+
+    private static final String MAU_SQL = """
+        INSERT INTO monthly_active_users (relying_party_id, user_id, month, first_seen_at, last_seen_at)
+        VALUES (?, ?, ?, ?, ?)
+        ON CONFLICT (relying_party_id, user_id, month)
+        DO UPDATE SET last_seen_at = GREATEST(monthly_active_users.last_seen_at, EXCLUDED.last_seen_at)
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ActiveUserBitmaps activeUserBitmaps;
+
+    public UsageEventWriter(JdbcTemplate jdbcTemplate, ActiveUserBitmaps activeUserBitmaps) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.activeUserBitmaps = activeUserBitmaps;
+    }
+
+    /**
+     * Coalesce and write a batch of events in one transaction
+     */
+    @Transactional
+    public void write(Collection<UsageEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        Map<ActiveUserKey, SeenRange> activeUsers = coalesce(events);
+
+        List<Object[]> mauRows = new ArrayList<>(activeUsers.size());
+        activeUsers.forEach((key, seen) -> mauRows.add(new Object[]{
+                key.relyingPartyId(),
+                key.userId(),
+                Date.valueOf(key.month()),
+                Timestamp.from(seen.firstSeen()),
+                Timestamp.from(seen.lastSeen())
+        }));
+        jdbcTemplate.batchUpdate(MAU_SQL, mauRows);
+        activeUserBitmaps.addAfterCommit(activeUsers.keySet());
+
+        logger.debug("Wrote usage batch: events={}, mauRows={}", events.size(), mauRows.size());
+    }
+
+    static Map<ActiveUserKey, SeenRange> coalesce(Collection<UsageEvent> events) {
+        Map<ActiveUserKey, SeenRange> activeUsers = new LinkedHashMap<>();
+        for (UsageEvent event : events) {
+            activeUsers.merge(
+                    new ActiveUserKey(event.relyingPartyId(), event.userId(), event.month()),
+                    new SeenRange(event.eventTime(), event.eventTime()),
+                    SeenRange::union);
+        }
+        return activeUsers;
+    }
+
+    record ActiveUserKey(UUID relyingPartyId, UUID userId, LocalDate month) {
+    }
+
+    record SeenRange(Instant firstSeen, Instant lastSeen) {
+        SeenRange union(SeenRange other) {
+            return new SeenRange(
+                    firstSeen.isBefore(other.firstSeen) ? firstSeen : other.firstSeen,
+                    lastSeen.isAfter(other.lastSeen) ? lastSeen : other.lastSeen);
+        }
+    }
+}
@@ -1,22 +1,27 @@
 package ch.nullprofile.service;
 
+import ch.nullprofile.dto.MonthlyUsage;
+import ch.nullprofile.dto.UsageEvent;
+import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Future;
 
 /**
  * Service for recording usage metrics (MAU and authentication counts) per Relying Party
  * 
- * This service provides atomic, concurrency-safe operations for updating usage statistics
- * when users successfully authenticate with OIDC relying parties.
+ * Authentication events are handed to {@link UsageEventPipeline} and written asynchronously in
+ * batches, so a slow or unavailable database never delays or fails a login.
  */
 @Service
 public class UsageMeteringService {
@@ -25,81 +30,53 @@ public class UsageMeteringService {
     private static final ZoneId EUROPE_ZURICH = ZoneId.of("Europe/Zurich");
 
     private final JdbcTemplate jdbcTemplate;
+    private final UsageEventPipeline usageEventPipeline;
+    private final AuthCounterAccumulator authCounterAccumulator;
+    private final MauSketchAccumulator mauSketchAccumulator;
+    private final ActiveUserBitmaps activeUserBitmaps;
+    private final UsageQueryExecutor usageQueryExecutor;
 
-    public UsageMeteringService(JdbcTemplate jdbcTemplate) {
+    public UsageMeteringService(
+            JdbcTemplate jdbcTemplate,
+            UsageEventPipeline usageEventPipeline,
+            AuthCounterAccumulator authCounterAccumulator,
+            MauSketchAccumulator mauSketchAccumulator,
+            ActiveUserBitmaps activeUserBitmaps,
+            UsageQueryExecutor usageQueryExecutor) {
         this.jdbcTemplate = jdbcTemplate;
+        this.usageEventPipeline = usageEventPipeline;
+        this.authCounterAccumulator = authCounterAccumulator;
+        this.mauSketchAccumulator = mauSketchAccumulator;
+        this.activeUserBitmaps = activeUserBitmaps;
+        this.usageQueryExecutor = usageQueryExecutor;
     }
 
     /**
      * Record a successful authentication event
      * 
-     * This method:
-     * 1. Upserts monthly_active_users to track unique users per RP per month
-     * 2. Increments rp_monthly_counters to track total authentication count per RP per month
+     * 1. Queues an event for the background writer, which upserts monthly_active_users
+     *    to track unique users per RP per month
+     * 2. Increments the in-memory auth counter for the RP and month; the accumulated
+     *    delta is added to rp_monthly_counters every few seconds
+     * 3. In SKETCH MAU mode, adds the user to the RP's HyperLogLog for the month
      * 
-     * Both operations are atomic and safe under concurrent access.
+     * Never blocks on the database; under the DROP overflow policy it never blocks at all.
      * 
      * @param relyingPartyId The UUID of the relying party (RP/client)
      * @param userId The UUID of the authenticated user
      * @param eventTime The timestamp of the authentication event
      */
-    @Transactional
     public void recordSuccessfulAuthentication(UUID relyingPartyId, UUID userId, Instant eventTime) {
-        // Convert eventTime to first day of month in Europe/Zurich timezone
-        ZonedDateTime zonedDateTime = eventTime.atZone(EUROPE_ZURICH);
-        LocalDate month = LocalDate.of(zonedDateTime.getYear(), zonedDateTime.getMonth(), 1);
+        LocalDate month = getMonthBucket(eventTime);
 
-        logger.debug("Recording authentication: rpId={}, userId={}, month={}", 
+        logger.debug("Queueing authentication: rpId={}, userId={}, month={}", 
                 relyingPartyId, userId, month);
 
-        try {
-            // 1. Upsert monthly_active_users
-            // Insert new record or update last_seen_at if already exists
-            String mauSql = """
-                INSERT INTO monthly_active_users (relying_party_id, user_id, month, first_seen_at, last_seen_at)
-                VALUES (?, ?, ?, ?, ?)
-                ON CONFLICT (relying_party_id, user_id, month)
-                DO UPDATE SET last_seen_at = EXCLUDED.last_seen_at
-                """;
-            
-            int mauRows = jdbcTemplate.update(mauSql, 
-                    relyingPartyId, 
-                    userId, 
-                    java.sql.Date.valueOf(month), 
-                    java.sql.Timestamp.from(eventTime),
-                    java.sql.Timestamp.from(eventTime));
-            
-            logger.debug("Updated monthly_active_users: rows={}", mauRows);
-
-            // 2. Increment rp_monthly_counters
-            // Insert with count=1 or increment existing count
-            String counterSql = """
-                INSERT INTO rp_monthly_counters (relying_party_id, month, auth_count, created_at, updated_at)
-                VALUES (?, ?, 1, ?, ?)
-                ON CONFLICT (relying_party_id, month)
-                DO UPDATE SET 
-                    auth_count = rp_monthly_counters.auth_count + 1,
-                    updated_at = EXCLUDED.updated_at
-                """;
-            
-            Instant now = Instant.now();
-            int counterRows = jdbcTemplate.update(counterSql, 
-                    relyingPartyId, 
-                    java.sql.Date.valueOf(month),
-                    java.sql.Timestamp.from(now),
-                    java.sql.Timestamp.from(now));
-            
-            logger.debug("Updated rp_monthly_counters: rows={}", counterRows);
-
-            logger.info("Successfully recorded authentication: rpId={}, userId={}, month={}", 
-                    relyingPartyId, userId, month);
-
-        } catch (Exception e) {
-            logger.error("Failed to record authentication metrics: rpId={}, userId={}, month={}", 
-                    relyingPartyId, userId, month, e);
-            // Re-throw to trigger transaction rollback
-            throw new RuntimeException("Failed to record usage metrics", e);
+        authCounterAccumulator.increment(relyingPartyId, month);
+        if (mauSketchAccumulator.isEnabled()) {
+            mauSketchAccumulator.add(relyingPartyId, month, userId);
         }
+        usageEventPipeline.submit(new UsageEvent(relyingPartyId, userId, month, eventTime));
     }
 
     /**
@@ -114,13 +91,25 @@ public class UsageMeteringService {
     /**
      * Get monthly active user counts for a relying party over the specified number of months
      * 
+     * In SKETCH MAU mode the counts are HyperLogLog estimates (merged across RPs for "ALL").
+     * 
      * @param relyingPartyId The UUID of the relying party (null for all RPs)
      * @param months Number of months to retrieve (default 6)
      * @return Map of month->MAU count
      */
     public java.util.Map<LocalDate, Integer> getMonthlyActiveUsers(UUID relyingPartyId, int months) {
         LocalDate endMonth = getMonthBucket(Instant.now());
-        LocalDate startMonth = endMonth.minusMonths(months - 1);
+        return getMonthlyActiveUsers(relyingPartyId, endMonth.minusMonths(months - 1), endMonth);
+    }
+
+    /**
+     * Monthly active user counts for months in [startMonth, endMonth]
+     */
+    public java.util.Map<LocalDate, Integer> getMonthlyActiveUsers(UUID relyingPartyId, LocalDate startMonth, LocalDate endMonth) {
+
+        if (mauSketchAccumulator.isEnabled()) {
+            return mauSketchAccumulator.estimateMonthlyActiveUsers(relyingPartyId, startMonth, endMonth);
+        }
 
         String sql;
         Object[] params;
@@ -165,7 +154,13 @@ public class UsageMeteringService {
      */
     public java.util.Map<LocalDate, Integer> getAuthenticationCounts(UUID relyingPartyId, int months) {
         LocalDate endMonth = getMonthBucket(Instant.now());
-        LocalDate startMonth = endMonth.minusMonths(months - 1);
+        return getAuthenticationCounts(relyingPartyId, endMonth.minusMonths(months - 1), endMonth);
+    }
+
+    /**
+     * Authentication counts for months in [startMonth, endMonth]
+     */
+    public java.util.Map<LocalDate, Integer> getAuthenticationCounts(UUID relyingPartyId, LocalDate startMonth, LocalDate endMonth) {
 
         String sql;
         Object[] params;
@@ -209,78 +204,29 @@ public class UsageMeteringService {
      */
     public java.util.Map<LocalDate, Integer> getRetentionRate(UUID relyingPartyId, int months) {
         LocalDate endMonth = getMonthBucket(Instant.now());
-        LocalDate startMonth = endMonth.minusMonths(months - 1);
-
-        String sql;
-        Object[] params;
+        return getRetentionRate(relyingPartyId, endMonth.minusMonths(months - 1), endMonth);
+    }
 
-        if (relyingPartyId != null) {
-            sql = """
-                WITH monthly_users AS (
-                    SELECT month, user_id
-                    FROM monthly_active_users
-                    WHERE relying_party_id = ? AND month >= ? AND month <= ?
-                ),
-                retention_calc AS (
-                    SELECT 
-                        curr.month,
-                        COUNT(DISTINCT curr.user_id) as current_users,
-                        COUNT(DISTINCT prev.user_id) as retained_users
-                    FROM monthly_users curr
-                    LEFT JOIN monthly_users prev 
-                        ON curr.user_id = prev.user_id 
-                        AND prev.month = (curr.month - INTERVAL '1 month')::date
-                    GROUP BY curr.month
-                )
-                SELECT 
-                    month,
-                    CASE 
-                        WHEN current_users > 0 THEN ROUND((retained_users::numeric / current_users) * 100)
-                        ELSE 0
-                    END as retention_rate
-                FROM retention_calc
-                ORDER BY month
-                """;
-            params = new Object[]{relyingPartyId, java.sql.Date.valueOf(startMonth), java.sql.Date.valueOf(endMonth)};
-        } else {
-            sql = """
-                WITH monthly_users AS (
-                    SELECT month, user_id
-                    FROM monthly_active_users
-                    WHERE month >= ? AND month <= ?
-                ),
-                retention_calc AS (
-                    SELECT 
-                        curr.month,
-                        COUNT(DISTINCT curr.user_id) as current_users,
-                        COUNT(DISTINCT prev.user_id) as retained_users
-                    FROM monthly_users curr
-                    LEFT JOIN monthly_users prev 
-                        ON curr.user_id = prev.user_id 
-                        AND prev.month = (curr.month - INTERVAL '1 month')::date
-                    GROUP BY curr.month
-                )
-                SELECT 
-                    month,
-                    CASE 
-                        WHEN current_users > 0 THEN ROUND((retained_users::numeric / current_users) * 100)
-                        ELSE 0
-                    END as retention_rate
-                FROM retention_calc
-                ORDER BY month
-                """;
-            params = new Object[]{java.sql.Date.valueOf(startMonth), java.sql.Date.valueOf(endMonth)};
-        }
+    /**
+     * Retention rate for months in [startMonth, endMonth] from the stored user bitmaps:
+     * |this month AND previous month| / |this month|. The month before startMonth is loaded
+     * too, so the first month is measured against its real predecessor.
+     */
+    public java.util.Map<LocalDate, Integer> getRetentionRate(UUID relyingPartyId, LocalDate startMonth, LocalDate endMonth) {
+        java.util.Map<LocalDate, RoaringBitmap> users =
+                activeUserBitmaps.load(relyingPartyId, startMonth.minusMonths(1), endMonth);
 
-        return jdbcTemplate.query(sql, params, rs -> {
-            java.util.Map<LocalDate, Integer> result = new java.util.LinkedHashMap<>();
-            while (rs.next()) {
-                LocalDate month = rs.getDate("month").toLocalDate();
-                int rate = rs.getInt("retention_rate");
-                result.put(month, rate);
+        java.util.Map<LocalDate, Integer> result = new java.util.LinkedHashMap<>();
+        for (LocalDate month = startMonth; !month.isAfter(endMonth); month = month.plusMonths(1)) {
+            RoaringBitmap current = users.get(month);
+            if (current == null || current.isEmpty()) {
+                continue;
             }
-            return result;
-        });
+            RoaringBitmap previous = users.get(month.minusMonths(1));
+            int retained = previous == null ? 0 : RoaringBitmap.andCardinality(current, previous);
+            result.put(month, (int) Math.round(retained * 100.0 / current.getCardinality()));
+        }
+        return result;
     }
 
     /**
@@ -292,12 +238,21 @@ public class UsageMeteringService {
      */
     public java.util.Map<LocalDate, Integer> getActiveRecently(UUID relyingPartyId, int months) {
         LocalDate endMonth = getMonthBucket(Instant.now());
-        LocalDate startMonth = endMonth.minusMonths(months - 1);
+        return getActiveRecently(relyingPartyId, endMonth.minusMonths(months - 1), endMonth);
+    }
+
+    /**
+     * Users active in the last 30 days of each month in [startMonth, endMonth]
+     */
+    public java.util.Map<LocalDate, Integer> getActiveRecently(UUID relyingPartyId, LocalDate startMonth, LocalDate endMonth) {
 
         String sql;
-        Object[] params;
+        List<Object> params = new ArrayList<>();
 
         if (relyingPartyId != null) {
+            params.add(relyingPartyId);
+            params.add(java.sql.Date.valueOf(startMonth));
+            params.add(java.sql.Date.valueOf(endMonth));
             sql = """
                 SELECT 
                     month,
@@ -305,26 +260,26 @@ public class UsageMeteringService {
                 FROM monthly_active_users
                 WHERE relying_party_id = ?
                     AND month >= ? AND month <= ?
-                    AND last_seen_at >= (month + INTERVAL '1 month' - INTERVAL '30 days')
+                    AND last_seen_at >= %s
                 GROUP BY month
                 ORDER BY month
-                """;
-            params = new Object[]{relyingPartyId, java.sql.Date.valueOf(startMonth), java.sql.Date.valueOf(endMonth)};
+                """.formatted(activeRecentlySince(startMonth, endMonth, params));
         } else {
+            params.add(java.sql.Date.valueOf(startMonth));
+            params.add(java.sql.Date.valueOf(endMonth));
             sql = """
                 SELECT 
                     month,
                     COUNT(*) as active_count
                 FROM monthly_active_users
                 WHERE month >= ? AND month <= ?
-                    AND last_seen_at >= (month + INTERVAL '1 month' - INTERVAL '30 days')
+                    AND last_seen_at >= %s
                 GROUP BY month
                 ORDER BY month
-                """;
-            params = new Object[]{java.sql.Date.valueOf(startMonth), java.sql.Date.valueOf(endMonth)};
+                """.formatted(activeRecentlySince(startMonth, endMonth, params));
         }
 
-        return jdbcTemplate.query(sql, params, rs -> {
+        return jdbcTemplate.query(sql, params.toArray(), rs -> {
             java.util.Map<LocalDate, Integer> result = new java.util.LinkedHashMap<>();
             while (rs.next()) {
                 LocalDate month = rs.getDate("month").toLocalDate();
@@ -334,4 +289,132 @@ public class UsageMeteringService {
             return result;
         });
     }
+
+    /**
+     * All four dashboard series for the last {@code months} months
+     *
+     * @param relyingPartyId The UUID of the relying party (null for all RPs)
+     * @param months Number of months to retrieve
+     * @return Months with data, oldest first
+     */
+    public List<MonthlyUsage> getUsageSummary(UUID relyingPartyId, int months) {
+        LocalDate endMonth = getMonthBucket(Instant.now());
+        return getUsageSummary(relyingPartyId, endMonth.minusMonths(months - 1), endMonth);
+    }
+
+    /**
+     * MAU, authentication count, retention and recent activity for months in [startMonth, endMonth].
+     *
+     * MAU, recent activity and auth counts come from a single statement; retention comes from the
+     * user bitmaps (see {@link #getRetentionRate(UUID, LocalDate, LocalDate)}) and, in SKETCH mode,
+     * MAU from the sketches (the exact count for months without one). These reads are independent and run concurrently on
+     * {@link UsageQueryExecutor}, so latency is the slowest of them rather than the sum. If the
+     * main statement fails the summary fails; a failed retention or sketch read only degrades that
+     * series (retention 0, exact MAU).
+     */
+    public List<MonthlyUsage> getUsageSummary(UUID relyingPartyId, LocalDate startMonth, LocalDate endMonth) {
+        String rpFilter = relyingPartyId != null ? "relying_party_id = ? AND " : "";
+        // UNION ALL + GROUP BY rather than a FULL OUTER JOIN, so H2 can run it in tests too
+        String sql = """
+            SELECT
+                month,
+                SUM(mau) AS mau,
+                SUM(auth_count) AS auth_count,
+                SUM(active_recently) AS active_recently
+            FROM (
+                SELECT
+                    month,
+                    COUNT(DISTINCT user_id) AS mau,
+                    0 AS auth_count,
+                    SUM(CASE WHEN last_seen_at >= %2$s THEN 1 ELSE 0 END) AS active_recently
+                FROM monthly_active_users
+                WHERE %1$smonth >= ? AND month <= ?
+                GROUP BY month
+                UNION ALL
+                SELECT month, 0, SUM(auth_count), 0
+                FROM rp_monthly_counters
+                WHERE %1$smonth >= ? AND month <= ?
+                GROUP BY month
+            ) series
+            GROUP BY month
+            ORDER BY month
+            """;
+
+        List<Object> params = new ArrayList<>();
+        String since = activeRecentlySince(startMonth, endMonth, params);
+        for (int i = 0; i < 2; i++) {
+            if (relyingPartyId != null) {
+                params.add(relyingPartyId);
+            }
+            params.add(java.sql.Date.valueOf(startMonth));
+            params.add(java.sql.Date.valueOf(endMonth));
+        }
+        String statement = sql.formatted(rpFilter, since);
+
+        long deadline = usageQueryExecutor.deadline();
+        Future<List<MonthlyUsage>> activityRead = usageQueryExecutor.submit(() -> jdbcTemplate.query(statement,
+                (rs, rowNum) -> new MonthlyUsage(
+                        rs.getDate("month").toLocalDate(),
+                        rs.getInt("mau"),
+                        rs.getInt("auth_count"),
+                        0,
+                        rs.getInt("active_recently")),
+                params.toArray()), deadline);
+        Future<java.util.Map<LocalDate, Integer>> retentionRead = usageQueryExecutor.submit(
+                () -> getRetentionRate(relyingPartyId, startMonth, endMonth), deadline);
+        Future<java.util.Map<LocalDate, Integer>> sketchRead = mauSketchAccumulator.isEnabled()
+                ? usageQueryExecutor.submit(
+                        () -> mauSketchAccumulator.estimateMonthlyActiveUsers(relyingPartyId, startMonth, endMonth), deadline)
+                : null;
+
+        try {
+            List<MonthlyUsage> activity = usageQueryExecutor.await(activityRead, deadline);
+            java.util.Map<LocalDate, Integer> retention =
+                    usageQueryExecutor.awaitOrDefault(retentionRead, deadline, java.util.Map.of(), "retention");
+            java.util.Map<LocalDate, Integer> estimates = sketchRead == null ? null
+                    : usageQueryExecutor.awaitOrDefault(sketchRead, deadline, null, "MAU sketches");
+
+            return activity.stream()
+                    .map(usage -> new MonthlyUsage(
+                            usage.month(),
+                            // Months without a sketch (before SKETCH mode, or not flushed yet) keep the exact count
+                            estimates != null ? estimates.getOrDefault(usage.month(), usage.mau()) : usage.mau(),
+                            usage.authCount(),
+                            retention.getOrDefault(usage.month(), 0),
+                            usage.activeRecently()))
+                    .toList();
+        } finally {
+            // No-op for completed reads; stops the others once the summary has failed
+            activityRead.cancel(true);
+            retentionRead.cancel(true);
+            if (sketchRead != null) {
+                sketchRead.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Start of the last 30 days of a month, from midnight Europe/Zurich; users seen since then
+     * count as active recently. The live queries and the rollup job share this cut-off.
+     */
+    static java.sql.Timestamp activeRecentlySince(LocalDate month) {
+        return java.sql.Timestamp.from(month.plusMonths(1).minusDays(30).atStartOfDay(EUROPE_ZURICH).toInstant());
+    }
+
+    /**
+     * SQL expression for the active-recently cut-off of each month in [startMonth, endMonth];
+     * its parameters are appended to params
+     */
+    private static String activeRecentlySince(LocalDate startMonth, LocalDate endMonth, List<Object> params) {
+        if (startMonth.isAfter(endMonth)) {
+            return "NULL";
+        }
+        StringBuilder sql = new StringBuilder("CASE month");
+        for (LocalDate month = startMonth; !month.isAfter(endMonth); month = month.plusMonths(1)) {
+            sql.append(" WHEN ? THEN CAST(? AS TIMESTAMP)");
+            params.add(java.sql.Date.valueOf(month));
+            params.add(activeRecentlySince(month));
+        }
+        return sql.append(" END").toString();
+    }
 }
@@ -0,0 +1,115 @@
+package ch.nullprofile.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the independent reads behind one usage summary concurrently on virtual threads.
+ *
+ * At most {@code usage.query.max-concurrency} queries run at once across all requests, so the
+ * dashboard can only ever hold that slice of the Hikari pool and logins keep the rest. All reads of
+ * one summary share a deadline ({@link #deadline()}); a read that misses it is cancelled.
+ * {@link #await} propagates a failure, {@link #awaitOrDefault} degrades to a fallback value.
+ */
+@Component
+public class UsageQueryExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(UsageQueryExecutor.class);
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("usage-query-", 0).factory());
+    private final Semaphore permits;
+    private final long timeoutNanos;
+    private final Counter degraded;
+
+    public UsageQueryExecutor(
+            @Value("${usage.query.max-concurrency:4}") int maxConcurrency,
+            @Value("${usage.query.timeout-millis:10000}") long timeoutMillis,
+            MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(maxConcurrency);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.degraded = Counter.builder("usage.summary.degraded")
+                .description("Usage summary reads that failed or timed out and were replaced by a fallback")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Deadline (System.nanoTime) for the reads of one summary started now
+     */
+    public long deadline() {
+        return System.nanoTime() + timeoutNanos;
+    }
+
+    /**
+     * Start a read; it waits for a free slot until the deadline
+     */
+    public <T> Future<T> submit(Callable<T> query, long deadline) {
+        return executor.submit(() -> {
+            if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new QueryTimeoutException("No usage query slot became free in time");
+            }
+            try {
+                return query.call();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Result of a read; failures and timeouts are rethrown (timeouts as {@link QueryTimeoutException})
+     */
+    public <T> T await(Future<T> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new QueryTimeoutException("Usage query timed out");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Usage query failed", e.getCause());
+        } catch (CancellationException e) {
+            throw new QueryTimeoutException("Usage query was cancelled");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new QueryTimeoutException("Interrupted while waiting for usage query");
+        }
+    }
+
+    /**
+     * Result of a read, or {@code fallback} if it failed or missed the deadline
+     */
+    public <T> T awaitOrDefault(Future<T> future, long deadline, T fallback, String series) {
+        try {
+            return await(future, deadline);
+        } catch (RuntimeException e) {
+            degraded.increment();
+            logger.warn("Usage summary served without {}: {}", series, e.toString());
+            return fallback;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
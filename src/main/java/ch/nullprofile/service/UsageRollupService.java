@@ -0,0 +1,342 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.dto.MonthlyUsage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Maintains usage_monthly_rollups and serves dashboard figures from it.
+ *
+ * Closed months never change (apart from late events shortly after month end), so a scheduled
+ * job aggregates each one once - per RP and, under the nil-UUID sentinel, for "ALL" - and the
+ * dashboard reads them with a single primary-key range scan. Only the current month, and any
+ * closed month the job has not reached yet, is computed live from the raw tables.
+ *
+ * Months that are rolled up and past the reopen window are final and stay cached until idle;
+ * the live part is cached for a few seconds, so a polling dashboard does not reach the database.
+ *
+ * A month's figures do not change when it is rolled up: MAU is the HyperLogLog estimate in
+ * SKETCH mode and the exact count otherwise, as in the live summary, and "active recently" uses
+ * the same Europe/Zurich cut-off. Retention is always measured against the exact MAU, which is
+ * stored alongside. Months rolled up before a change of MAU mode keep the figure of the old mode.
+ */
+@Service
+public class UsageRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UsageRollupService.class);
+    private static final ZoneId EUROPE_ZURICH = ZoneId.of("Europe/Zurich");
+
+    /**
+     * Rollup key for the "ALL" view; its presence also marks a month as rolled up
+     */
+    static final UUID ALL_RELYING_PARTIES = new UUID(0L, 0L);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UsageMeteringService usageMeteringService;
+    private final ActiveUserBitmaps activeUserBitmaps;
+    private final MauSketchAccumulator mauSketchAccumulator;
+    private final int horizonMonths;
+    private final int reopenDays;
+    private final Cache<MonthKey, MonthlyUsage> finalMonths;
+    private final Cache<LiveKey, Map<LocalDate, MonthlyUsage>> liveMonths;
+
+    public UsageRollupService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            UsageMeteringService usageMeteringService,
+            ActiveUserBitmaps activeUserBitmaps,
+            MauSketchAccumulator mauSketchAccumulator,
+            @Value("${usage.rollup.horizon-months:24}") int horizonMonths,
+            @Value("${usage.rollup.reopen-days:2}") int reopenDays,
+            @Value("${usage.summary-cache.max-size:100000}") long cacheMaxSize,
+            @Value("${usage.summary-cache.idle-hours:24}") long cacheIdleHours,
+            @Value("${usage.summary-cache.live-ttl-seconds:60}") long liveTtlSeconds,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.usageMeteringService = usageMeteringService;
+        this.activeUserBitmaps = activeUserBitmaps;
+        this.mauSketchAccumulator = mauSketchAccumulator;
+        this.horizonMonths = horizonMonths;
+        this.reopenDays = reopenDays;
+        this.finalMonths = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterAccess(Duration.ofHours(cacheIdleHours))
+                .recordStats()
+                .build();
+        this.liveMonths = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(liveTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, finalMonths, "usage-final-months");
+        CaffeineCacheMetrics.monitor(meterRegistry, liveMonths, "usage-live-months");
+    }
+
+    /**
+     * Dashboard figures for the last {@code months} months (oldest first); months without data are omitted
+     *
+     * @param relyingPartyId The UUID of the relying party (null for all RPs)
+     */
+    public List<MonthlyUsage> getMonthlyUsage(UUID relyingPartyId, int months) {
+        LocalDate currentMonth = usageMeteringService.getMonthBucket(Instant.now());
+        LocalDate startMonth = currentMonth.minusMonths(months - 1);
+        UUID rollupKey = relyingPartyId != null ? relyingPartyId : ALL_RELYING_PARTIES;
+        LocalDate finalBefore = finalMonthsBefore(currentMonth);
+
+        // Final months come from memory; the first miss and everything after it is read from the table
+        Map<LocalDate, MonthlyUsage> rolledUp = new HashMap<>();
+        LocalDate readFrom = startMonth;
+        while (readFrom.isBefore(finalBefore)) {
+            MonthlyUsage cached = finalMonths.getIfPresent(new MonthKey(rollupKey, readFrom));
+            if (cached == null) {
+                break;
+            }
+            rolledUp.put(readFrom, cached);
+            readFrom = readFrom.plusMonths(1);
+        }
+        Set<LocalDate> closedMonthsDone = new TreeSet<>(rolledUp.keySet());
+        if (readFrom.isBefore(currentMonth)) {
+            readRollups(rollupKey, readFrom, currentMonth, rolledUp, closedMonthsDone);
+            for (LocalDate month = readFrom; month.isBefore(finalBefore); month = month.plusMonths(1)) {
+                if (closedMonthsDone.contains(month)) {
+                    finalMonths.put(new MonthKey(rollupKey, month),
+                            rolledUp.getOrDefault(month, new MonthlyUsage(month, 0, 0, 0, 0)));
+                }
+            }
+        }
+
+        // Live range: from the first month the job has not covered yet (usually just the current month)
+        LocalDate liveStart = currentMonth;
+        for (LocalDate month = startMonth; month.isBefore(currentMonth); month = month.plusMonths(1)) {
+            if (!closedMonthsDone.contains(month)) {
+                liveStart = month;
+                break;
+            }
+        }
+        LocalDate liveFrom = liveStart;
+        Map<LocalDate, MonthlyUsage> live = liveMonths.get(new LiveKey(rollupKey, liveFrom, currentMonth), key -> {
+            Map<LocalDate, MonthlyUsage> byMonth = new HashMap<>();
+            for (MonthlyUsage usage : usageMeteringService.getUsageSummary(relyingPartyId, liveFrom, currentMonth)) {
+                byMonth.put(usage.month(), usage);
+            }
+            return Map.copyOf(byMonth);
+        });
+
+        List<MonthlyUsage> result = new ArrayList<>();
+        for (LocalDate month = startMonth; !month.isAfter(currentMonth); month = month.plusMonths(1)) {
+            MonthlyUsage usage = month.isBefore(liveStart) ? rolledUp.get(month) : live.get(month);
+            if (usage != null && !usage.isEmpty()) {
+                result.add(usage);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drop cached figures of a relying party (e.g. after it was deleted)
+     */
+    public void evict(UUID relyingPartyId) {
+        finalMonths.asMap().keySet().removeIf(key -> key.rollupKey().equals(relyingPartyId));
+        liveMonths.asMap().keySet().removeIf(key -> key.rollupKey().equals(relyingPartyId));
+    }
+
+    /**
+     * Roll up every closed month within the horizon that has no rollup yet, plus the month that
+     * just closed while late events may still arrive
+     */
+    @Scheduled(initialDelayString = "${usage.rollup.initial-delay-millis:60000}",
+            fixedDelayString = "${usage.rollup.interval-millis:3600000}")
+    public void rollUpClosedMonths() {
+        if (!activeUserBitmaps.isBackfilled()) {
+            // Retention of older months would be undercounted and never recomputed
+            logger.debug("Usage rollup waiting for the user bitmap backfill");
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now(EUROPE_ZURICH);
+            LocalDate currentMonth = today.withDayOfMonth(1);
+            LocalDate oldest = currentMonth.minusMonths(horizonMonths);
+
+            Set<LocalDate> done = new TreeSet<>(jdbcTemplate.queryForList(
+                    "SELECT month FROM usage_monthly_rollups WHERE relying_party_id = ? AND month >= ?",
+                    Date.class, ALL_RELYING_PARTIES, Date.valueOf(oldest)).stream().map(Date::toLocalDate).toList());
+            if (today.getDayOfMonth() <= reopenDays) {
+                done.remove(currentMonth.minusMonths(1));
+            }
+
+            int rolled = 0;
+            for (LocalDate month = oldest; month.isBefore(currentMonth); month = month.plusMonths(1)) {
+                if (!done.contains(month)) {
+                    rollUpMonth(month);
+                    rolled++;
+                }
+            }
+            int orphans = jdbcTemplate.update("""
+                    DELETE FROM usage_monthly_rollups r
+                    WHERE r.relying_party_id <> ?
+                      AND NOT EXISTS (SELECT 1 FROM relying_parties rp WHERE rp.id = r.relying_party_id)
+                    """, ALL_RELYING_PARTIES);
+            if (rolled > 0 || orphans > 0) {
+                logger.info("Usage rollup complete: monthsRolledUp={}, orphanRowsDeleted={}", rolled, orphans);
+            }
+        } catch (Exception e) {
+            logger.error("Usage rollup failed", e);
+        }
+    }
+
+    /**
+     * Recompute all rollup rows of one closed month
+     */
+    void rollUpMonth(LocalDate month) {
+        Date monthDate = Date.valueOf(month);
+        Timestamp recentSince = UsageMeteringService.activeRecentlySince(month);
+
+        Map<UUID, long[]> perRp = new LinkedHashMap<>(); // mau, auth_count, retained, active_recently, exact_mau
+        jdbcTemplate.query("""
+                SELECT relying_party_id, COUNT(*) AS mau,
+                       SUM(CASE WHEN last_seen_at >= ? THEN 1 ELSE 0 END) AS active_recently
+                FROM monthly_active_users
+                WHERE month = ?
+                GROUP BY relying_party_id
+                """, rs -> {
+            long[] row = perRp.computeIfAbsent(rs.getObject("relying_party_id", UUID.class), id -> new long[5]);
+            row[0] = rs.getLong("mau");
+            row[3] = rs.getLong("active_recently");
+            row[4] = row[0];
+        }, recentSince, monthDate);
+        jdbcTemplate.query("""
+                SELECT relying_party_id, auth_count FROM rp_monthly_counters WHERE month = ?
+                """, rs -> {
+            perRp.computeIfAbsent(rs.getObject("relying_party_id", UUID.class), id -> new long[5])[1] =
+                    rs.getLong("auth_count");
+        }, monthDate);
+        Map<UUID, RoaringBitmap> currentUsers = activeUserBitmaps.loadMonth(month);
+        Map<UUID, RoaringBitmap> previousUsers = activeUserBitmaps.loadMonth(month.minusMonths(1));
+        currentUsers.forEach((rpId, users) -> {
+            RoaringBitmap previous = previousUsers.get(rpId);
+            if (previous != null) {
+                perRp.computeIfAbsent(rpId, id -> new long[5])[2] = RoaringBitmap.andCardinality(users, previous);
+            }
+        });
+
+        // "ALL" counts distinct users across RPs, so it is not the sum of the per-RP rows
+        long[] all = new long[5];
+        jdbcTemplate.query("""
+                SELECT COUNT(DISTINCT user_id) AS mau,
+                       SUM(CASE WHEN last_seen_at >= ? THEN 1 ELSE 0 END) AS active_recently
+                FROM monthly_active_users
+                WHERE month = ?
+                """, rs -> {
+            all[0] = rs.getLong("mau");
+            all[3] = rs.getLong("active_recently");
+            all[4] = all[0];
+        }, recentSince, monthDate);
+        all[1] = perRp.values().stream().mapToLong(row -> row[1]).sum();
+        all[2] = RoaringBitmap.andCardinality(
+                RoaringBitmap.or(currentUsers.values().iterator()),
+                RoaringBitmap.or(previousUsers.values().iterator()));
+
+        if (mauSketchAccumulator.isEnabled()) {
+            // The MAU the live summary shows; RPs without a sketch keep the exact count there too
+            mauSketchAccumulator.estimateMonth(month).forEach((rpId, estimate) ->
+                    perRp.computeIfAbsent(rpId, id -> new long[5])[0] = estimate);
+            Integer allEstimate = mauSketchAccumulator.estimateMonthlyActiveUsers(null, month, month).get(month);
+            if (allEstimate != null) {
+                all[0] = allEstimate;
+            }
+        }
+
+        List<Object[]> rows = new ArrayList<>(perRp.size() + 1);
+        Timestamp now = Timestamp.from(Instant.now());
+        perRp.forEach((rpId, row) -> rows.add(rollupRow(rpId, monthDate, row, now)));
+        rows.add(rollupRow(ALL_RELYING_PARTIES, monthDate, all, now));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM usage_monthly_rollups WHERE month = ?", monthDate);
+            jdbcTemplate.batchUpdate("""
+                    INSERT INTO usage_monthly_rollups
+                        (relying_party_id, month, mau, auth_count, retained, active_recently, exact_mau, computed_at)
+                    VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+                    ON CONFLICT (relying_party_id, month) DO UPDATE SET
+                        mau = EXCLUDED.mau,
+                        auth_count = EXCLUDED.auth_count,
+                        retained = EXCLUDED.retained,
+                        active_recently = EXCLUDED.active_recently,
+                        exact_mau = EXCLUDED.exact_mau,
+                        computed_at = EXCLUDED.computed_at
+                    """, rows);
+        });
+        finalMonths.asMap().keySet().removeIf(key -> key.month().equals(month));
+        logger.debug("Rolled up usage: month={}, relyingParties={}", month, perRp.size());
+    }
+
+    private void readRollups(UUID rollupKey, LocalDate fromMonth, LocalDate toMonth,
+                             Map<LocalDate, MonthlyUsage> rolledUp, Set<LocalDate> closedMonthsDone) {
+        jdbcTemplate.query("""
+                SELECT relying_party_id, month, mau, auth_count, retained, active_recently, exact_mau
+                FROM usage_monthly_rollups
+                WHERE relying_party_id IN (?, ?) AND month >= ? AND month < ?
+                """, rs -> {
+            LocalDate month = rs.getDate("month").toLocalDate();
+            UUID key = rs.getObject("relying_party_id", UUID.class);
+            if (ALL_RELYING_PARTIES.equals(key)) {
+                closedMonthsDone.add(month);
+            }
+            if (rollupKey.equals(key)) {
+                rolledUp.put(month, new MonthlyUsage(month, rs.getInt("mau"), (int) rs.getLong("auth_count"),
+                        retentionRate(rs.getInt("retained"), rs.getInt("exact_mau")), rs.getInt("active_recently")));
+            }
+        }, rollupKey, ALL_RELYING_PARTIES, Date.valueOf(fromMonth), Date.valueOf(toMonth));
+    }
+
+    /**
+     * Months before the returned one are rolled up for good; the month that just closed only
+     * becomes final once the reopen window has passed
+     */
+    private LocalDate finalMonthsBefore(LocalDate currentMonth) {
+        return LocalDate.now(EUROPE_ZURICH).getDayOfMonth() <= reopenDays ? currentMonth.minusMonths(1) : currentMonth;
+    }
+
+    private static Object[] rollupRow(UUID relyingPartyId, Date month, long[] values, Timestamp now) {
+        return new Object[]{relyingPartyId, month, (int) values[0], values[1], (int) values[2], (int) values[3],
+                (int) values[4], now};
+    }
+
+    private static int retentionRate(int retained, int mau) {
+        return mau > 0 ? (int) Math.round(retained * 100.0 / mau) : 0;
+    }
+
+    private record MonthKey(UUID rollupKey, LocalDate month) {
+    }
+
+    private record LiveKey(UUID rollupKey, LocalDate fromMonth, LocalDate currentMonth) {
+    }
+}
@@ -0,0 +1,147 @@
+package ch.nullprofile.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact JWS serialization for tokens we mint, without the Nimbus JWT object model.
+ *
+ * The base64url header is built once per (alg, kid, typ) ({@link #header}) and reused. The claims
+ * are streamed as JSON into a pooled buffer and base64url-encoded straight behind the header, so
+ * the only per-token allocations are the signing input, the signature and the result string.
+ * Signing itself still goes through the Nimbus {@link JWSSigner}.
+ */
+public final class CompactJws {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final byte[] BASE64URL_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private static final ObjectPool<Buffer> BUFFERS = new ObjectPool<>(
+            () -> new Buffer(INITIAL_BUFFER_SIZE),
+            Buffer::reset);
+
+    private CompactJws() {
+    }
+
+    /**
+     * Pre-encoded protected header
+     */
+    public record Header(JWSHeader jwsHeader, byte[] encoded) {
+    }
+
+    /**
+     * Writes the claims as fields of the (already started) payload object
+     */
+    @FunctionalInterface
+    public interface ClaimsWriter {
+        void write(JsonGenerator json) throws IOException;
+    }
+
+    public static Header header(JWSAlgorithm algorithm, String kid, JOSEObjectType type) {
+        JWSHeader header = new JWSHeader.Builder(algorithm)
+                .keyID(kid)
+                .type(type)
+                .build();
+        return new Header(header, header.toBase64URL().toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Serialize {@code claims} under {@code header} and sign: header.payload.signature
+     */
+    public static String sign(Header header, JWSSigner signer, ClaimsWriter claims) throws JOSEException {
+        Buffer payload = BUFFERS.borrow();
+        Buffer signingInput = BUFFERS.borrow();
+        try {
+            try (JsonGenerator json = JSON.createGenerator(payload, JsonEncoding.UTF8)) {
+                json.writeStartObject();
+                claims.write(json);
+                json.writeEndObject();
+            }
+
+            signingInput.write(header.encoded());
+            signingInput.write('.');
+            encodeBase64Url(payload.array(), payload.size(), signingInput);
+
+            // The token is the signing input plus the signature, assembled in the same buffer
+            byte[] signature = signer.sign(header.jwsHeader(), signingInput.toByteArray()).toString()
+                    .getBytes(StandardCharsets.US_ASCII);
+            signingInput.write('.');
+            signingInput.write(signature);
+            return signingInput.toString(StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            // In-memory buffers only
+            throw new UncheckedIOException(e);
+        } finally {
+            BUFFERS.release(payload);
+            BUFFERS.release(signingInput);
+        }
+    }
+
+    /**
+     * Unpadded base64url of {@code src[0, length)}, appended to {@code out}. The JDK encoder's
+     * stream wrapper allocates an 8 KiB buffer per call, which would dominate our allocations.
+     */
+    static void encodeBase64Url(byte[] src, int length, Buffer out) {
+        int i = 0;
+        for (; i + 3 <= length; i += 3) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            out.write(BASE64URL_ALPHABET[bits >>> 18]);
+            out.write(BASE64URL_ALPHABET[bits >>> 12 & 0x3f]);
+            out.write(BASE64URL_ALPHABET[bits >>> 6 & 0x3f]);
+            out.write(BASE64URL_ALPHABET[bits & 0x3f]);
+        }
+        int remaining = length - i;
+        if (remaining == 1) {
+            int bits = (src[i] & 0xff) << 16;
+            out.write(BASE64URL_ALPHABET[bits >>> 18]);
+            out.write(BASE64URL_ALPHABET[bits >>> 12 & 0x3f]);
+        } else if (remaining == 2) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8;
+            out.write(BASE64URL_ALPHABET[bits >>> 18]);
+            out.write(BASE64URL_ALPHABET[bits >>> 12 & 0x3f]);
+            out.write(BASE64URL_ALPHABET[bits >>> 6 & 0x3f]);
+        }
+    }
+
+    /**
+     * Growable byte buffer exposing its backing array; closing it is a no-op. Only ever used by
+     * the thread that borrowed it, so single-byte writes skip the superclass's monitor.
+     */
+    static final class Buffer extends ByteArrayOutputStream {
+
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        @Override
+        public void write(int b) {
+            if (count == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes) {
+            write(bytes, 0, bytes.length);
+        }
+    }
+}
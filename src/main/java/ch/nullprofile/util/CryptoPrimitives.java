@@ -0,0 +1,90 @@
+package ch.nullprofile.util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Reusable hashing primitives for the OIDC hot path.
+ *
+ * {@code MessageDigest.getInstance} / {@code Mac.getInstance} perform a provider lookup, and
+ * {@code Mac.init} redoes key setup, on every call. Instances here are created once and handed
+ * out from small bounded pools: a caller borrows an instance for a single operation and returns
+ * it immediately, so an instance is only ever used by one thread at a time.
+ */
+public final class CryptoPrimitives {
+
+    // digest/doFinal already reset the instance; the reset on release covers calls that threw midway
+    private static final ObjectPool<MessageDigest> SHA256 = new ObjectPool<>(
+            () -> newInstance(() -> MessageDigest.getInstance("SHA-256")),
+            MessageDigest::reset);
+
+    private CryptoPrimitives() {
+    }
+
+    /**
+     * SHA-256 of {@code input}
+     */
+    public static byte[] sha256(byte[] input) {
+        MessageDigest digest = SHA256.borrow();
+        try {
+            return digest.digest(input);
+        } finally {
+            SHA256.release(digest);
+        }
+    }
+
+    /**
+     * Create a pool of HMAC-SHA-256 instances pre-initialised with {@code key}
+     */
+    public static HmacSha256 hmacSha256(byte[] key) {
+        return new HmacSha256(key);
+    }
+
+    /**
+     * HMAC-SHA-256 bound to a single key; the key is set up once per pooled instance
+     */
+    public static final class HmacSha256 {
+
+        private final ObjectPool<Mac> pool;
+
+        private HmacSha256(byte[] key) {
+            SecretKeySpec secretKey = new SecretKeySpec(key, "HmacSHA256");
+            this.pool = new ObjectPool<>(
+                    () -> newInstance(() -> {
+                        Mac mac = Mac.getInstance("HmacSHA256");
+                        mac.init(secretKey);
+                        return mac;
+                    }),
+                    Mac::reset);
+            // Fail fast on an unusable key rather than on the first request
+            pool.release(pool.borrow());
+        }
+
+        /**
+         * HMAC of {@code input}
+         */
+        public byte[] mac(byte[] input) {
+            Mac mac = pool.borrow();
+            try {
+                return mac.doFinal(input);
+            } finally {
+                pool.release(mac);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface CryptoFactory<T> {
+        T create() throws GeneralSecurityException;
+    }
+
+    private static <T> T newInstance(CryptoFactory<T> factory) {
+        try {
+            return factory.create();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Crypto primitive not available", e);
+        }
+    }
+}
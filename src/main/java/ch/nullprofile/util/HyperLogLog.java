@@ -0,0 +1,196 @@
+package ch.nullprofile.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * HyperLogLog cardinality sketch with 2^precision one-byte registers.
+ *
+ * The relative standard error is about {@code 1.04 / sqrt(2^precision)}; {@link #precisionFor}
+ * picks the smallest precision meeting a requested bound. Registers are raised with a
+ * compare-and-set max, so concurrent {@link #add} calls are safe without locking.
+ * Sketches with the same precision merge by register-wise max; {@link #reducedTo} folds a
+ * sketch to a lower precision so sketches built with different settings can still be merged.
+ *
+ * Serialized form ({@link #toBytes}): one precision byte followed by the registers.
+ */
+public final class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private static final VarHandle REGISTER = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between " + MIN_PRECISION
+                    + " and " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Smallest precision whose standard error is at most {@code relativeError}
+     */
+    public static int precisionFor(double relativeError) {
+        if (!(relativeError > 0 && relativeError < 1)) {
+            throw new IllegalArgumentException("relativeError must be in (0, 1): " + relativeError);
+        }
+        double registersNeeded = Math.pow(1.04 / relativeError, 2);
+        int precision = (int) Math.ceil(Math.log(registersNeeded) / Math.log(2));
+        return Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision));
+    }
+
+    public static HyperLogLog withRelativeError(double relativeError) {
+        return new HyperLogLog(precisionFor(relativeError));
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            throw new IllegalArgumentException("Empty HyperLogLog");
+        }
+        HyperLogLog hll = new HyperLogLog(bytes[0]);
+        if (bytes.length != hll.registers.length + 1) {
+            throw new IllegalArgumentException("Corrupt HyperLogLog: precision " + bytes[0]
+                    + " with " + (bytes.length - 1) + " registers");
+        }
+        System.arraycopy(bytes, 1, hll.registers, 0, hll.registers.length);
+        return hll;
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    /**
+     * Add a user id
+     *
+     * @return true if a register changed (the sketch needs persisting)
+     */
+    public boolean add(UUID id) {
+        return addHash(fmix64(id.getMostSignificantBits() ^ fmix64(id.getLeastSignificantBits())));
+    }
+
+    /**
+     * Add an already well-mixed 64-bit hash
+     */
+    public boolean addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // Guard bit caps the rank at 64 - precision + 1
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        return raise(index, (byte) (Long.numberOfLeadingZeros(remaining) + 1));
+    }
+
+    /**
+     * Estimated number of distinct values added
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < m; i++) {
+            byte rank = (byte) REGISTER.getOpaque(registers, i);
+            sum += Math.scalb(1.0, -rank);
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Small-range correction: linear counting is more accurate while registers are still empty
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Merge {@code other} into this sketch; both must have the same precision
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge precision " + other.precision + " into " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            raise(i, (byte) REGISTER.getOpaque(other.registers, i));
+        }
+    }
+
+    /**
+     * Copy of this sketch folded to a lower (or equal) precision
+     */
+    public HyperLogLog reducedTo(int targetPrecision) {
+        if (targetPrecision > precision) {
+            throw new IllegalArgumentException("Cannot increase precision from " + precision + " to " + targetPrecision);
+        }
+        HyperLogLog reduced = new HyperLogLog(targetPrecision);
+        int shift = precision - targetPrecision;
+        for (int i = 0; i < registers.length; i++) {
+            byte rank = (byte) REGISTER.getOpaque(registers, i);
+            if (rank == 0) {
+                continue;
+            }
+            // Index bits dropped by the fold become the leading bits of the remaining hash
+            int dropped = i & ((1 << shift) - 1);
+            byte foldedRank = dropped == 0
+                    ? (byte) (shift + rank)
+                    : (byte) (Integer.numberOfLeadingZeros(dropped) - (32 - shift) + 1);
+            reduced.raise(i >>> shift, foldedRank);
+        }
+        return reduced;
+    }
+
+    public byte[] toBytes() {
+        byte[] bytes = new byte[registers.length + 1];
+        bytes[0] = (byte) precision;
+        for (int i = 0; i < registers.length; i++) {
+            bytes[i + 1] = (byte) REGISTER.getOpaque(registers, i);
+        }
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof HyperLogLog other && Arrays.equals(toBytes(), other.toBytes());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toBytes());
+    }
+
+    private boolean raise(int index, byte rank) {
+        byte current;
+        do {
+            current = (byte) REGISTER.getVolatile(registers, index);
+            if (current >= rank) {
+                return false;
+            }
+        } while (!REGISTER.compareAndSet(registers, index, current, rank));
+        return true;
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+
+    // MurmurHash3 64-bit finalizer
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
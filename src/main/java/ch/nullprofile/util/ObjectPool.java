@@ -0,0 +1,44 @@
+package ch.nullprofile.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Small bounded pool of reusable instances: borrow never blocks (creates on empty), release
+ * drops the instance when full. A borrowed instance belongs to the borrowing thread until released.
+ *
+ * Used rather than {@code ThreadLocal} so that virtual threads (one per request, never reused)
+ * share a handful of instances instead of each building its own.
+ */
+final class ObjectPool<T> {
+
+    static final int DEFAULT_CAPACITY = Math.max(4, Runtime.getRuntime().availableProcessors() * 4);
+
+    private final ArrayBlockingQueue<T> idle;
+    private final Supplier<T> factory;
+    private final Consumer<T> reset;
+
+    /**
+     * @param reset applied on release, so a borrower always gets a clean instance
+     */
+    ObjectPool(Supplier<T> factory, Consumer<T> reset) {
+        this(DEFAULT_CAPACITY, factory, reset);
+    }
+
+    ObjectPool(int capacity, Supplier<T> factory, Consumer<T> reset) {
+        this.idle = new ArrayBlockingQueue<>(capacity);
+        this.factory = factory;
+        this.reset = reset;
+    }
+
+    T borrow() {
+        T instance = idle.poll();
+        return instance != null ? instance : factory.get();
+    }
+
+    void release(T instance) {
+        reset.accept(instance);
+        idle.offer(instance);
+    }
+}
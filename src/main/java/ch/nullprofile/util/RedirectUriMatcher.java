@@ -0,0 +1,83 @@
+package ch.nullprofile.util;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable set of registered redirect URIs for one relying party.
+ *
+ * URIs are normalised once when the set is built: scheme and host are lower-cased (they are
+ * case-insensitive per RFC 3986), everything else - port, path, query - must match exactly.
+ * A lookup is a single hash probe regardless of how many URIs are registered; the candidate is
+ * only copied when its scheme or host actually contains upper-case characters.
+ */
+public final class RedirectUriMatcher {
+
+    private static final RedirectUriMatcher EMPTY = new RedirectUriMatcher(Set.of());
+
+    private final Set<String> uris;
+
+    private RedirectUriMatcher(Set<String> uris) {
+        this.uris = uris;
+    }
+
+    public static RedirectUriMatcher of(Collection<String> registeredUris) {
+        if (registeredUris.isEmpty()) {
+            return EMPTY;
+        }
+        return new RedirectUriMatcher(registeredUris.stream()
+                .map(RedirectUriMatcher::normalise)
+                .collect(Collectors.toUnmodifiableSet()));
+    }
+
+    /**
+     * Whether {@code redirectUri} is registered (exact match after scheme/host normalisation)
+     */
+    public boolean matches(String redirectUri) {
+        return redirectUri != null && uris.contains(normalise(redirectUri));
+    }
+
+    public int size() {
+        return uris.size();
+    }
+
+    /**
+     * Lower-case scheme and host; returns {@code uri} itself when nothing needs to change
+     */
+    static String normalise(String uri) {
+        int schemeEnd = uri.indexOf(':');
+        if (schemeEnd <= 0) {
+            return uri;
+        }
+        int authorityEnd = schemeEnd + 1;
+        if (uri.startsWith("//", schemeEnd + 1)) {
+            authorityEnd = schemeEnd + 3;
+            while (authorityEnd < uri.length() && "/?#".indexOf(uri.charAt(authorityEnd)) < 0) {
+                authorityEnd++;
+            }
+        }
+        // Leave userinfo (case-sensitive) untouched
+        int hostStart = uri.lastIndexOf('@', authorityEnd - 1);
+        hostStart = hostStart > schemeEnd ? hostStart + 1 : schemeEnd + 1;
+
+        if (!hasUpperCase(uri, 0, schemeEnd) && !hasUpperCase(uri, hostStart, authorityEnd)) {
+            return uri;
+        }
+        return uri.substring(0, schemeEnd).toLowerCase(Locale.ROOT)
+                + uri.substring(schemeEnd, hostStart)
+                + uri.substring(hostStart, authorityEnd).toLowerCase(Locale.ROOT)
+                + uri.substring(authorityEnd);
+    }
+
+    private static boolean hasUpperCase(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,243 @@
+package ch.nullprofile.util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded concurrent map whose entries expire individually, driven by a hashed timing wheel.
+ *
+ * Each entry is filed into the wheel bucket of its deadline tick. {@link #advance(Instant)}
+ * only visits the buckets whose tick has passed since the previous call, so expiry costs
+ * amortised O(1) per entry instead of a periodic scan of the whole map. Deadlines further
+ * away than one wheel revolution simply stay in their bucket for another round.
+ *
+ * The entry count is capped: when full, {@link #put} evicts the entry closest to expiry, resuming
+ * from the first bucket that may still hold one, so eviction is amortised O(1) as well. Inserts
+ * hold the wheel lock so the capacity check, eviction and insert are one step; reads and removes
+ * do not take it. Reads never return an entry past its deadline, even if the wheel has not
+ * reached it yet.
+ */
+public class TimingWheelCache<K, V> {
+
+    private static final class Node<K, V> {
+        final K key;
+        final long deadlineTick;
+        final Instant expiresAt;
+        volatile V value;
+
+        Node(K key, V value, Instant expiresAt, long deadlineTick) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Node<K, V>> entries = new ConcurrentHashMap<>();
+    private final Queue<Node<K, V>>[] wheel;
+    private final int mask;
+    private final long tickMillis;
+    private final int maxEntries;
+    private final Clock clock;
+
+    // Last tick whose bucket has been swept; guarded by "this"
+    private long cursorTick;
+    // Buckets after cursorTick and before this tick hold no entry due in the current round; guarded by "this"
+    private long evictTick;
+
+    /**
+     * @param tick       wheel resolution (entries expire at most one tick late)
+     * @param wheelSize  number of buckets, rounded up to a power of two
+     * @param maxEntries hard cap on live entries
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheelCache(Duration tick, int wheelSize, int maxEntries, Clock clock) {
+        if (tick.toMillis() <= 0 || wheelSize <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("tick, wheelSize and maxEntries must be positive");
+        }
+        int buckets = Integer.highestOneBit(wheelSize - 1) << 1;
+        if (buckets <= 0) {
+            buckets = 1;
+        }
+        this.wheel = new Queue[buckets];
+        for (int i = 0; i < buckets; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.mask = buckets - 1;
+        this.tickMillis = tick.toMillis();
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.cursorTick = tickOf(clock.instant());
+        this.evictTick = cursorTick + 1;
+    }
+
+    public TimingWheelCache(Duration tick, int wheelSize, int maxEntries) {
+        this(tick, wheelSize, maxEntries, Clock.systemUTC());
+    }
+
+    /**
+     * Insert or replace an entry that expires at {@code expiresAt}
+     */
+    public synchronized void put(K key, V value, Instant expiresAt) {
+        if (!entries.containsKey(key)) {
+            // Concurrent removes only shrink the map, so the cap holds once checked under the lock
+            while (entries.size() >= maxEntries) {
+                if (!evictSoonestExpiring()) {
+                    break;
+                }
+            }
+        }
+        long deadlineTick = Math.max(tickOf(expiresAt), tickOf(clock.instant())) + 1;
+        Node<K, V> node = new Node<>(key, value, expiresAt, deadlineTick);
+        entries.put(key, node);
+        wheel[(int) (deadlineTick & mask)].add(node);
+        evictTick = Math.min(evictTick, deadlineTick);
+    }
+
+    /**
+     * Get a live entry, or null if absent or past its deadline
+     */
+    public V get(K key) {
+        Node<K, V> node = entries.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (clock.instant().isAfter(node.expiresAt)) {
+            entries.remove(key, node);
+            return null;
+        }
+        return node.value;
+    }
+
+    /**
+     * Remove and return a live entry (atomic: concurrent callers cannot both receive it)
+     */
+    public V remove(K key) {
+        Node<K, V> node = entries.remove(key);
+        if (node == null || clock.instant().isAfter(node.expiresAt)) {
+            return null;
+        }
+        return node.value;
+    }
+
+    /**
+     * Replace the value of a live entry, keeping its deadline. Returns the new value, or null if absent.
+     */
+    public V update(K key, UnaryOperator<V> updater) {
+        Node<K, V> node = entries.computeIfPresent(key, (k, existing) -> {
+            existing.value = updater.apply(existing.value);
+            return existing;
+        });
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * Sweep every bucket whose tick has elapsed up to {@code now}. Returns the number of entries removed.
+     */
+    public synchronized int advance(Instant now) {
+        long nowTick = tickOf(now);
+        if (nowTick <= cursorTick) {
+            return 0;
+        }
+        // A full revolution visits every bucket; no need to replay longer gaps tick by tick
+        long from = Math.max(cursorTick + 1, nowTick - mask);
+        int removed = 0;
+        for (long tick = from; tick <= nowTick; tick++) {
+            removed += sweep(wheel[(int) (tick & mask)], tick);
+        }
+        cursorTick = nowTick;
+        evictTick = Math.max(evictTick, nowTick + 1);
+        return removed;
+    }
+
+    private int sweep(Queue<Node<K, V>> bucket, long tick) {
+        int removed = 0;
+        List<Node<K, V>> laterRounds = null;
+        Node<K, V> node;
+        while ((node = bucket.poll()) != null) {
+            if (node.deadlineTick > tick) {
+                if (entries.get(node.key) == node) {
+                    if (laterRounds == null) {
+                        laterRounds = new ArrayList<>();
+                    }
+                    laterRounds.add(node);
+                }
+            } else if (entries.remove(node.key, node)) {
+                removed++;
+            }
+        }
+        if (laterRounds != null) {
+            bucket.addAll(laterRounds);
+        }
+        return removed;
+    }
+
+    /**
+     * Evict the live entry with the earliest deadline tick; false if there is none. Walks the
+     * buckets in tick order from {@code evictTick} and takes the first node due in the current
+     * round, so buckets found empty are not visited again until an insert files an earlier entry.
+     * Nodes parked for a later round are only candidates if nothing is due within one revolution;
+     * that fallback scans the whole wheel, but only happens with deadlines beyond a revolution.
+     */
+    private boolean evictSoonestExpiring() {
+        for (; evictTick <= cursorTick + mask + 1; evictTick++) {
+            Iterator<Node<K, V>> it = wheel[(int) (evictTick & mask)].iterator();
+            while (it.hasNext()) {
+                Node<K, V> node = it.next();
+                if (entries.get(node.key) != node) {
+                    // Removed or replaced since it was filed
+                    it.remove();
+                } else if (node.deadlineTick <= evictTick) {
+                    it.remove();
+                    // If a concurrent remove got there first, the map shrank all the same
+                    entries.remove(node.key, node);
+                    return true;
+                }
+            }
+        }
+        Node<K, V> soonest = null;
+        for (Queue<Node<K, V>> bucket : wheel) {
+            for (Node<K, V> node : bucket) {
+                if (entries.get(node.key) == node && (soonest == null || node.deadlineTick < soonest.deadlineTick)) {
+                    soonest = node;
+                }
+            }
+        }
+        if (soonest == null) {
+            return false;
+        }
+        wheel[(int) (soonest.deadlineTick & mask)].remove(soonest);
+        entries.remove(soonest.key, soonest);
+        return true;
+    }
+
+    /**
+     * Number of live entries (may include entries past their deadline not yet swept)
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public int capacity() {
+        return maxEntries;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        for (Queue<Node<K, V>> bucket : wheel) {
+            bucket.clear();
+        }
+    }
+
+    private long tickOf(Instant instant) {
+        return instant.toEpochMilli() / tickMillis;
+    }
+}
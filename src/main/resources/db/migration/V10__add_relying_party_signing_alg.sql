@@ -0,0 +1,4 @@
+-- V10__add_relying_party_signing_alg.sql
+-- Per relying party JWS algorithm for ID and access tokens (RS256, ES256 or EdDSA)
+
+ALTER TABLE relying_parties ADD COLUMN signing_alg VARCHAR(16) NOT NULL DEFAULT 'RS256';
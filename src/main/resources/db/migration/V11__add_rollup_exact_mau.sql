@@ -0,0 +1,7 @@
+-- V11__add_rollup_exact_mau.sql
+-- Exact MAU of each rolled-up month, which retention is measured against
+-- In SKETCH MAU mode the mau column holds the HyperLogLog estimate the live dashboard shows
+
+ALTER TABLE usage_monthly_rollups ADD COLUMN exact_mau INTEGER;
+UPDATE usage_monthly_rollups SET exact_mau = mau;
+ALTER TABLE usage_monthly_rollups ALTER COLUMN exact_mau SET NOT NULL;
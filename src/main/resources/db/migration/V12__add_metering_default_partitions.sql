@@ -0,0 +1,8 @@
+-- V12__add_metering_default_partitions.sql
+-- Catch-all partitions for metering rows whose month has no partition yet
+-- Without them an insert for an uncovered month fails (e.g. while MeteringPartitionManager is
+-- lagging or disabled) and the whole metering batch is lost. MeteringPartitionManager moves such
+-- rows into the month's own partition when it creates it.
+
+CREATE TABLE monthly_active_users_default PARTITION OF monthly_active_users DEFAULT;
+CREATE TABLE rp_monthly_counters_default PARTITION OF rp_monthly_counters DEFAULT;
@@ -0,0 +1,16 @@
+-- V5__add_mau_sketches.sql
+-- Add HyperLogLog sketches for approximate MAU counting (usage.metering.mau-mode=SKETCH)
+
+-- Table: mau_sketches
+-- One serialized HyperLogLog per relying party per month (first byte: precision, then registers)
+-- Sketches are mergeable, so the "ALL" view is the register-wise max across RPs
+CREATE TABLE mau_sketches (
+    relying_party_id UUID NOT NULL REFERENCES relying_parties(id) ON DELETE CASCADE,
+    month DATE NOT NULL,
+    registers BYTEA NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (relying_party_id, month)
+);
+
+-- Index for "ALL" dashboard queries
+CREATE INDEX idx_mau_sketches_month ON mau_sketches(month);
@@ -0,0 +1,17 @@
+-- V6__add_usage_monthly_rollups.sql
+-- Pre-aggregated dashboard figures for closed months
+
+-- Table: usage_monthly_rollups
+-- One row per relying party per closed month, written by the rollup job
+-- relying_party_id 00000000-0000-0000-0000-000000000000 holds the "ALL" view (distinct users across RPs),
+-- which is why there is no foreign key; rows of deleted RPs are removed by the job
+CREATE TABLE usage_monthly_rollups (
+    relying_party_id UUID NOT NULL,
+    month DATE NOT NULL,
+    mau INTEGER NOT NULL,
+    auth_count BIGINT NOT NULL,
+    retained INTEGER NOT NULL,
+    active_recently INTEGER NOT NULL,
+    computed_at TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (relying_party_id, month)
+);
@@ -0,0 +1,21 @@
+-- V7__add_mau_bitmaps.sql
+-- Add dense user ids and per-RP monthly user bitmaps for retention
+
+-- Roaring bitmaps store 32-bit ints; existing users are numbered when the column is added
+ALTER TABLE users ADD COLUMN dense_id INTEGER GENERATED BY DEFAULT AS IDENTITY;
+ALTER TABLE users ADD CONSTRAINT uq_users_dense_id UNIQUE (dense_id);
+
+-- Table: mau_bitmaps
+-- One serialized RoaringBitmap of users.dense_id per relying party per month
+-- Retention is the cardinality of (this month AND previous month)
+CREATE TABLE mau_bitmaps (
+    relying_party_id UUID NOT NULL REFERENCES relying_parties(id) ON DELETE CASCADE,
+    month DATE NOT NULL,
+    users BYTEA NOT NULL,
+    cardinality INTEGER NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (relying_party_id, month)
+);
+
+-- Index for "ALL" dashboard queries and the rollup job
+CREATE INDEX idx_mau_bitmaps_month ON mau_bitmaps(month);
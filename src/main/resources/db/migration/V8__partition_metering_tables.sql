@@ -0,0 +1,68 @@
+-- V8__partition_metering_tables.sql
+-- Convert the metering tables to declarative range partitions by month
+-- Every dashboard and rollup query filters on month, so scans, vacuum and index maintenance
+-- only touch the months involved. Upcoming partitions are created by MeteringPartitionManager.
+-- Existing rows are copied, so run this migration while the application is stopped.
+
+ALTER TABLE monthly_active_users RENAME TO monthly_active_users_legacy;
+ALTER INDEX monthly_active_users_pkey RENAME TO monthly_active_users_legacy_pkey;
+ALTER INDEX idx_monthly_active_users_rp_month RENAME TO idx_monthly_active_users_legacy_rp_month;
+ALTER INDEX idx_monthly_active_users_month RENAME TO idx_monthly_active_users_legacy_month;
+
+ALTER TABLE rp_monthly_counters RENAME TO rp_monthly_counters_legacy;
+ALTER INDEX rp_monthly_counters_pkey RENAME TO rp_monthly_counters_legacy_pkey;
+ALTER INDEX idx_rp_monthly_counters_month RENAME TO idx_rp_monthly_counters_legacy_month;
+
+-- Table: monthly_active_users (one partition per month, named monthly_active_users_pYYYYMM)
+CREATE TABLE monthly_active_users (
+    relying_party_id UUID NOT NULL REFERENCES relying_parties(id) ON DELETE CASCADE,
+    user_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    month DATE NOT NULL,
+    first_seen_at TIMESTAMP NOT NULL,
+    last_seen_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (relying_party_id, user_id, month)
+) PARTITION BY RANGE (month);
+
+-- A per-month index on month alone is redundant: partition pruning already selects the month
+CREATE INDEX idx_monthly_active_users_rp_month ON monthly_active_users(relying_party_id, month);
+
+-- Table: rp_monthly_counters (one partition per month, named rp_monthly_counters_pYYYYMM)
+CREATE TABLE rp_monthly_counters (
+    relying_party_id UUID NOT NULL REFERENCES relying_parties(id) ON DELETE CASCADE,
+    month DATE NOT NULL,
+    auth_count BIGINT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP NOT NULL DEFAULT now(),
+    updated_at TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (relying_party_id, month)
+) PARTITION BY RANGE (month);
+
+-- Partitions from the oldest existing month up to three months ahead
+DO $$
+DECLARE
+    m DATE;
+    last_month DATE := (date_trunc('month', now()) + INTERVAL '3 months')::date;
+BEGIN
+    SELECT date_trunc('month', LEAST(
+               COALESCE((SELECT min(month) FROM monthly_active_users_legacy), now()::date),
+               COALESCE((SELECT min(month) FROM rp_monthly_counters_legacy), now()::date)))::date
+    INTO m;
+    WHILE m <= last_month LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF monthly_active_users FOR VALUES FROM (%L) TO (%L)',
+                       'monthly_active_users_p' || to_char(m, 'YYYYMM'), m, (m + INTERVAL '1 month')::date);
+        EXECUTE format('CREATE TABLE %I PARTITION OF rp_monthly_counters FOR VALUES FROM (%L) TO (%L)',
+                       'rp_monthly_counters_p' || to_char(m, 'YYYYMM'), m, (m + INTERVAL '1 month')::date);
+        m := (m + INTERVAL '1 month')::date;
+    END LOOP;
+END $$;
+
+INSERT INTO monthly_active_users (relying_party_id, user_id, month, first_seen_at, last_seen_at)
+SELECT relying_party_id, user_id, month, first_seen_at, last_seen_at FROM monthly_active_users_legacy;
+
+INSERT INTO rp_monthly_counters (relying_party_id, month, auth_count, created_at, updated_at)
+SELECT relying_party_id, month, auth_count, created_at, updated_at FROM rp_monthly_counters_legacy;
+
+DROP TABLE monthly_active_users_legacy;
+DROP TABLE rp_monthly_counters_legacy;
+
+ANALYZE monthly_active_users;
+ANALYZE rp_monthly_counters;
@@ -0,0 +1,20 @@
+-- V9__add_signing_keys.sql
+-- Persistent JWT signing keys shared by all replicas
+
+-- Table: signing_keys
+-- The key with the latest activates_at <= now() < retires_at signs new tokens;
+-- every key is published in the JWKS until expires_at (retires_at + longest token lifetime).
+-- The private JWK is AES-GCM encrypted with OIDC_SIGNING_KEY_ENCRYPTION_KEY (12-byte IV || ciphertext, kid as AAD).
+CREATE TABLE signing_keys (
+    kid VARCHAR(64) PRIMARY KEY,
+    algorithm VARCHAR(16) NOT NULL,
+    public_jwk TEXT NOT NULL,
+    private_jwk_encrypted BYTEA NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT now(),
+    activates_at TIMESTAMP NOT NULL,
+    retires_at TIMESTAMP NOT NULL,
+    expires_at TIMESTAMP NOT NULL
+);
+
+-- Index for loading the published (unexpired) keys
+CREATE INDEX idx_signing_keys_expires_at ON signing_keys(expires_at);
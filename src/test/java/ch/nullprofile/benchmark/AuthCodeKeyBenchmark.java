@@ -0,0 +1,90 @@
+package ch.nullprofile.benchmark;
+
+import ch.nullprofile.dto.AuthCodeKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-/token cost of locating an authorization code in the store.
+ *
+ * - plaintextKey: String-keyed lookup plus the former sha256Hash (MessageDigest.getInstance per call)
+ * - digestKey:    AuthCodeKey (reused digest, precomputed hash code) lookup
+ *
+ * Run: mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *          -Dexec.mainClass=ch.nullprofile.benchmark.AuthCodeKeyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthCodeKeyBenchmark {
+
+    @Param({"10000", "100000"})
+    private int outstandingCodes;
+
+    private final ConcurrentHashMap<String, Object> plaintextStore = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<AuthCodeKey, Object> digestStore = new ConcurrentHashMap<>();
+    private String[] codes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SecureRandom random = new SecureRandom();
+        codes = new String[outstandingCodes];
+        for (int i = 0; i < outstandingCodes; i++) {
+            byte[] bytes = new byte[32];
+            random.nextBytes(bytes);
+            codes[i] = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+            plaintextStore.put(codes[i], Boolean.TRUE);
+            digestStore.put(AuthCodeKey.of(codes[i]), Boolean.TRUE);
+        }
+    }
+
+    private String nextCode() {
+        // Fresh String instance per call: a redeemed code arrives as a new request parameter
+        String code = new String(codes[next]);
+        next = (next + 1) % codes.length;
+        return code;
+    }
+
+    @Benchmark
+    public Object plaintextKey() throws NoSuchAlgorithmException {
+        String code = nextCode();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        String hash = Base64.getEncoder().encodeToString(digest.digest(code.getBytes(StandardCharsets.UTF_8)));
+        return plaintextStore.get(code) != null ? hash : null;
+    }
+
+    @Benchmark
+    public Object digestKey() {
+        return digestStore.get(AuthCodeKey.of(nextCode()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AuthCodeKeyBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,76 @@
+package ch.nullprofile.benchmark;
+
+import ch.nullprofile.util.CryptoPrimitives;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of the hashes on the /authorize and /token path.
+ *
+ * - *PerCall: getInstance (and Mac.init) on every call, as the services used to do
+ * - *Pooled:  CryptoPrimitives, instances created once and reused
+ *
+ * Run: mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *          -Dexec.mainClass=ch.nullprofile.benchmark.CryptoPrimitivesBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CryptoPrimitivesBenchmark {
+
+    private static final byte[] SALT = "platform-salt-for-benchmarking-only".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] INPUT =
+            "3f2b8c1e-9a47-4d2b-8f0e-5c6a7b8d9e01\u001Fhttps://rp.example.com".getBytes(StandardCharsets.UTF_8);
+
+    private final CryptoPrimitives.HmacSha256 hmac = CryptoPrimitives.hmacSha256(SALT);
+
+    @Benchmark
+    public byte[] sha256PerCall() throws GeneralSecurityException {
+        return MessageDigest.getInstance("SHA-256").digest(INPUT);
+    }
+
+    @Benchmark
+    public byte[] sha256Pooled() {
+        return CryptoPrimitives.sha256(INPUT);
+    }
+
+    @Benchmark
+    public byte[] hmacPerCall() throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SALT, "HmacSHA256"));
+        return mac.doFinal(INPUT);
+    }
+
+    @Benchmark
+    public byte[] hmacPooled() {
+        return hmac.mac(INPUT);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CryptoPrimitivesBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
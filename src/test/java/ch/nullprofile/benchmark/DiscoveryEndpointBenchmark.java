@@ -0,0 +1,140 @@
+package ch.nullprofile.benchmark;
+
+import ch.nullprofile.controller.OidcDiscoveryController;
+import ch.nullprofile.dto.OidcDiscoveryResponse;
+import ch.nullprofile.service.JwtService;
+import ch.nullprofile.service.SigningKeyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JWSAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Requests per second for the discovery document and the JWKS, dispatched through Spring MVC
+ * (standalone MockMvc, no network):
+ *
+ * - rendered:    serialized on every request, as the endpoints used to be (kept below as LegacyEndpoints)
+ * - cached:      pre-rendered bytes with ETag and Cache-Control
+ * - notModified: cached, with a matching If-None-Match (304, no body)
+ *
+ * The JWKS holds one published key per signing algorithm (RS256, ES256, EdDSA).
+ *
+ * Run: mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *          -Dexec.mainClass=ch.nullprofile.benchmark.DiscoveryEndpointBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class DiscoveryEndpointBenchmark {
+
+    private static final String ISSUER = "https://auth.example.com";
+
+    @Param({"/.well-known/openid-configuration", "/jwks.json"})
+    public String path;
+
+    private MockMvc mockMvc;
+    private String legacyPath;
+    private String etag;
+
+    @Setup
+    public void setUp() throws Exception {
+        JwtService jwtService = new JwtService(SigningKeyService.ephemeral());
+        ReflectionTestUtils.setField(jwtService, "issuer", ISSUER);
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        OidcDiscoveryController controller = new OidcDiscoveryController(ISSUER, 3600, 900, jwtService, objectMapper);
+        controller.render();
+        mockMvc = MockMvcBuilders.standaloneSetup(controller, new LegacyEndpoints(jwtService)).build();
+
+        legacyPath = "/legacy" + path;
+        etag = mockMvc.perform(get(path)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    @Benchmark
+    public int rendered() throws Exception {
+        return mockMvc.perform(get(legacyPath)).andReturn().getResponse().getContentLength();
+    }
+
+    @Benchmark
+    public int cached() throws Exception {
+        return mockMvc.perform(get(path)).andReturn().getResponse().getContentLength();
+    }
+
+    @Benchmark
+    public int notModified() throws Exception {
+        return mockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, etag)).andReturn().getResponse().getStatus();
+    }
+
+    /**
+     * The endpoints before pre-rendering: a new response object serialized per request
+     */
+    @RestController
+    static class LegacyEndpoints {
+
+        private final JwtService jwtService;
+
+        LegacyEndpoints(JwtService jwtService) {
+            this.jwtService = jwtService;
+        }
+
+        @GetMapping(value = "/legacy/.well-known/openid-configuration", produces = MediaType.APPLICATION_JSON_VALUE)
+        public OidcDiscoveryResponse discovery() {
+            OidcDiscoveryResponse response = new OidcDiscoveryResponse();
+            response.setIssuer(ISSUER);
+            response.setAuthorizationEndpoint(ISSUER + "/authorize");
+            response.setTokenEndpoint(ISSUER + "/token");
+            response.setJwksUri(ISSUER + "/jwks.json");
+            response.setRevocationEndpoint(ISSUER + "/revoke");
+            response.setIntrospectionEndpoint(ISSUER + "/introspect");
+            response.setIdTokenSigningAlgValuesSupported(jwtService.getSigningAlgorithms().stream()
+                    .map(JWSAlgorithm::getName)
+                    .toArray(String[]::new));
+            return response;
+        }
+
+        @GetMapping(value = "/legacy/jwks.json", produces = MediaType.APPLICATION_JSON_VALUE)
+        public Map<String, Object> jwks() {
+            List<Map<String, Object>> keys = jwtService.getPublicJwks().stream()
+                    .map(jwk -> jwk.toJSONObject())
+                    .toList();
+            return Collections.singletonMap("keys", keys);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DiscoveryEndpointBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,90 @@
+package ch.nullprofile.benchmark;
+
+import ch.nullprofile.util.RedirectUriMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-/authorize redirect_uri validation cost for RPs with many registered URIs.
+ *
+ * - listScan:       linear equals() over the registered URIs (what a naive in-memory check does)
+ * - matcherHit:     RedirectUriMatcher lookup of a registered URI
+ * - matcherMiss:    RedirectUriMatcher lookup of an unregistered URI
+ * - matcherMixedCase: lookup that needs scheme/host normalisation first
+ *
+ * Run: mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *          -Dexec.mainClass=ch.nullprofile.benchmark.RedirectUriMatcherBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedirectUriMatcherBenchmark {
+
+    @Param({"10", "100", "500"})
+    private int registeredUris;
+
+    private List<String> uriList;
+    private RedirectUriMatcher matcher;
+    private String hit;
+    private String miss;
+    private String mixedCase;
+
+    @Setup
+    public void setUp() {
+        uriList = new ArrayList<>(registeredUris);
+        for (int i = 0; i < registeredUris; i++) {
+            uriList.add("https://tenant-" + i + ".rp.example.com/oidc/callback");
+        }
+        matcher = RedirectUriMatcher.of(uriList);
+        // Fresh String instances so equals() cannot short-circuit on identity
+        int last = registeredUris - 1;
+        hit = new String("https://tenant-" + last + ".rp.example.com/oidc/callback");
+        miss = new String("https://tenant-" + registeredUris + ".rp.example.com/oidc/callback");
+        mixedCase = new String("HTTPS://Tenant-" + last + ".RP.example.com/oidc/callback");
+    }
+
+    @Benchmark
+    public boolean listScan() {
+        return uriList.contains(hit);
+    }
+
+    @Benchmark
+    public boolean matcherHit() {
+        return matcher.matches(hit);
+    }
+
+    @Benchmark
+    public boolean matcherMiss() {
+        return matcher.matches(miss);
+    }
+
+    @Benchmark
+    public boolean matcherMixedCase() {
+        return matcher.matches(mixedCase);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RedirectUriMatcherBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
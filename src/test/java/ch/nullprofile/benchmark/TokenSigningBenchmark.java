@@ -0,0 +1,96 @@
+package ch.nullprofile.benchmark;
+
+import ch.nullprofile.service.JwtService;
+import ch.nullprofile.service.SigningKeyService;
+import ch.nullprofile.service.TokenSigningExecutor;
+import com.nimbusds.jose.JWSAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens per second per core for each signing algorithm a relying party can choose.
+ *
+ * - idToken:  one ID token (what a /token request pays per signature)
+ * - tokenPair: ID token + access token, signed one after the other
+ * - tokenBundle: the same pair via JwtService.generateTokens, signed in parallel on the signing executor
+ *
+ * Single-threaded, so the score is per core; for tokenBundle it is the inverse of /token's signing
+ * latency, which should approach idToken's rather than tokenPair's.
+ *
+ * Run: mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *          -Dexec.mainClass=ch.nullprofile.benchmark.TokenSigningBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class TokenSigningBenchmark {
+
+    private static final String SUB = "d4f1c2b3a4e5f60718293a4b5c6d7e8f9a0b1c2d3e4f5a6b7c8d9e0f1a2b3c4d";
+    private static final String CLIENT_ID = "rp_0123456789abcdef0123456789abcdef";
+
+    @Param({"RS256", "ES256", "EdDSA"})
+    public String algorithm;
+
+    private TokenSigningExecutor signingExecutor;
+    private JwtService jwtService;
+    private JWSAlgorithm jwsAlgorithm;
+
+    @Setup
+    public void setUp() {
+        signingExecutor = new TokenSigningExecutor(0);
+        jwtService = new JwtService(SigningKeyService.ephemeral(), signingExecutor);
+        ReflectionTestUtils.setField(jwtService, "issuer", "https://auth.example.com");
+        ReflectionTestUtils.setField(jwtService, "idTokenTtlSeconds", 3600);
+        ReflectionTestUtils.setField(jwtService, "accessTokenTtlSeconds", 1800);
+        jwsAlgorithm = JWSAlgorithm.parse(algorithm);
+    }
+
+    @Benchmark
+    public String idToken() {
+        return jwtService.generateIdToken(SUB, CLIENT_ID, "n-0S6_WzA2Mj", jwsAlgorithm);
+    }
+
+    @Benchmark
+    public int tokenPair() {
+        String idToken = jwtService.generateIdToken(SUB, CLIENT_ID, "n-0S6_WzA2Mj", jwsAlgorithm);
+        String accessToken = jwtService.generateAccessToken(SUB, CLIENT_ID, jwsAlgorithm);
+        return idToken.length() + accessToken.length();
+    }
+
+    @Benchmark
+    public JwtService.TokenBundle tokenBundle() {
+        return jwtService.generateTokens(SUB, CLIENT_ID, "n-0S6_WzA2Mj", jwsAlgorithm);
+    }
+
+    @TearDown
+    public void tearDown() {
+        signingExecutor.shutdown();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TokenSigningBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,156 @@
+package ch.nullprofile.benchmark;
+
+import ch.nullprofile.config.UsageMeteringProperties;
+import ch.nullprofile.service.ActiveUserBitmaps;
+import ch.nullprofile.service.MauSketchAccumulator;
+import ch.nullprofile.service.UsageMeteringService;
+import ch.nullprofile.service.UsageQueryExecutor;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the usage dashboard query against a seeded PostgreSQL database.
+ *
+ * - fourQueries: MAU, auth counts, retention and active-recently as four round trips
+ * - singlePass:  getUsageSummary, one statement for all four series
+ *
+ * Needs a database migrated by Flyway (e.g. the docker-compose one). The first run seeds 10
+ * "bench-usage-*" RPs with ~1M monthly_active_users rows over 12 months (about 76% month-over-month
+ * retention); later runs reuse them.
+ *
+ * Run: mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *          -Dexec.mainClass=ch.nullprofile.benchmark.UsageSummaryBenchmark
+ *          -Dbench.db.url=jdbc:postgresql://localhost:5432/profile
+ *          -Dbench.db.user=profile_user -Dbench.db.password=profile_pass
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UsageSummaryBenchmark {
+
+    // "rp": one RP's dashboard (~100k rows scanned), "all": the ALL view (~1M rows scanned)
+    @Param({"rp", "all"})
+    private String scope;
+
+    @Param({"6", "12"})
+    private int months;
+
+    private HikariDataSource dataSource;
+    private UsageMeteringService service;
+    private UUID relyingPartyId;
+    private LocalDate startMonth;
+    private LocalDate endMonth;
+
+    @Setup
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getProperty("bench.db.url", "jdbc:postgresql://localhost:5432/profile"));
+        dataSource.setUsername(System.getProperty("bench.db.user", "profile_user"));
+        dataSource.setPassword(System.getProperty("bench.db.password", "profile_pass"));
+        dataSource.setMaximumPoolSize(4);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        seedIfEmpty(jdbcTemplate);
+
+        // EXACT mode; the write path (pipeline, counters) is not exercised
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        MauSketchAccumulator sketches = new MauSketchAccumulator(jdbcTemplate, transactionManager,
+                new UsageMeteringProperties(), new SimpleMeterRegistry());
+        ActiveUserBitmaps bitmaps = new ActiveUserBitmaps(jdbcTemplate, transactionManager, new SimpleMeterRegistry());
+        bitmaps.flush(); // backfills mau_bitmaps for the seeded rows
+        service = new UsageMeteringService(jdbcTemplate, null, null, sketches, bitmaps,
+                new UsageQueryExecutor(4, 10_000, new SimpleMeterRegistry()));
+
+        relyingPartyId = "rp".equals(scope)
+                ? jdbcTemplate.queryForObject("SELECT id FROM relying_parties WHERE rp_id = 'bench-usage-1'", UUID.class)
+                : null;
+        endMonth = LocalDate.now().withDayOfMonth(1);
+        startMonth = endMonth.minusMonths(months - 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public Object fourQueries() {
+        return new Object[]{
+                service.getMonthlyActiveUsers(relyingPartyId, startMonth, endMonth),
+                service.getAuthenticationCounts(relyingPartyId, startMonth, endMonth),
+                service.getRetentionRate(relyingPartyId, startMonth, endMonth),
+                service.getActiveRecently(relyingPartyId, startMonth, endMonth)
+        };
+    }
+
+    @Benchmark
+    public Object singlePass() {
+        return service.getUsageSummary(relyingPartyId, startMonth, endMonth);
+    }
+
+    private static void seedIfEmpty(JdbcTemplate jdbcTemplate) {
+        Integer existing = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM relying_parties WHERE rp_id LIKE 'bench-usage-%'", Integer.class);
+        if (existing != null && existing > 0) {
+            return;
+        }
+        jdbcTemplate.execute("""
+                INSERT INTO users (id, created_at)
+                SELECT md5('bench-user-' || i)::uuid, now() FROM generate_series(1, 30334) i
+                ON CONFLICT DO NOTHING
+                """);
+        jdbcTemplate.execute("""
+                INSERT INTO relying_parties (id, rp_id, rp_name, sector_id, created_at, created_by_user_id)
+                SELECT md5('bench-usage-' || r)::uuid, 'bench-usage-' || r, 'Bench ' || r, 'bench-usage-' || r,
+                       now(), md5('bench-user-1')::uuid
+                FROM generate_series(1, 10) r
+                """);
+        // Each month shifts the active user window by 2000, so consecutive months share ~76% of users
+        jdbcTemplate.execute("""
+                INSERT INTO monthly_active_users (relying_party_id, user_id, month, first_seen_at, last_seen_at)
+                SELECT md5('bench-usage-' || r)::uuid, md5('bench-user-' || i)::uuid, bm.month,
+                       bm.month::timestamp, bm.month + make_interval(days => i % 28)
+                FROM generate_series(1, 10) r
+                CROSS JOIN (SELECT m, (date_trunc('month', now()) - make_interval(months => m))::date AS month
+                            FROM generate_series(0, 11) m) bm
+                CROSS JOIN LATERAL generate_series(bm.m * 2000 + 1, bm.m * 2000 + 8334) i
+                """);
+        jdbcTemplate.execute("""
+                INSERT INTO rp_monthly_counters (relying_party_id, month, auth_count)
+                SELECT md5('bench-usage-' || r)::uuid, (date_trunc('month', now()) - make_interval(months => m))::date, 25000
+                FROM generate_series(1, 10) r CROSS JOIN generate_series(0, 11) m
+                """);
+        jdbcTemplate.execute("ANALYZE monthly_active_users");
+        jdbcTemplate.execute("ANALYZE rp_monthly_counters");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UsageSummaryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
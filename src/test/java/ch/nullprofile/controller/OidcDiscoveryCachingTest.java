@@ -0,0 +1,90 @@
+package ch.nullprofile.controller;
+
+import ch.nullprofile.service.JwtService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class OidcDiscoveryCachingTest {
+
+    private static final String ISSUER = "https://issuer.example.com";
+
+    private final List<JWK> publishedKeys = new ArrayList<>();
+    private OidcDiscoveryController controller;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        publishedKeys.add(new RSAKeyGenerator(2048).keyID("kid-1").generate().toPublicJWK());
+        JwtService jwtService = mock(JwtService.class);
+        when(jwtService.getSigningAlgorithms()).thenReturn(List.of(JWSAlgorithm.RS256));
+        when(jwtService.getPublicJwks()).thenAnswer(invocation -> List.copyOf(publishedKeys));
+
+        controller = new OidcDiscoveryController(ISSUER, 3600, 900, jwtService, new ObjectMapper());
+        controller.render();
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void discovery_isServedWithEtagAndCacheControl() throws Exception {
+        mockMvc.perform(get("/.well-known/openid-configuration"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=3600, public"))
+                .andExpect(header().string(HttpHeaders.ETAG, matchesPattern("\"[A-Za-z0-9_-]{22}\"")))
+                .andExpect(jsonPath("$.issuer").value(ISSUER))
+                .andExpect(jsonPath("$.revocation_endpoint").value(ISSUER + "/revoke"))
+                .andExpect(jsonPath("$.id_token_signing_alg_values_supported[0]").value("RS256"));
+    }
+
+    @Test
+    void matchingIfNoneMatch_returns304WithoutBody() throws Exception {
+        String etag = mockMvc.perform(get("/jwks.json"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=900, public"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        byte[] body = mockMvc.perform(get("/jwks.json").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertThat(body).isEmpty();
+
+        mockMvc.perform(get("/jwks.json").header(HttpHeaders.IF_NONE_MATCH, "\"stale\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void jwks_isReRenderedWhenSigningKeysChange() throws Exception {
+        String before = mockMvc.perform(get("/jwks.json"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        publishedKeys.add(new RSAKeyGenerator(2048).keyID("kid-2").generate().toPublicJWK());
+        // Not visible until the key set change is announced
+        mockMvc.perform(get("/jwks.json")).andExpect(jsonPath("$.keys.length()").value(1));
+
+        controller.renderJwks();
+
+        String after = mockMvc.perform(get("/jwks.json"))
+                .andExpect(jsonPath("$.keys[1].kid").value("kid-2"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(after).isNotEqualTo(before);
+        mockMvc.perform(get("/jwks.json").header(HttpHeaders.IF_NONE_MATCH, before))
+                .andExpect(status().isOk());
+    }
+}
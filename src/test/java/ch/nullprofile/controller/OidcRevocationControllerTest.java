@@ -0,0 +1,101 @@
+package ch.nullprofile.controller;
+
+import ch.nullprofile.service.JwtService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:testdb3;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false",
+        "platform.sub.salt=test-salt-for-testing-only",
+        "oidc.issuer=https://test-issuer.example.com"
+})
+class OidcRevocationControllerTest {
+
+    private static final String CLIENT_ID = "revocation-test-client";
+    private static final String SUB = "pairwise-sub-revocation";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtService jwtService;
+
+    private ResultActions introspect(String token, String clientId) throws Exception {
+        return mockMvc.perform(post("/introspect")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .param("token", token)
+                .param("client_id", clientId));
+    }
+
+    private ResultActions revoke(String token, String clientId) throws Exception {
+        return mockMvc.perform(post("/revoke")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .param("token", token)
+                .param("token_type_hint", "access_token")
+                .param("client_id", clientId));
+    }
+
+    @Test
+    void introspect_activeAccessToken() throws Exception {
+        String token = jwtService.generateAccessToken(SUB, CLIENT_ID);
+
+        introspect(token, CLIENT_ID)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.active").value(true))
+                .andExpect(jsonPath("$.client_id").value(CLIENT_ID))
+                .andExpect(jsonPath("$.sub").value(SUB))
+                .andExpect(jsonPath("$.scope").value("openid"))
+                .andExpect(jsonPath("$.token_type").value("Bearer"))
+                .andExpect(jsonPath("$.exp").isNumber());
+    }
+
+    @Test
+    void revokedToken_introspectsInactive() throws Exception {
+        String token = jwtService.generateAccessToken(SUB, CLIENT_ID);
+
+        revoke(token, CLIENT_ID).andExpect(status().isOk());
+
+        introspect(token, CLIENT_ID)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.active").value(false))
+                .andExpect(jsonPath("$.sub").doesNotExist());
+    }
+
+    @Test
+    void otherClient_cannotIntrospectOrRevoke() throws Exception {
+        String token = jwtService.generateAccessToken(SUB, CLIENT_ID);
+
+        introspect(token, "another-client").andExpect(jsonPath("$.active").value(false));
+        revoke(token, "another-client")
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("unauthorized_client"));
+
+        introspect(token, CLIENT_ID).andExpect(jsonPath("$.active").value(true));
+    }
+
+    @Test
+    void invalidTokens_areIgnoredByRevokeAndInactiveOnIntrospect() throws Exception {
+        String idToken = jwtService.generateIdToken(SUB, CLIENT_ID, "n");
+
+        revoke("not-a-token", CLIENT_ID).andExpect(status().isOk());
+        revoke(idToken, CLIENT_ID).andExpect(status().isOk());
+        introspect(idToken, CLIENT_ID).andExpect(jsonPath("$.active").value(false));
+    }
+}
@@ -1,13 +1,23 @@
 package ch.nullprofile.controller;
 
+import ch.nullprofile.exception.SigningCapacityExceededException;
+import ch.nullprofile.service.OidcSessionTransactionService;
+import ch.nullprofile.service.TokenSigningExecutor;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
 
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -29,6 +39,12 @@ class OidcTokenControllerTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @MockBean
+    private TokenSigningExecutor signingExecutor;
+
+    @SpyBean
+    private OidcSessionTransactionService sessionService;
+
     @Test
     void testTokenRejectsUnsupportedGrantType() throws Exception {
         mockMvc.perform(post("/token")
@@ -54,4 +70,22 @@ class OidcTokenControllerTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error").value("invalid_grant"));
     }
+
+    @Test
+    void testTokenReturns503WithoutConsumingCode_whenSigningQueueIsFull() throws Exception {
+        when(signingExecutor.reserve(anyInt())).thenThrow(new SigningCapacityExceededException(2));
+
+        mockMvc.perform(post("/token")
+                        .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                        .param("grant_type", "authorization_code")
+                        .param("code", "some-code")
+                        .param("client_id", "test-client")
+                        .param("code_verifier", "test-verifier")
+                        .param("redirect_uri", "http://example.com/callback"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "2"))
+                .andExpect(jsonPath("$.error").value("temporarily_unavailable"));
+
+        verify(sessionService, never()).validateAndConsumeAuthCode(anyString());
+    }
 }
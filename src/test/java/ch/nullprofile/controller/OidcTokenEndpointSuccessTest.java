@@ -2,10 +2,12 @@ package ch.nullprofile.controller;
 
 import ch.nullprofile.dto.OidcTransaction;
 import ch.nullprofile.entity.RelyingParty;
+import ch.nullprofile.exception.SigningCapacityExceededException;
 import ch.nullprofile.service.JwtService;
 import ch.nullprofile.service.OidcSessionTransactionService;
 import ch.nullprofile.service.PairwiseSubjectService;
 import ch.nullprofile.service.RelyingPartyService;
+import ch.nullprofile.service.TokenSigningExecutor;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
@@ -20,6 +22,8 @@ import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -59,6 +63,9 @@ class OidcTokenEndpointSuccessTest {
     @Autowired
     private JwtService jwtService;
 
+    @Autowired
+    private TokenSigningExecutor signingExecutor;
+
     @MockBean
     private OidcSessionTransactionService sessionService;
 
@@ -283,6 +290,38 @@ class OidcTokenEndpointSuccessTest {
                 .andExpect(jsonPath("$.error").value("invalid_grant"));
     }
 
+    @Test
+    void signingQueueFillingUpAfterCodeIsConsumed_stillIssuesTokens() throws Exception {
+        // Other requests take every free signing slot right after this one consumed its code;
+        // a second submit without a reservation would now be rejected
+        List<TokenSigningExecutor.Reservation> others = new ArrayList<>();
+        when(sessionService.validateAndConsumeAuthCode("code-then-queue-full")).thenAnswer(invocation -> {
+            try {
+                while (true) {
+                    others.add(signingExecutor.reserve(1));
+                }
+            } catch (SigningCapacityExceededException e) {
+                return Optional.of(validTransaction);
+            }
+        });
+
+        try {
+            mockMvc.perform(post("/token")
+                            .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                            .param("grant_type", "authorization_code")
+                            .param("code", "code-then-queue-full")
+                            .param("client_id", CLIENT_ID)
+                            .param("code_verifier", "verifier-xyz")
+                            .param("redirect_uri", REDIRECT_URI))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.access_token").isString())
+                    .andExpect(jsonPath("$.id_token").isString());
+        } finally {
+            others.forEach(TokenSigningExecutor.Reservation::close);
+        }
+        assertThat(others).isNotEmpty();
+    }
+
     // ── Utilities ────────────────────────────────────────────────────────────
 
     /** Minimal JSON field extractor to avoid pulling in extra test deps. */
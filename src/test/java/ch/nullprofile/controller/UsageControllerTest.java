@@ -0,0 +1,102 @@
+package ch.nullprofile.controller;
+
+import ch.nullprofile.dto.MonthlyUsage;
+import ch.nullprofile.service.ActiveUserBitmaps;
+import ch.nullprofile.service.MauSketchAccumulator;
+import ch.nullprofile.service.UsageMeteringService;
+import ch.nullprofile.service.UsageRollupService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class UsageControllerTest {
+
+    private static final UUID RP = UUID.randomUUID();
+
+    private UsageMeteringService usageMeteringService;
+    private UsageRollupService usageRollupService;
+    private LocalDate currentMonth;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        usageMeteringService = mock(UsageMeteringService.class);
+        currentMonth = LocalDate.now().withDayOfMonth(1);
+        when(usageMeteringService.getMonthBucket(any(Instant.class))).thenReturn(currentMonth);
+        liveFigures(30, 60);
+
+        // No rollups stored, so every month is computed live and cached by the rollup service
+        usageRollupService = new UsageRollupService(mock(JdbcTemplate.class), mock(PlatformTransactionManager.class),
+                usageMeteringService, mock(ActiveUserBitmaps.class), mock(MauSketchAccumulator.class), 24, 2, 1000, 24, 60, new SimpleMeterRegistry());
+        mockMvc = MockMvcBuilders.standaloneSetup(new UsageController(usageRollupService)).build();
+    }
+
+    private void liveFigures(int mau, int logins) {
+        when(usageMeteringService.getUsageSummary(eq(RP), any(LocalDate.class), eq(currentMonth)))
+                .thenReturn(List.of(new MonthlyUsage(currentMonth, mau, logins, 0, mau)));
+    }
+
+    private ResultActions summary(String ifNoneMatch) throws Exception {
+        var request = get("/api/usage/summary").param("rpId", RP.toString()).param("months", "3");
+        if (ifNoneMatch != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return mockMvc.perform(request);
+    }
+
+    @Test
+    void summary_isRevalidatedWithEtag() throws Exception {
+        summary(null)
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(jsonPath("$.mau[0]").value(30))
+                .andExpect(jsonPath("$.logins[0]").value(60));
+    }
+
+    @Test
+    void matchingIfNoneMatch_returns304WithoutBody() throws Exception {
+        String etag = summary(null).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        summary(etag)
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void etagChanges_onceEvictedFiguresAreRecomputed() throws Exception {
+        String etag = summary(null).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        liveFigures(31, 62);
+
+        // Still served from the cache until evicted
+        summary(etag).andExpect(status().isNotModified());
+
+        usageRollupService.evict(RP);
+
+        String newEtag = summary(etag)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.mau[0]").value(31))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(newEtag).isNotEqualTo(etag);
+        summary(newEtag).andExpect(status().isNotModified());
+    }
+}
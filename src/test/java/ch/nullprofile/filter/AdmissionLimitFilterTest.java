@@ -0,0 +1,101 @@
+package ch.nullprofile.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionLimitFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void saturated_rejectsWithRetryAfter() throws Exception {
+        AdmissionLimitFilter filter = new AdmissionLimitFilter(true, 1, 20, 2, meterRegistry);
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Hold the only slot
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> {
+            try {
+                filter.doFilter(request("/token"), new MockHttpServletResponse(), (req, res) -> {
+                    inside.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(inside.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(filter.activeRequests()).isEqualTo(1);
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request("/token"), rejected, chain);
+
+        assertThat(rejected.getStatus()).isEqualTo(503);
+        assertThat(rejected.getHeader("Retry-After")).isEqualTo("2");
+        assertThat(rejected.getContentAsString()).contains("temporarily_unavailable");
+        assertThat(chain.getRequest()).isNull();
+        assertThat(meterRegistry.counter("http.admission.rejected").count()).isEqualTo(1.0);
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        assertThat(filter.activeRequests()).isZero();
+    }
+
+    @Test
+    void slotIsReleased_whenChainFails() throws Exception {
+        AdmissionLimitFilter filter = new AdmissionLimitFilter(true, 1, 20, 1, meterRegistry);
+        FilterChain failing = (req, res) -> {
+            throw new IllegalStateException("boom");
+        };
+
+        try {
+            filter.doFilter(request("/api/account"), new MockHttpServletResponse(), failing);
+        } catch (IllegalStateException expected) {
+            // propagated unchanged
+        }
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("/api/account"), response, new MockFilterChain());
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(filter.activeRequests()).isZero();
+    }
+
+    @Test
+    void pathsWithoutDatabase_areNotLimited() throws Exception {
+        AdmissionLimitFilter filter = new AdmissionLimitFilter(true, 0, 0, 1, meterRegistry);
+
+        for (String path : new String[]{"/.well-known/openid-configuration", "/jwks.json", "/actuator/health",
+                "/introspect", "/revoke"}) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            MockFilterChain chain = new MockFilterChain();
+            filter.doFilter(request(path), response, chain);
+            assertThat(chain.getRequest()).as(path).isNotNull();
+        }
+
+        for (String path : new String[]{"/authorize", "/authorize/resume", "/token", "/api/account",
+                "/webauthn/authentication/options"}) {
+            MockHttpServletResponse limited = new MockHttpServletResponse();
+            filter.doFilter(request(path), limited, new MockFilterChain());
+            assertThat(limited.getStatus()).as(path).isEqualTo(503);
+        }
+    }
+
+    private MockHttpServletRequest request(String path) {
+        return new MockHttpServletRequest("POST", path);
+    }
+}
@@ -0,0 +1,79 @@
+package ch.nullprofile.filter;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * The admission filter in the application context, with no free slot at all: any request it
+ * limits is rejected at once, so a 200 shows the request was not limited.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:testdb-admission;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false",
+        "platform.sub.salt=test-salt-for-testing-only",
+        "oidc.issuer=https://test-issuer.example.com",
+        "admission.max-concurrent-requests=0",
+        "admission.wait-millis=0"
+})
+class AdmissionLimitIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void byDefault_databaseBoundRequestIsRejectedWithRetryAfter() throws Exception {
+        mockMvc.perform(get("/api/public/hello"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(jsonPath("$.error").value("temporarily_unavailable"));
+    }
+
+    @Test
+    void byDefault_introspectionIsNotLimited() throws Exception {
+        mockMvc.perform(post("/introspect")
+                        .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                        .param("token", "not-a-token")
+                        .param("client_id", "admission-test-client"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.active").value(false));
+    }
+
+    @Test
+    void byDefault_discoveryIsNotLimited() throws Exception {
+        mockMvc.perform(get("/.well-known/openid-configuration"))
+                .andExpect(status().isOk());
+    }
+
+    @Nested
+    @TestPropertySource(properties = "admission.enabled=false")
+    class WhenDisabled {
+
+        // The enclosing instance is wired from the default context
+        @Autowired
+        private MockMvc disabledMockMvc;
+
+        @Test
+        void databaseBoundRequest_isNotLimited() throws Exception {
+            disabledMockMvc.perform(get("/api/public/hello"))
+                    .andExpect(status().isOk());
+        }
+    }
+}
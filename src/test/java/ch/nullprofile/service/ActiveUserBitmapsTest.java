@@ -0,0 +1,244 @@
+package ch.nullprofile.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ActiveUserBitmapsTest {
+
+    private static final UUID RP = UUID.randomUUID();
+    private static final LocalDate MONTH = LocalDate.of(2026, 1, 1);
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2026-01-15T12:00:00Z"), ZoneOffset.UTC);
+
+    private JdbcTemplate jdbcTemplate;
+    private AtomicReference<RoaringBitmap> storedRow;
+    private List<RoaringBitmap> updates;
+    private ActiveUserBitmaps bitmaps;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        storedRow = new AtomicReference<>(RoaringBitmap.bitmapOf(1, 2));
+        updates = new ArrayList<>();
+
+        // Dense id lookup: user new UUID(0, n) has dense id n
+        doAnswer(invocation -> {
+            AtomicReference<Object[]> requested = new AtomicReference<>();
+            Connection connection = mock(Connection.class);
+            when(connection.prepareStatement(anyString())).thenReturn(mock(PreparedStatement.class));
+            when(connection.createArrayOf(eq("uuid"), any(Object[].class))).thenAnswer(create -> {
+                requested.set(create.getArgument(1));
+                return mock(Array.class);
+            });
+            ((PreparedStatementCreator) invocation.getArgument(0)).createPreparedStatement(connection);
+
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Object id : requested.get()) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getObject("id", UUID.class)).thenReturn((UUID) id);
+                when(rs.getInt("dense_id")).thenReturn((int) ((UUID) id).getLeastSignificantBits());
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        // Backfill finds nothing missing; the row lock returns the stored bitmap
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            if (sql.contains("FOR UPDATE")) {
+                return List.of(ActiveUserBitmaps.serialize(storedRow.get()));
+            }
+            return List.of();
+        });
+        when(jdbcTemplate.update(startsWith("UPDATE mau_bitmaps"), any(Object[].class))).thenAnswer(invocation -> {
+            RoaringBitmap written = ActiveUserBitmaps.deserialize(invocation.getArgument(1));
+            updates.add(written);
+            storedRow.set(written);
+            return 1;
+        });
+
+        bitmaps = new ActiveUserBitmaps(jdbcTemplate, mock(PlatformTransactionManager.class), new SimpleMeterRegistry(),
+                CLOCK);
+    }
+
+    @Test
+    void serializedBitmap_roundTrips() {
+        RoaringBitmap users = RoaringBitmap.bitmapOf(1, 5, 70_000, 1_000_000);
+        users.add(100L, 5000L);
+
+        assertThat(ActiveUserBitmaps.deserialize(ActiveUserBitmaps.serialize(users))).isEqualTo(users);
+    }
+
+    @Test
+    void flush_mergesNewUsersIntoStoredBitmap() {
+        bitmaps.addAfterCommit(List.of(activeUser(2), activeUser(3)));
+
+        assertThat(bitmaps.flush()).isEqualTo(1);
+        assertThat(bitmaps.isBackfilled()).isTrue();
+        assertThat(updates).containsExactly(RoaringBitmap.bitmapOf(1, 2, 3));
+    }
+
+    @Test
+    void flush_skipsUsersAlreadyStored() {
+        bitmaps.addAfterCommit(List.of(activeUser(3)));
+        bitmaps.flush();
+
+        // Users 1-3 are known to be stored now, so repeat logins are not merged again
+        bitmaps.addAfterCommit(List.of(activeUser(1), activeUser(3)));
+
+        assertThat(bitmaps.flush()).isZero();
+        assertThat(updates).hasSize(1);
+    }
+
+    @Test
+    void storedUserUnchanged_isNotRewritten() {
+        bitmaps.addAfterCommit(List.of(activeUser(1)));
+
+        // Merged, but the stored row already had the user
+        assertThat(bitmaps.flush()).isEqualTo(1);
+        assertThat(updates).isEmpty();
+    }
+
+    @Test
+    void denseIds_areResolvedOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            bitmaps.addAfterCommit(List.of(activeUser(3)));
+            verify(jdbcTemplate, never()).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(bitmaps.flush()).isEqualTo(1);
+        assertThat(updates).containsExactly(RoaringBitmap.bitmapOf(1, 2, 3));
+    }
+
+    @Test
+    void failedDenseIdLookup_isNotThrown() {
+        doThrow(new DataAccessResourceFailureException("down"))
+                .when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        bitmaps.addAfterCommit(List.of(activeUser(3)));
+
+        assertThat(bitmaps.flush()).isZero();
+    }
+
+    @Test
+    void closedMonth_isReconciledWithActiveUsersOnce() {
+        // User 3's activity row committed, but its pending entry died with the previous process
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (int denseId : new int[]{1, 3}) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getObject("relying_party_id", UUID.class)).thenReturn(RP);
+                when(rs.getInt("dense_id")).thenReturn(denseId);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(contains("WHERE m.month = ?"), any(RowCallbackHandler.class), any(Object[].class));
+
+        assertThat(bitmaps.flush()).isZero();
+        assertThat(updates).containsExactly(RoaringBitmap.bitmapOf(1, 2, 3));
+        verify(jdbcTemplate).query(contains("WHERE m.month = ?"), any(RowCallbackHandler.class),
+                eq(Date.valueOf(MONTH.minusMonths(1))));
+
+        bitmaps.flush();
+        verify(jdbcTemplate, times(1)).query(contains("WHERE m.month = ?"), any(RowCallbackHandler.class),
+                any(Object[].class));
+    }
+
+    @Test
+    void addsRacingWithPruning_areNeverLost() throws Exception {
+        LocalDate lastMonth = MONTH.minusMonths(1);
+        storedRow.set(new RoaringBitmap());
+        int threads = 4;
+        int usersPerThread = 2_000;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean done = new AtomicBoolean();
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = 1 + t * usersPerThread;
+                writers.add(pool.submit(() -> {
+                    start.await();
+                    for (int denseId = first; denseId < first + usersPerThread; denseId++) {
+                        bitmaps.addAfterCommit(List.of(
+                                new UsageEventWriter.ActiveUserKey(RP, new UUID(0, denseId), lastMonth)));
+                    }
+                    return null;
+                }));
+            }
+            // Every flush prunes last month's bitmap as soon as nothing is pending
+            Thread flusher = new Thread(() -> {
+                while (!done.get()) {
+                    bitmaps.flush();
+                }
+            });
+            flusher.start();
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+            done.set(true);
+            flusher.join();
+        } finally {
+            pool.shutdownNow();
+        }
+        bitmaps.flush();
+
+        RoaringBitmap all = new RoaringBitmap();
+        all.add(1L, 1L + threads * usersPerThread);
+        assertThat(storedRow.get()).isEqualTo(all);
+    }
+
+    private UsageEventWriter.ActiveUserKey activeUser(int denseId) {
+        return new UsageEventWriter.ActiveUserKey(RP, new UUID(0, denseId), MONTH);
+    }
+}
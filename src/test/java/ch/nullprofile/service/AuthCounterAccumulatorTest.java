@@ -0,0 +1,142 @@
+package ch.nullprofile.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuthCounterAccumulatorTest {
+
+    private static final UUID RP = UUID.randomUUID();
+    private static final LocalDate MONTH = LocalDate.of(2026, 1, 1);
+
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicLong flushedTotal;
+    private List<Integer> rowsPerFlush;
+    private AuthCounterAccumulator accumulator;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        flushedTotal = new AtomicLong();
+        rowsPerFlush = new ArrayList<>();
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<Object[]> rows = invocation.getArgument(1);
+            rowsPerFlush.add(rows.size());
+            rows.forEach(row -> flushedTotal.addAndGet((Long) row[2]));
+            return new int[rows.size()];
+        });
+        Clock clock = Clock.fixed(Instant.parse("2026-01-15T12:00:00Z"), ZoneOffset.UTC);
+        meterRegistry = new SimpleMeterRegistry();
+        accumulator = new AuthCounterAccumulator(jdbcTemplate, meterRegistry, clock);
+    }
+
+    @Test
+    void manyLogins_flushAsOneDeltaRowPerRp() {
+        UUID otherRp = UUID.randomUUID();
+        for (int i = 0; i < 1000; i++) {
+            accumulator.increment(RP, MONTH);
+        }
+        accumulator.increment(otherRp, MONTH);
+
+        assertThat(accumulator.flush()).isEqualTo(2);
+        assertThat(rowsPerFlush).containsExactly(2);
+        assertThat(flushedTotal.get()).isEqualTo(1001);
+        assertThat(accumulator.flush()).isZero();
+    }
+
+    @Test
+    void incrementsRacingWithFlushes_areNeverLost() throws Exception {
+        int threads = 8;
+        int incrementsPerThread = 50_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean done = new AtomicBoolean();
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                writers.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < incrementsPerThread; i++) {
+                        accumulator.increment(RP, MONTH);
+                    }
+                    return null;
+                }));
+            }
+            Thread flusher = new Thread(() -> {
+                while (!done.get()) {
+                    accumulator.flush();
+                }
+            });
+            flusher.start();
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+            done.set(true);
+            flusher.join();
+        } finally {
+            pool.shutdownNow();
+        }
+        accumulator.flush();
+
+        assertThat(flushedTotal.get()).isEqualTo((long) threads * incrementsPerThread);
+        assertThat(accumulator.pending(RP, MONTH)).isZero();
+    }
+
+    @Test
+    void failedFlush_carriesDeltaOver() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new IllegalStateException("database unavailable"))
+                .thenAnswer(invocation -> {
+                    List<Object[]> rows = invocation.getArgument(1);
+                    rows.forEach(row -> flushedTotal.addAndGet((Long) row[2]));
+                    return new int[rows.size()];
+                });
+        for (int i = 0; i < 10; i++) {
+            accumulator.increment(RP, MONTH);
+        }
+
+        assertThat(accumulator.flush()).isZero();
+        assertThat(accumulator.pending(RP, MONTH)).isEqualTo(10);
+
+        accumulator.increment(RP, MONTH);
+        assertThat(accumulator.flush()).isEqualTo(1);
+        assertThat(flushedTotal.get()).isEqualTo(11);
+    }
+
+    @Test
+    void idleCountersOfPastMonths_arePruned() {
+        accumulator.increment(RP, MONTH.minusMonths(1));
+        accumulator.increment(RP, MONTH);
+
+        accumulator.flush();
+        accumulator.flush();
+
+        assertThat(flushedTotal.get()).isEqualTo(2);
+        // Last month's counter is gone once drained; the current month's stays for reuse
+        assertThat(meterRegistry.get("usage.metering.counters.active").gauge().value()).isEqualTo(1);
+    }
+}
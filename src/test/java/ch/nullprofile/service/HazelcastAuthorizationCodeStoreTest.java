@@ -0,0 +1,141 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.dto.AuthCodeEntry;
+import ch.nullprofile.dto.AuthCodeKey;
+import ch.nullprofile.dto.OidcTransaction;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HazelcastAuthorizationCodeStoreTest {
+
+    private static final int REDEEMERS_PER_MEMBER = 16;
+
+    private static HazelcastInstance memberA;
+    private static HazelcastInstance memberB;
+    private static HazelcastAuthorizationCodeStore storeA;
+    private static HazelcastAuthorizationCodeStore storeB;
+
+    @BeforeAll
+    static void startCluster() {
+        String clusterName = "auth-code-store-test-" + UUID.randomUUID();
+        memberA = Hazelcast.newHazelcastInstance(memberConfig(clusterName));
+        memberB = Hazelcast.newHazelcastInstance(memberConfig(clusterName));
+        storeA = new HazelcastAuthorizationCodeStore(memberA);
+        storeB = new HazelcastAuthorizationCodeStore(memberB);
+    }
+
+    @AfterAll
+    static void stopCluster() {
+        memberB.shutdown();
+        memberA.shutdown();
+    }
+
+    private static Config memberConfig(String clusterName) {
+        Config config = new Config();
+        config.setClusterName(clusterName);
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        config.getNetworkConfig().setPort(5801).setPortAutoIncrement(true);
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getAutoDetectionConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1:5801").addMember("127.0.0.1:5802");
+        return config;
+    }
+
+    private static AuthCodeEntry entry() {
+        OidcTransaction txn = OidcTransaction.createNew(
+                "rp-test", "https://rp.example.com/callback", "openid", "state", "nonce",
+                "challenge", "S256", false
+        ).withAuthenticatedUser(UUID.randomUUID());
+        return new AuthCodeEntry(txn, Instant.now().plusSeconds(300));
+    }
+
+    @Test
+    void clusterHasTwoMembers() {
+        assertThat(memberA.getCluster().getMembers()).hasSize(2);
+    }
+
+    @Test
+    void codeIssuedOnOneMember_isRedeemableOnAnother() {
+        AuthCodeEntry entry = entry();
+        storeA.save(AuthCodeKey.of("cross-node-code"), entry, Duration.ofSeconds(300));
+
+        Optional<AuthCodeEntry> consumed = storeB.consume(AuthCodeKey.of("cross-node-code"));
+
+        assertThat(consumed).isPresent();
+        assertThat(consumed.get().transaction().txnId()).isEqualTo(entry.transaction().txnId());
+        assertThat(storeA.consume(AuthCodeKey.of("cross-node-code"))).isEmpty();
+    }
+
+    @Test
+    void concurrentRedemptionAcrossMembers_consumesExactlyOnce() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            AuthCodeKey code = AuthCodeKey.of("race-code-" + round);
+            storeA.save(code, entry(), Duration.ofSeconds(300));
+
+            ExecutorService pool = Executors.newFixedThreadPool(REDEEMERS_PER_MEMBER * 2);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < REDEEMERS_PER_MEMBER * 2; i++) {
+                HazelcastAuthorizationCodeStore store = (i % 2 == 0) ? storeA : storeB;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return store.consume(code).isPresent();
+                }));
+            }
+            start.countDown();
+
+            int successes = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(10, TimeUnit.SECONDS)) {
+                    successes++;
+                }
+            }
+            pool.shutdown();
+
+            assertThat(successes).as("successful redemptions of %s", code).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void size_countsTheCodesOwnedByThisMember() {
+        for (int i = 0; i < 10; i++) {
+            storeA.save(AuthCodeKey.of("size-code-" + i), entry(), Duration.ofSeconds(300));
+        }
+
+        assertThat(storeA.size() + storeB.size()).isEqualTo(10);
+
+        for (int i = 0; i < 10; i++) {
+            storeB.consume(AuthCodeKey.of("size-code-" + i));
+        }
+    }
+
+    @Test
+    void entryIsEvictedAfterTtl() throws Exception {
+        storeA.save(AuthCodeKey.of("short-lived-code"), entry(), Duration.ofSeconds(1));
+
+        Thread.sleep(2500);
+
+        assertThat(storeB.consume(AuthCodeKey.of("short-lived-code"))).isEmpty();
+    }
+}
@@ -1,6 +1,11 @@
 package ch.nullprofile.service;
 
 import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.Ed25519Verifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import org.junit.jupiter.api.BeforeEach;
@@ -28,11 +33,10 @@ class JwtServiceTest {
 
     @BeforeEach
     void setUp() throws Exception {
-        jwtService = new JwtService();
+        jwtService = new JwtService(SigningKeyService.ephemeral());
         ReflectionTestUtils.setField(jwtService, "issuer", ISSUER);
         ReflectionTestUtils.setField(jwtService, "idTokenTtlSeconds", ID_TOKEN_TTL);
         ReflectionTestUtils.setField(jwtService, "accessTokenTtlSeconds", ACCESS_TOKEN_TTL);
-        jwtService.init(); // trigger @PostConstruct RSA key generation
     }
 
     // ── Access token structure ──────────────────────────────────────────────
@@ -196,4 +200,107 @@ class JwtServiceTest {
         SignedJWT atJwt = SignedJWT.parse(jwtService.generateAccessToken(SUB, CLIENT_ID));
         assertThat(idJwt.getHeader().getKeyID()).isEqualTo(atJwt.getHeader().getKeyID());
     }
+
+    // ── Per-RP signing algorithms ───────────────────────────────────────────
+
+    @Test
+    void es256AndEdDsaTokens_verifyAgainstPublishedKeys() throws Exception {
+        for (JWSAlgorithm alg : List.of(JWSAlgorithm.ES256, JWSAlgorithm.EdDSA)) {
+            SignedJWT idJwt = SignedJWT.parse(jwtService.generateIdToken(SUB, CLIENT_ID, "n", alg));
+            SignedJWT atJwt = SignedJWT.parse(jwtService.generateAccessToken(SUB, CLIENT_ID, alg));
+
+            for (SignedJWT jwt : List.of(idJwt, atJwt)) {
+                assertThat(jwt.getHeader().getAlgorithm()).isEqualTo(alg);
+                JWK published = jwtService.getPublicJwks().stream()
+                        .filter(jwk -> jwk.getKeyID().equals(jwt.getHeader().getKeyID()))
+                        .findFirst().orElseThrow();
+                assertThat(jwt.verify(verifier(published))).as(alg.getName()).isTrue();
+            }
+        }
+    }
+
+    // ── Token bundle for /token ─────────────────────────────────────────────
+
+    @Test
+    void tokenBundle_sharesIssueTimeAndKey_whenSignedInParallel() throws Exception {
+        TokenSigningExecutor executor = new TokenSigningExecutor(2);
+        try {
+            JwtService parallel = new JwtService(SigningKeyService.ephemeral(), executor);
+            ReflectionTestUtils.setField(parallel, "issuer", ISSUER);
+            ReflectionTestUtils.setField(parallel, "idTokenTtlSeconds", ID_TOKEN_TTL);
+            ReflectionTestUtils.setField(parallel, "accessTokenTtlSeconds", ACCESS_TOKEN_TTL);
+
+            JwtService.TokenBundle tokens = parallel.generateTokens(SUB, CLIENT_ID, "n", JWSAlgorithm.ES256);
+
+            SignedJWT idJwt = SignedJWT.parse(tokens.idToken());
+            SignedJWT atJwt = SignedJWT.parse(tokens.accessToken());
+            assertThat(idJwt.getJWTClaimsSet().getIssueTime()).isEqualTo(atJwt.getJWTClaimsSet().getIssueTime());
+            assertThat(idJwt.getJWTClaimsSet().getStringClaim("nonce")).isEqualTo("n");
+            assertThat(atJwt.getHeader().getType().getType()).isEqualTo("at+jwt");
+            assertThat(tokens.expiresIn()).isEqualTo(ACCESS_TOKEN_TTL);
+
+            JWK published = parallel.getPublicJwks().stream()
+                    .filter(jwk -> jwk.getKeyID().equals(idJwt.getHeader().getKeyID()))
+                    .findFirst().orElseThrow();
+            assertThat(atJwt.getHeader().getKeyID()).isEqualTo(published.getKeyID());
+            assertThat(idJwt.verify(verifier(published))).isTrue();
+            assertThat(atJwt.verify(verifier(published))).isTrue();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void tokenBundle_withoutExecutor_signsInline() throws Exception {
+        JwtService.TokenBundle tokens = jwtService.generateTokens(SUB, CLIENT_ID, null, JWSAlgorithm.RS256);
+
+        assertThat(SignedJWT.parse(tokens.idToken()).getJWTClaimsSet().getClaim("nonce")).isNull();
+        assertThat(SignedJWT.parse(tokens.accessToken()).getJWTClaimsSet().getStringClaim("client_id"))
+                .isEqualTo(CLIENT_ID);
+    }
+
+    // ── Access token verification (introspection / revocation) ─────────────
+
+    @Test
+    void verifyAccessToken_acceptsOwnAccessTokens() {
+        for (JWSAlgorithm alg : List.of(JWSAlgorithm.RS256, JWSAlgorithm.ES256, JWSAlgorithm.EdDSA)) {
+            String token = jwtService.generateAccessToken(SUB, CLIENT_ID, alg);
+
+            assertThat(jwtService.verifyAccessToken(token)).as(alg.getName())
+                    .hasValueSatisfying(claims -> assertThat(claims.getSubject()).isEqualTo(SUB));
+        }
+    }
+
+    @Test
+    void verifyAccessToken_rejectsIdTokensAndTamperedTokens() {
+        String idToken = jwtService.generateIdToken(SUB, CLIENT_ID, "n");
+        String accessToken = jwtService.generateAccessToken(SUB, CLIENT_ID);
+        String[] parts = accessToken.split("\\.");
+        String otherPayload = jwtService.generateAccessToken("someone-else", CLIENT_ID).split("\\.")[1];
+
+        assertThat(jwtService.verifyAccessToken(idToken)).isEmpty();
+        assertThat(jwtService.verifyAccessToken(parts[0] + "." + otherPayload + "." + parts[2])).isEmpty();
+        assertThat(jwtService.verifyAccessToken("not-a-jwt")).isEmpty();
+    }
+
+    @Test
+    void verifyAccessToken_rejectsExpiredTokens() {
+        ReflectionTestUtils.setField(jwtService, "accessTokenTtlSeconds", -1);
+
+        assertThat(jwtService.verifyAccessToken(jwtService.generateAccessToken(SUB, CLIENT_ID))).isEmpty();
+    }
+
+    @Test
+    void signingAlgorithms_startWithRs256() {
+        assertThat(jwtService.getSigningAlgorithms())
+                .containsExactly(JWSAlgorithm.RS256, JWSAlgorithm.ES256, JWSAlgorithm.EdDSA);
+    }
+
+    private static JWSVerifier verifier(JWK jwk) throws Exception {
+        return switch (jwk.getKeyType().getValue()) {
+            case "RSA" -> new RSASSAVerifier(jwk.toRSAKey());
+            case "EC" -> new ECDSAVerifier(jwk.toECKey());
+            default -> new Ed25519Verifier(jwk.toOctetKeyPair());
+        };
+    }
 }
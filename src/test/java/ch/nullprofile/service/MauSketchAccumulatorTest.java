@@ -0,0 +1,211 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.config.UsageMeteringProperties;
+import ch.nullprofile.util.HyperLogLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Date;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MauSketchAccumulatorTest {
+
+    private static final UUID RP = UUID.randomUUID();
+    private static final LocalDate MONTH = LocalDate.of(2026, 1, 1);
+
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private UsageMeteringProperties properties;
+    // Stand-in for mau_sketches: (rpId, month) -> registers
+    private Map<List<Object>, byte[]> stored;
+    private AtomicInteger lockingReads;
+    private AtomicInteger failingInserts;
+    private MauSketchAccumulator accumulator;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        stored = new ConcurrentHashMap<>();
+        lockingReads = new AtomicInteger();
+        failingInserts = new AtomicInteger();
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            if (sql.contains("INSERT INTO mau_sketches")) {
+                if (failingInserts.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                    throw new IllegalStateException("database unavailable");
+                }
+                List<Object> key = List.of(invocation.getArgument(1), invocation.getArgument(2));
+                return stored.putIfAbsent(key, invocation.getArgument(3)) == null ? 1 : 0;
+            }
+            // UPDATE mau_sketches SET registers = ?, updated_at = ? WHERE relying_party_id = ? AND month = ?
+            stored.put(List.of(invocation.getArgument(3), invocation.getArgument(4)), invocation.getArgument(1));
+            return 1;
+        });
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            assertThat((String) invocation.getArgument(0)).contains("FOR UPDATE");
+            lockingReads.incrementAndGet();
+            return List.of(stored.get(List.of(invocation.getArgument(2), invocation.getArgument(3))));
+        });
+
+        properties = new UsageMeteringProperties();
+        properties.setSketchRelativeError(0.05);
+        meterRegistry = new SimpleMeterRegistry();
+        Clock clock = Clock.fixed(Instant.parse("2026-01-15T12:00:00Z"), ZoneOffset.UTC);
+        accumulator = new MauSketchAccumulator(jdbcTemplate, mock(PlatformTransactionManager.class),
+                properties, meterRegistry, clock);
+    }
+
+    @Test
+    void firstFlush_insertsTheSketch_andCleanSketchesAreNotRewritten() {
+        List<UUID> users = users(100);
+        users.forEach(user -> accumulator.add(RP, MONTH, user));
+
+        assertThat(accumulator.flush()).isEqualTo(1);
+        assertThat(storedSketch(RP, MONTH)).isEqualTo(sketchOf(users));
+        assertThat(lockingReads.get()).isZero();
+
+        assertThat(accumulator.flush()).isZero();
+    }
+
+    @Test
+    void existingRow_isReadForUpdateAndUnioned() {
+        List<UUID> otherReplica = users(50);
+        stored.put(List.of(RP, Date.valueOf(MONTH)), sketchOf(otherReplica).toBytes());
+        List<UUID> local = users(80);
+        local.forEach(user -> accumulator.add(RP, MONTH, user));
+
+        assertThat(accumulator.flush()).isEqualTo(1);
+
+        List<UUID> all = new ArrayList<>(otherReplica);
+        all.addAll(local);
+        assertThat(lockingReads.get()).isEqualTo(1);
+        assertThat(storedSketch(RP, MONTH)).isEqualTo(sketchOf(all));
+    }
+
+    @Test
+    void failedMerge_staysDirtyAndIsRetried() {
+        failingInserts.set(1);
+        List<UUID> users = users(20);
+        users.forEach(user -> accumulator.add(RP, MONTH, user));
+
+        assertThat(accumulator.flush()).isZero();
+        assertThat(stored).isEmpty();
+        assertThat(meterRegistry.get("usage.metering.sketches.merge.failures").counter().count()).isEqualTo(1);
+
+        // No new logins needed: the failed sketch is still dirty
+        assertThat(accumulator.flush()).isEqualTo(1);
+        assertThat(storedSketch(RP, MONTH)).isEqualTo(sketchOf(users));
+    }
+
+    @Test
+    void idleSketchesOfPastMonths_arePrunedOnceFlushed() {
+        LocalDate lastMonth = MONTH.minusMonths(1);
+        failingInserts.set(1);
+        accumulator.add(RP, lastMonth, UUID.randomUUID());
+        accumulator.add(RP, MONTH, UUID.randomUUID());
+
+        // Whichever merge failed is still dirty, so both sketches are kept
+        accumulator.flush();
+        assertThat(activeSketches()).isEqualTo(2);
+
+        accumulator.flush();
+        // Last month's sketch is gone once merged; the current month's stays for reuse
+        assertThat(activeSketches()).isEqualTo(1);
+        assertThat(stored).hasSize(2);
+    }
+
+    @Test
+    void addsRacingWithPruning_areNeverLost() throws Exception {
+        LocalDate lastMonth = MONTH.minusMonths(1);
+        int threads = 4;
+        int usersPerThread = 5_000;
+        List<List<UUID>> usersByThread = new ArrayList<>();
+        List<UUID> all = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<UUID> users = users(usersPerThread);
+            usersByThread.add(users);
+            all.addAll(users);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean done = new AtomicBoolean();
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (List<UUID> users : usersByThread) {
+                writers.add(pool.submit(() -> {
+                    start.await();
+                    for (UUID user : users) {
+                        accumulator.add(RP, lastMonth, user);
+                    }
+                    return null;
+                }));
+            }
+            // Every flush prunes last month's sketch as soon as it is clean
+            Thread flusher = new Thread(() -> {
+                while (!done.get()) {
+                    accumulator.flush();
+                }
+            });
+            flusher.start();
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+            done.set(true);
+            flusher.join();
+        } finally {
+            pool.shutdownNow();
+        }
+        accumulator.flush();
+
+        assertThat(storedSketch(RP, lastMonth)).isEqualTo(sketchOf(all));
+    }
+
+    private HyperLogLog storedSketch(UUID relyingPartyId, LocalDate month) {
+        return HyperLogLog.fromBytes(stored.get(List.of(relyingPartyId, Date.valueOf(month))));
+    }
+
+    private HyperLogLog sketchOf(List<UUID> users) {
+        HyperLogLog hll = new HyperLogLog(HyperLogLog.precisionFor(properties.getSketchRelativeError()));
+        users.forEach(hll::add);
+        return hll;
+    }
+
+    private double activeSketches() {
+        return meterRegistry.get("usage.metering.sketches.active").gauge().value();
+    }
+
+    private static List<UUID> users(int count) {
+        List<UUID> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(UUID.randomUUID());
+        }
+        return users;
+    }
+}
@@ -0,0 +1,87 @@
+package ch.nullprofile.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MeteringPartitionManagerTest {
+
+    @Test
+    void partitionName_roundTripsToMonth() {
+        LocalDate month = LocalDate.of(2026, 3, 1);
+        String name = MeteringPartitionManager.partitionName("monthly_active_users", month);
+
+        assertThat(name).isEqualTo("monthly_active_users_p202603");
+        assertThat(MeteringPartitionManager.monthOf("monthly_active_users", name)).isEqualTo(month);
+    }
+
+    @Test
+    void monthOf_ignoresForeignPartitions() {
+        assertThat(MeteringPartitionManager.monthOf("monthly_active_users", "monthly_active_users_default")).isNull();
+        assertThat(MeteringPartitionManager.monthOf("monthly_active_users", "rp_monthly_counters_p202603")).isNull();
+        assertThat(MeteringPartitionManager.monthOf("monthly_active_users", "monthly_active_users_p202613")).isNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void maintain_isNoOpOutsidePostgres() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn("H2");
+
+        new MeteringPartitionManager(jdbcTemplate, mock(PlatformTransactionManager.class), 3, 0, 24).maintain();
+
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rowsInTheDefaultPartition_areMovedIntoTheirNewPartition() {
+        LocalDate currentMonth = LocalDate.now(ZoneId.of("Europe/Zurich")).withDayOfMonth(1);
+        LocalDate uncovered = currentMonth.minusMonths(1);
+        String table = "monthly_active_users";
+        String partition = MeteringPartitionManager.partitionName(table, uncovered);
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn("PostgreSQL");
+        when(jdbcTemplate.queryForObject(contains("pg_partitioned_table"), eq(Boolean.class), eq(table))).thenReturn(true);
+        // Every upcoming partition exists; last month's rows went to the default partition
+        List<String> existing = new ArrayList<>(List.of(table + "_default"));
+        for (int i = 0; i <= 3; i++) {
+            existing.add(MeteringPartitionManager.partitionName(table, currentMonth.plusMonths(i)));
+        }
+        when(jdbcTemplate.queryForList(contains("pg_inherits"), eq(String.class), eq(table))).thenReturn(existing);
+        when(jdbcTemplate.queryForList("SELECT DISTINCT month FROM monthly_active_users_default", Date.class))
+                .thenReturn(List.of(Date.valueOf(uncovered)));
+        when(jdbcTemplate.queryForObject(contains("to_regclass"), eq(Boolean.class), eq(partition))).thenReturn(false);
+        when(jdbcTemplate.update(contains("DELETE FROM monthly_active_users_default"), any(Object[].class))).thenReturn(2);
+
+        new MeteringPartitionManager(jdbcTemplate, mock(PlatformTransactionManager.class), 3, 0, 24).maintain();
+
+        InOrder inOrder = inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).execute("LOCK TABLE monthly_active_users_default IN EXCLUSIVE MODE");
+        inOrder.verify(jdbcTemplate).execute(startsWith("CREATE TABLE " + partition + " (LIKE " + table));
+        inOrder.verify(jdbcTemplate).update(contains("INSERT INTO " + partition), any(Object[].class));
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE %s ATTACH PARTITION %s FOR VALUES FROM ('%s') TO ('%s')"
+                .formatted(table, partition, uncovered, currentMonth));
+        verify(jdbcTemplate, never()).execute(contains("PARTITION OF"));
+    }
+}
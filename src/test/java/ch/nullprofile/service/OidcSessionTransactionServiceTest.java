@@ -0,0 +1,101 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.config.OidcProperties;
+import ch.nullprofile.dto.AuthCodeKey;
+import ch.nullprofile.dto.OidcTransaction;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OidcSessionTransactionServiceTest {
+
+    private static final int ROUNDS = 200;
+    private static final int CONCURRENT_REDEEMERS = 32;
+
+    private InMemoryAuthorizationCodeStore store;
+    private OidcSessionTransactionService service;
+
+    @BeforeEach
+    void setUp() {
+        OidcProperties properties = new OidcProperties();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        store = new InMemoryAuthorizationCodeStore(properties, meterRegistry);
+        service = new OidcSessionTransactionService(properties, store, meterRegistry);
+    }
+
+    private String issueCode() {
+        MockHttpSession session = new MockHttpSession();
+        service.createTransaction(session, "rp-test", "https://rp.example.com/callback",
+                "openid", "state", "nonce", "challenge", "S256", false);
+        service.authenticateTransaction(session, UUID.randomUUID());
+        return service.generateAndStoreAuthCode(session);
+    }
+
+    @Test
+    void validCode_isRedeemedOnce() {
+        String code = issueCode();
+
+        Optional<OidcTransaction> first = service.validateAndConsumeAuthCode(code);
+        Optional<OidcTransaction> replay = service.validateAndConsumeAuthCode(code);
+
+        assertThat(first).isPresent();
+        assertThat(replay).isEmpty();
+    }
+
+    @Test
+    void redeemedCode_leavesTombstoneForReplayDetection() {
+        String code = issueCode();
+        String txnId = service.validateAndConsumeAuthCode(code).orElseThrow().txnId();
+
+        assertThat(store.findRedeemed(AuthCodeKey.of(code))).contains(txnId);
+        assertThat(store.findRedeemed(AuthCodeKey.of("never-issued"))).isEmpty();
+    }
+
+    @Test
+    void unknownCode_isRejected() {
+        assertThat(service.validateAndConsumeAuthCode("never-issued")).isEmpty();
+    }
+
+    @Test
+    void concurrentRedemption_isExactlyOnce() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(CONCURRENT_REDEEMERS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                String code = issueCode();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int i = 0; i < CONCURRENT_REDEEMERS; i++) {
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        return service.validateAndConsumeAuthCode(code).isPresent();
+                    }));
+                }
+                start.countDown();
+
+                int successes = 0;
+                for (Future<Boolean> result : results) {
+                    if (result.get(10, TimeUnit.SECONDS)) {
+                        successes++;
+                    }
+                }
+                assertThat(successes).as("successful redemptions in round %d", round).isEqualTo(1);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(store.size()).isZero();
+    }
+}
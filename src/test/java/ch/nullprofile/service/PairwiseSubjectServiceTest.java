@@ -0,0 +1,42 @@
+package ch.nullprofile.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PairwiseSubjectServiceTest {
+
+    private static final String SALT = "test-salt-for-testing-only";
+
+    @Test
+    void cachedAndUncachedSubs_areIdentical() {
+        PairwiseSubjectService uncached = new PairwiseSubjectService(SALT, false, 0, 0, new SimpleMeterRegistry());
+        PairwiseSubjectService cached = new PairwiseSubjectService(SALT, true, 100, 60, new SimpleMeterRegistry());
+        UUID userId = UUID.randomUUID();
+
+        String expected = uncached.generatePairwiseSub(userId, "rp.example.com");
+
+        assertThat(cached.generatePairwiseSub(userId, "rp.example.com")).isEqualTo(expected);
+        assertThat(cached.generatePairwiseSub(userId, "rp.example.com")).isEqualTo(expected);
+        assertThat(cached.generatePairwiseSub(userId, "other.example.com")).isNotEqualTo(expected);
+    }
+
+    @Test
+    void repeatLogin_isServedFromCache() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PairwiseSubjectService service = new PairwiseSubjectService(SALT, true, 100, 60, meterRegistry);
+        UUID userId = UUID.randomUUID();
+
+        service.generatePairwiseSub(userId, "rp.example.com");
+        service.generatePairwiseSub(userId, "rp.example.com");
+        service.generatePairwiseSub(userId, "rp.example.com");
+
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "pairwise-subs").tag("result", "miss")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "pairwise-subs").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,138 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.dto.RelyingPartySnapshot;
+import ch.nullprofile.entity.RedirectUri;
+import ch.nullprofile.entity.RelyingParty;
+import ch.nullprofile.repository.RedirectUriRepository;
+import ch.nullprofile.repository.RelyingPartyRepository;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RelyingPartyRegistryTest {
+
+    private static final String RP_ID = "rp_test";
+
+    private static HazelcastInstance memberA;
+    private static HazelcastInstance memberB;
+
+    private RelyingPartyRepository relyingPartyRepository;
+    private RedirectUriRepository redirectUriRepository;
+    private RelyingPartyRegistry registryA;
+    private RelyingPartyRegistry registryB;
+
+    @BeforeAll
+    static void startCluster() {
+        String clusterName = "rp-registry-test-" + UUID.randomUUID();
+        memberA = Hazelcast.newHazelcastInstance(memberConfig(clusterName));
+        memberB = Hazelcast.newHazelcastInstance(memberConfig(clusterName));
+    }
+
+    @AfterAll
+    static void stopCluster() {
+        memberB.shutdown();
+        memberA.shutdown();
+    }
+
+    private static Config memberConfig(String clusterName) {
+        Config config = new Config();
+        config.setClusterName(clusterName);
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        config.getNetworkConfig().setPort(5811).setPortAutoIncrement(true);
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getAutoDetectionConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1:5811").addMember("127.0.0.1:5812");
+        return config;
+    }
+
+    @BeforeEach
+    void setUp() {
+        relyingPartyRepository = mock(RelyingPartyRepository.class);
+        redirectUriRepository = mock(RedirectUriRepository.class);
+        registryA = new RelyingPartyRegistry(relyingPartyRepository, redirectUriRepository,
+                memberA, new SimpleMeterRegistry(), 100, 3600);
+        registryB = new RelyingPartyRegistry(relyingPartyRepository, redirectUriRepository,
+                memberB, new SimpleMeterRegistry(), 100, 3600);
+
+        RelyingParty rp = new RelyingParty();
+        rp.setId(UUID.randomUUID());
+        rp.setRpId(RP_ID);
+        rp.setRpName("Test RP");
+        rp.setSectorId("sector");
+        RedirectUri redirectUri = new RedirectUri();
+        redirectUri.setRelyingPartyId(rp.getId());
+        redirectUri.setUri("https://rp.example.com/callback");
+        when(relyingPartyRepository.findByRpId(RP_ID)).thenReturn(Optional.of(rp));
+        when(redirectUriRepository.findByRelyingPartyId(rp.getId())).thenReturn(List.of(redirectUri));
+        when(relyingPartyRepository.findByRpId("unknown")).thenReturn(Optional.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        registryA.shutdown();
+        registryB.shutdown();
+    }
+
+    @Test
+    void repeatedLookups_hitDatabaseOnce() {
+        for (int i = 0; i < 10; i++) {
+            RelyingPartySnapshot snapshot = registryA.find(RP_ID).orElseThrow();
+            assertThat(snapshot.isRedirectUriRegistered("https://rp.example.com/callback")).isTrue();
+            assertThat(snapshot.isRedirectUriRegistered("https://rp.example.com/other")).isFalse();
+        }
+
+        verify(relyingPartyRepository, times(1)).findByRpId(RP_ID);
+        verify(redirectUriRepository, times(1)).findByRelyingPartyId(any());
+    }
+
+    @Test
+    void unknownClient_isNotCached() {
+        assertThat(registryA.find("unknown")).isEmpty();
+        assertThat(registryA.find("unknown")).isEmpty();
+
+        verify(relyingPartyRepository, times(2)).findByRpId("unknown");
+    }
+
+    @Test
+    void invalidation_isBroadcastToOtherReplicas() throws InterruptedException {
+        assertThat(registryB.find(RP_ID).orElseThrow().rpName()).isEqualTo("Test RP");
+
+        RelyingParty renamed = new RelyingParty();
+        renamed.setId(UUID.randomUUID());
+        renamed.setRpId(RP_ID);
+        renamed.setRpName("Renamed RP");
+        renamed.setSectorId("sector");
+        when(relyingPartyRepository.findByRpId(RP_ID)).thenReturn(Optional.of(renamed));
+
+        registryA.invalidateAfterCommit(RP_ID);
+
+        // Topic delivery is asynchronous; replica B reloads once the message arrives
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline
+                && !"Renamed RP".equals(registryB.find(RP_ID).orElseThrow().rpName())) {
+            Thread.sleep(20);
+        }
+        assertThat(registryB.find(RP_ID).orElseThrow().rpName()).isEqualTo("Renamed RP");
+        assertThat(registryA.find(RP_ID).orElseThrow().rpName()).isEqualTo("Renamed RP");
+    }
+}
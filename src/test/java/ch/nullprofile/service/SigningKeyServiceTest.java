@@ -0,0 +1,247 @@
+package ch.nullprofile.service;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWK;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SigningKeyServiceTest {
+
+    private static final String ENCRYPTION_KEY = Base64.getEncoder().encodeToString(new byte[32]);
+    private static final Duration ROTATION = Duration.ofDays(30);
+    private static final Duration PUBLISH_AHEAD = Duration.ofHours(24);
+    private static final Duration GRACE = Duration.ofHours(1);
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+    private final List<Object[]> rows = new ArrayList<>();
+    private final List<Object> events = new ArrayList<>();
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        // signing_keys as a list of insert arguments:
+        // kid, algorithm, public_jwk, private_jwk_encrypted, created_at, activates_at, retires_at, expires_at
+        when(jdbcTemplate.update(startsWith("INSERT INTO signing_keys"), any(Object[].class))).thenAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            rows.add(Arrays.copyOfRange(args, 1, args.length));
+            return 1;
+        });
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            RowMapper<?> mapper = invocation.getArgument(1);
+            Timestamp now = invocation.getArgument(2);
+            List<Object> result = new ArrayList<>();
+            for (Object[] row : rows) {
+                if (((Timestamp) row[7]).after(now)) {
+                    result.add(mapper.mapRow(resultSet(row), result.size()));
+                }
+            }
+            return result;
+        });
+    }
+
+    @Test
+    void firstStart_createsActiveKey() {
+        SigningKeyService service = service(ENCRYPTION_KEY);
+
+        assertThat(rows).hasSize(1);
+        assertThat(service.current().kid()).isEqualTo(rows.get(0)[0]);
+        assertThat(service.publicKeys()).extracting(JWK::getKeyID).containsExactly(service.current().kid());
+        assertThat(service.publicKeys().get(0).isPrivate()).isFalse();
+    }
+
+    @Test
+    void rotation_publishesSuccessorBeforeItSigns() {
+        SigningKeyService service = service(ENCRYPTION_KEY);
+        String first = service.current().kid();
+
+        clock.advance(ROTATION.minus(PUBLISH_AHEAD).plusMinutes(1));
+        service.refresh();
+
+        assertThat(rows).hasSize(2);
+        String second = (String) rows.get(1)[0];
+        assertThat(service.current().kid()).isEqualTo(first);
+        assertThat(service.publicKeys()).extracting(JWK::getKeyID).containsExactly(first, second);
+
+        // A refresh before activation does not create a third key
+        service.refresh();
+        assertThat(rows).hasSize(2);
+
+        clock.advance(PUBLISH_AHEAD);
+        service.refresh();
+        assertThat(service.current().kid()).isEqualTo(second);
+        // The old key stays published for verification until its expiry
+        assertThat(service.publicKeys()).extracting(JWK::getKeyID).containsExactly(first, second);
+
+        clock.advance(PUBLISH_AHEAD.plus(GRACE));
+        service.refresh();
+        assertThat(service.publicKeys()).extracting(JWK::getKeyID).containsExactly(second);
+
+        // One event each time the published set changed: successor added, old key expired
+        assertThat(events).containsExactly(
+                new SigningKeysChangedEvent(List.of(first, second)),
+                new SigningKeysChangedEvent(List.of(second)));
+    }
+
+    @Test
+    void replicas_shareTheStoredKey() {
+        SigningKeyService first = service(ENCRYPTION_KEY);
+        SigningKeyService second = service(ENCRYPTION_KEY);
+
+        assertThat(rows).hasSize(1);
+        assertThat(second.current().kid()).isEqualTo(first.current().kid());
+        assertThat(second.current().jwk()).isEqualTo(first.current().jwk());
+    }
+
+    @Test
+    void replicaWithAClockBehind_usesTheKeyJustCreated() {
+        SigningKeyService first = service(ENCRYPTION_KEY);
+        clock.advance(Duration.ofSeconds(-30));
+        SigningKeyService second = service(ENCRYPTION_KEY);
+
+        assertThat(rows).hasSize(1);
+        assertThat(second.current().kid()).isEqualTo(first.current().kid());
+    }
+
+    @Test
+    void rotation_usesTheTimeTheLockWasAcquiredAt() {
+        Instant lockedAt = clock.instant().plus(Duration.ofMinutes(5));
+        doAnswer(invocation -> {
+            clock.advance(Duration.ofMinutes(5));
+            return null;
+        }).when(jdbcTemplate).execute(startsWith("LOCK TABLE signing_keys"));
+
+        service(ENCRYPTION_KEY);
+
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0)[5]).isEqualTo(Timestamp.from(lockedAt));
+    }
+
+    @Test
+    void storedPrivateKey_isEncrypted() {
+        service(ENCRYPTION_KEY);
+        String stored = new String((byte[]) rows.get(0)[3]);
+
+        assertThat(stored).doesNotContain("\"d\"").doesNotContain((String) rows.get(0)[0]);
+
+        String otherKey = Base64.getEncoder().encodeToString("0123456789abcdef0123456789abcdef".getBytes());
+        assertThatThrownBy(() -> service(otherKey)).hasMessageContaining("Failed to decrypt signing key");
+    }
+
+    @Test
+    void eachAlgorithm_hasItsOwnKey() {
+        SigningKeyService service = service(ENCRYPTION_KEY, SigningKeyService.parseAlgorithms(List.of("ES256", "EdDSA")));
+
+        assertThat(rows).extracting(row -> row[1]).containsExactlyInAnyOrder("RS256", "ES256", "EdDSA");
+        assertThat(service.current(JWSAlgorithm.ES256).jwk().getKeyType().getValue()).isEqualTo("EC");
+        assertThat(service.current(JWSAlgorithm.EdDSA).jwk().getKeyType().getValue()).isEqualTo("OKP");
+        assertThat(service.publicKeys()).hasSize(3).noneMatch(JWK::isPrivate);
+
+        // Reloaded from the table by another replica
+        SigningKeyService replica = service(ENCRYPTION_KEY, SigningKeyService.parseAlgorithms(List.of("ES256", "EdDSA")));
+        assertThat(replica.current(JWSAlgorithm.EdDSA).kid()).isEqualTo(service.current(JWSAlgorithm.EdDSA).kid());
+    }
+
+    @Test
+    void disabledAlgorithm_fallsBackToRs256() {
+        SigningKeyService service = service(ENCRYPTION_KEY);
+
+        assertThat(service.isEnabled(JWSAlgorithm.ES256)).isFalse();
+        assertThat(service.current(JWSAlgorithm.ES256).algorithm()).isEqualTo(JWSAlgorithm.RS256);
+        assertThatThrownBy(() -> SigningKeyService.parseAlgorithms(List.of("HS256")))
+                .hasMessageContaining("Unsupported");
+    }
+
+    @Test
+    void withoutEncryptionKey_failsUnlessEphemeral() {
+        assertThatThrownBy(() -> service(""))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("oidc.signing-keys.ephemeral");
+        assertThat(rows).isEmpty();
+    }
+
+    @Test
+    void ephemeral_usesInMemoryKey() {
+        SigningKeyService service = new SigningKeyService(jdbcTemplate, mock(PlatformTransactionManager.class),
+                events::add, "", true, List.of(JWSAlgorithm.RS256), ROTATION, PUBLISH_AHEAD, GRACE, clock);
+        service.init();
+
+        assertThat(service.isPersistent()).isFalse();
+        assertThat(service.current()).isNotNull();
+        assertThat(rows).isEmpty();
+    }
+
+    private SigningKeyService service(String encryptionKey) {
+        return service(encryptionKey, List.of(JWSAlgorithm.RS256));
+    }
+
+    private SigningKeyService service(String encryptionKey, List<JWSAlgorithm> algorithms) {
+        SigningKeyService service = new SigningKeyService(jdbcTemplate, mock(PlatformTransactionManager.class),
+                events::add, encryptionKey, false, algorithms, ROTATION, PUBLISH_AHEAD, GRACE, clock);
+        service.init();
+        return service;
+    }
+
+    private static ResultSet resultSet(Object[] row) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString("kid")).thenReturn((String) row[0]);
+        when(rs.getString("algorithm")).thenReturn((String) row[1]);
+        when(rs.getBytes("private_jwk_encrypted")).thenReturn((byte[]) row[3]);
+        when(rs.getTimestamp("activates_at")).thenReturn((Timestamp) row[5]);
+        when(rs.getTimestamp("retires_at")).thenReturn((Timestamp) row[6]);
+        when(rs.getTimestamp("expires_at")).thenReturn((Timestamp) row[7]);
+        return rs;
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
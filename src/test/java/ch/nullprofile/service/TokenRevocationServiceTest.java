@@ -0,0 +1,171 @@
+package ch.nullprofile.service;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenRevocationServiceTest {
+
+    private static final long TTL_SECONDS = 1800;
+
+    private static HazelcastInstance memberA;
+    private static HazelcastInstance memberB;
+
+    @BeforeAll
+    static void startCluster() {
+        String clusterName = "token-revocation-test-" + UUID.randomUUID();
+        memberA = Hazelcast.newHazelcastInstance(memberConfig(clusterName));
+        memberB = Hazelcast.newHazelcastInstance(memberConfig(clusterName));
+    }
+
+    @AfterAll
+    static void stopCluster() {
+        memberB.shutdown();
+        memberA.shutdown();
+    }
+
+    private static Config memberConfig(String clusterName) {
+        Config config = new Config();
+        config.setClusterName(clusterName);
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        config.getNetworkConfig().setPort(5901).setPortAutoIncrement(true);
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getAutoDetectionConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1:5901").addMember("127.0.0.1:5902");
+        return config;
+    }
+
+    private static TokenRevocationService service(HazelcastInstance member, Clock clock) {
+        return new TokenRevocationService(member, new SimpleMeterRegistry(), TTL_SECONDS, 6, 10_000, 0.01, clock);
+    }
+
+    @Test
+    void revokedToken_isRevoked_otherTokensAreNot() {
+        MutableClock clock = new MutableClock(Instant.now());
+        TokenRevocationService service = service(memberA, clock);
+        long exp = clock.instant().getEpochSecond() + TTL_SECONDS;
+        try {
+            service.revoke("jti-revoked", exp);
+
+            assertThat(service.isRevoked("jti-revoked", exp)).isTrue();
+            assertThat(service.isRevoked("jti-active", exp)).isFalse();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void revocationOnOneMember_reachesTheOthersFilters() throws Exception {
+        MutableClock clock = new MutableClock(Instant.now());
+        TokenRevocationService serviceA = service(memberA, clock);
+        TokenRevocationService serviceB = service(memberB, clock);
+        long exp = clock.instant().getEpochSecond() + 600;
+        try {
+            serviceA.revoke("jti-cross-node", exp);
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (!serviceB.isRevoked("jti-cross-node", exp) && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(serviceB.isRevoked("jti-cross-node", exp)).isTrue();
+        } finally {
+            serviceA.shutdown();
+            serviceB.shutdown();
+        }
+    }
+
+    @Test
+    void newMember_loadsExistingRevocations() {
+        MutableClock clock = new MutableClock(Instant.now());
+        TokenRevocationService serviceA = service(memberA, clock);
+        long exp = clock.instant().getEpochSecond() + 600;
+        serviceA.revoke("jti-before-start", exp);
+
+        TokenRevocationService late = service(memberB, clock);
+        try {
+            assertThat(late.isRevoked("jti-before-start", exp)).isTrue();
+        } finally {
+            serviceA.shutdown();
+            late.shutdown();
+        }
+    }
+
+    @Test
+    void expiredToken_isNotStored() {
+        MutableClock clock = new MutableClock(Instant.now());
+        TokenRevocationService service = service(memberA, clock);
+        long exp = clock.instant().getEpochSecond() - 1;
+        try {
+            service.revoke("jti-expired", exp);
+
+            assertThat(service.isRevoked("jti-expired", exp)).isFalse();
+            assertThat(memberA.getMap(TokenRevocationService.MAP_NAME).containsKey("jti-expired")).isFalse();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void partitions_areDroppedOnceAllTheirTokensExpired() {
+        MutableClock clock = new MutableClock(Instant.now());
+        TokenRevocationService service = service(memberA, clock);
+        try {
+            long now = clock.instant().getEpochSecond();
+            service.revoke("jti-soon", now + 60);
+            service.revoke("jti-later", now + TTL_SECONDS);
+            int before = service.partitionCount();
+
+            clock.advance(Duration.ofSeconds(TTL_SECONDS / 6 + 120));
+            service.purgeExpiredPartitions();
+
+            assertThat(service.partitionCount()).isLessThan(before);
+            assertThat(service.isRevoked("jti-later", now + TTL_SECONDS)).isTrue();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.exception.SigningCapacityExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenSigningExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TokenSigningExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void submit_recordsQueueWaitAndExecution() throws Exception {
+        executor = new TokenSigningExecutor(1, 4, 1, meterRegistry);
+
+        assertThat(executor.submit(() -> "signed").get(2, TimeUnit.SECONDS)).isEqualTo("signed");
+
+        assertThat(meterRegistry.get("token.signing.queue.wait").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("token.signing.execution").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void fullQueue_rejectsWithRetryAfter() throws Exception {
+        executor = new TokenSigningExecutor(1, 1, 3, meterRegistry);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Occupy the only thread, then the only queue slot
+        Future<Boolean> busy = executor.submit(() -> {
+            running.countDown();
+            return release.await(2, TimeUnit.SECONDS);
+        });
+        assertThat(running.await(2, TimeUnit.SECONDS)).isTrue();
+        Future<String> queued = executor.submit(() -> "queued");
+
+        assertThat(meterRegistry.get("token.signing.queue.depth").gauge().value()).isEqualTo(1.0);
+        assertThatThrownBy(() -> executor.submit(() -> "rejected"))
+                .isInstanceOfSatisfying(SigningCapacityExceededException.class,
+                        e -> assertThat(e.getRetryAfterSeconds()).isEqualTo(3));
+        assertThat(meterRegistry.get("token.signing.rejected").counter().count()).isEqualTo(1.0);
+
+        release.countDown();
+        assertThat(busy.get(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(queued.get(2, TimeUnit.SECONDS)).isEqualTo("queued");
+        awaitCapacity(2);
+    }
+
+    @Test
+    void reservation_isNotRejected_whileOthersAre() throws Exception {
+        executor = new TokenSigningExecutor(1, 1, 1, meterRegistry);
+
+        try (TokenSigningExecutor.Reservation reservation = executor.reserve(2)) {
+            // Everything is reserved: other callers are turned away...
+            assertThatThrownBy(() -> executor.submit(() -> "other"))
+                    .isInstanceOf(SigningCapacityExceededException.class);
+            assertThatThrownBy(() -> executor.reserve(1))
+                    .isInstanceOf(SigningCapacityExceededException.class);
+
+            // ...but the reserved signatures still go through
+            Future<String> first = reservation.submit(() -> "first");
+            Future<String> second = reservation.submit(() -> "second");
+            assertThat(first.get(2, TimeUnit.SECONDS)).isEqualTo("first");
+            assertThat(second.get(2, TimeUnit.SECONDS)).isEqualTo("second");
+            assertThatThrownBy(() -> reservation.submit(() -> "third"))
+                    .isInstanceOf(IllegalStateException.class);
+        }
+        awaitCapacity(2);
+    }
+
+    @Test
+    void closingReservation_returnsUnusedCapacity() {
+        executor = new TokenSigningExecutor(1, 1, 1, meterRegistry);
+
+        executor.reserve(2).close();
+
+        executor.reserve(2).close();
+    }
+
+    @Test
+    void cancelledSignature_returnsItsCapacity() throws Exception {
+        executor = new TokenSigningExecutor(1, 1, 1, meterRegistry);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Boolean> busy = executor.submit(() -> {
+            running.countDown();
+            return release.await(2, TimeUnit.SECONDS);
+        });
+        assertThat(running.await(2, TimeUnit.SECONDS)).isTrue();
+
+        Future<String> queued = executor.submit(() -> "never runs");
+        queued.cancel(false);
+
+        // The cancelled signature's slot is free while the first still runs
+        executor.reserve(1).close();
+        release.countDown();
+        assertThat(busy.get(2, TimeUnit.SECONDS)).isTrue();
+    }
+
+    // A task's capacity is returned just after its result is published
+    private void awaitCapacity(int signatures) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (true) {
+            try {
+                executor.reserve(signatures).close();
+                return;
+            } catch (SigningCapacityExceededException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(5);
+            }
+        }
+    }
+}
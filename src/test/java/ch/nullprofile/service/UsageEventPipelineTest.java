@@ -0,0 +1,154 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.config.UsageMeteringProperties;
+import ch.nullprofile.dto.UsageEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UsageEventPipelineTest {
+
+    private static final UUID RP = UUID.randomUUID();
+    private static final LocalDate MONTH = LocalDate.of(2026, 1, 1);
+
+    private UsageMeteringProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private RecordingWriter writer;
+    private UsageEventPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        properties = new UsageMeteringProperties();
+        properties.setQueueCapacity(100);
+        properties.setBatchSize(10);
+        properties.setFlushIntervalMillis(20);
+        meterRegistry = new SimpleMeterRegistry();
+        writer = new RecordingWriter();
+        pipeline = new UsageEventPipeline(properties, writer, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.stop();
+    }
+
+    private static UsageEvent event() {
+        return new UsageEvent(RP, UUID.randomUUID(), MONTH, Instant.now());
+    }
+
+    @Test
+    void submittedEvents_areWrittenInBoundedBatches() throws InterruptedException {
+        pipeline.start();
+
+        for (int i = 0; i < 35; i++) {
+            assertThat(pipeline.submit(event())).isTrue();
+        }
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (writer.writtenEvents() < 35 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(writer.writtenEvents()).isEqualTo(35);
+        assertThat(writer.batches).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(10));
+        assertThat(meterRegistry.get("usage.metering.flush").timer().count()).isEqualTo(writer.batches.size());
+    }
+
+    @Test
+    void fullQueue_dropsAndCountsEvents() {
+        // Writer never started: nothing leaves the queue
+        for (int i = 0; i < 100; i++) {
+            assertThat(pipeline.submit(event())).isTrue();
+        }
+
+        assertThat(pipeline.submit(event())).isFalse();
+        assertThat(pipeline.submit(event())).isFalse();
+        assertThat(meterRegistry.get("usage.metering.events.dropped").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("usage.metering.queue.depth").gauge().value()).isEqualTo(100);
+    }
+
+    @Test
+    void stop_drainsQueuedEvents() {
+        for (int i = 0; i < 50; i++) {
+            pipeline.submit(event());
+        }
+
+        pipeline.start();
+        pipeline.stop();
+
+        assertThat(writer.writtenEvents()).isEqualTo(50);
+        assertThat(pipeline.queueDepth()).isZero();
+    }
+
+    @Test
+    void failedBatch_isCountedAndDoesNotStopTheWriter() throws InterruptedException {
+        writer.failNext = true;
+        pipeline.start();
+
+        pipeline.submit(event());
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (meterRegistry.get("usage.metering.events.failed").counter().count() < 1
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        pipeline.submit(event());
+        while (writer.writtenEvents() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(meterRegistry.get("usage.metering.events.failed").counter().count()).isEqualTo(1);
+        assertThat(writer.writtenEvents()).isEqualTo(1);
+    }
+
+    @Test
+    void coalesce_mergesRepeatLogins() {
+        UUID user = UUID.randomUUID();
+        Instant t1 = Instant.parse("2026-01-05T10:00:00Z");
+        Instant t2 = Instant.parse("2026-01-07T10:00:00Z");
+        Instant t3 = Instant.parse("2026-01-06T10:00:00Z");
+
+        Map<UsageEventWriter.ActiveUserKey, UsageEventWriter.SeenRange> coalesced = UsageEventWriter.coalesce(List.of(
+                new UsageEvent(RP, user, MONTH, t1),
+                new UsageEvent(RP, user, MONTH, t2),
+                new UsageEvent(RP, user, MONTH, t3),
+                new UsageEvent(RP, UUID.randomUUID(), MONTH, t1)
+        ));
+
+        assertThat(coalesced).hasSize(2);
+        assertThat(coalesced.get(new UsageEventWriter.ActiveUserKey(RP, user, MONTH)))
+                .isEqualTo(new UsageEventWriter.SeenRange(t1, t2));
+    }
+
+    private static final class RecordingWriter extends UsageEventWriter {
+        final List<List<UsageEvent>> batches = new CopyOnWriteArrayList<>();
+        volatile boolean failNext;
+
+        RecordingWriter() {
+            super(null, null);
+        }
+
+        @Override
+        public void write(Collection<UsageEvent> events) {
+            if (failNext) {
+                failNext = false;
+                throw new IllegalStateException("database unavailable");
+            }
+            batches.add(new ArrayList<>(events));
+        }
+
+        int writtenEvents() {
+            return batches.stream().mapToInt(List::size).sum();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.dto.MonthlyUsage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * getUsageSummary against H2 in PostgreSQL mode, with just the two metering tables it reads
+ */
+class UsageMeteringServiceTest {
+
+    private static final UUID RP = UUID.randomUUID();
+    private static final UUID OTHER_RP = UUID.randomUUID();
+    private static final LocalDate JAN = LocalDate.of(2026, 1, 1);
+    private static final LocalDate FEB = LocalDate.of(2026, 2, 1);
+    private static final LocalDate MAR = LocalDate.of(2026, 3, 1);
+
+    private JdbcTemplate jdbcTemplate;
+    private MauSketchAccumulator mauSketchAccumulator;
+    private UsageQueryExecutor usageQueryExecutor;
+    private UsageMeteringService service;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:usage-" + UUID.randomUUID() + ";MODE=PostgreSQL;NON_KEYWORDS=MONTH;DB_CLOSE_DELAY=-1"));
+        jdbcTemplate.execute("""
+                CREATE TABLE monthly_active_users (
+                    relying_party_id UUID NOT NULL,
+                    user_id UUID NOT NULL,
+                    month DATE NOT NULL,
+                    first_seen_at TIMESTAMP NOT NULL,
+                    last_seen_at TIMESTAMP NOT NULL,
+                    PRIMARY KEY (relying_party_id, user_id, month)
+                )
+                """);
+        jdbcTemplate.execute("""
+                CREATE TABLE rp_monthly_counters (
+                    relying_party_id UUID NOT NULL,
+                    month DATE NOT NULL,
+                    auth_count BIGINT NOT NULL,
+                    PRIMARY KEY (relying_party_id, month)
+                )
+                """);
+
+        ActiveUserBitmaps activeUserBitmaps = mock(ActiveUserBitmaps.class);
+        when(activeUserBitmaps.load(any(), any(), any())).thenReturn(Map.of(
+                JAN, RoaringBitmap.bitmapOf(1, 2, 3, 4),
+                FEB, RoaringBitmap.bitmapOf(1, 2, 5, 6)));
+        mauSketchAccumulator = mock(MauSketchAccumulator.class);
+        usageQueryExecutor = new UsageQueryExecutor(4, 10_000, new SimpleMeterRegistry());
+        service = new UsageMeteringService(jdbcTemplate, null, null, mauSketchAccumulator,
+                activeUserBitmaps, usageQueryExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        usageQueryExecutor.shutdown();
+    }
+
+    @Test
+    void summary_joinsActivityAndAuthCounts_includingMonthsWithOnlyOneOfThem() {
+        // JAN: users and counters; FEB: users only; MAR: counters only (e.g. MAU rows not written yet)
+        // Active recently = seen in the month's last 30 days, from Jan 2 for January, Jan 30 for February
+        activeUser(RP, JAN, "2026-01-01T10:00:00Z");
+        activeUser(RP, JAN, "2026-01-20T10:00:00Z");
+        activeUser(RP, FEB, "2026-02-27T10:00:00Z");
+        authCount(RP, JAN, 7);
+        authCount(RP, MAR, 3);
+
+        List<MonthlyUsage> usage = service.getUsageSummary(RP, JAN, MAR);
+
+        assertThat(usage).containsExactly(
+                new MonthlyUsage(JAN, 2, 7, 0, 1),
+                new MonthlyUsage(FEB, 1, 0, 50, 1),
+                new MonthlyUsage(MAR, 0, 3, 0, 0));
+    }
+
+    @Test
+    void summary_filtersByRp_andSumsAllRpsWithoutOne() {
+        UUID sharedUser = UUID.randomUUID();
+        activeUser(RP, JAN, sharedUser, "2026-01-25T10:00:00Z");
+        activeUser(OTHER_RP, JAN, sharedUser, "2026-01-25T10:00:00Z");
+        activeUser(OTHER_RP, JAN, UUID.randomUUID(), "2026-01-01T10:00:00Z");
+        authCount(RP, JAN, 4);
+        authCount(OTHER_RP, JAN, 6);
+        authCount(OTHER_RP, LocalDate.of(2025, 12, 1), 100);
+
+        assertThat(service.getUsageSummary(RP, JAN, FEB))
+                .containsExactly(new MonthlyUsage(JAN, 1, 4, 0, 1));
+        // Distinct users across RPs, auth counts summed, December outside the range;
+        // active-recently counts (RP, user) rows, as getActiveRecently does
+        assertThat(service.getUsageSummary(null, JAN, FEB))
+                .containsExactly(new MonthlyUsage(JAN, 2, 10, 0, 2));
+    }
+
+    @Test
+    void sketchMode_usesEstimates_andExactCountsForMonthsWithoutASketch() {
+        activeUser(RP, JAN, "2026-01-05T10:00:00Z");
+        activeUser(RP, JAN, "2026-01-06T10:00:00Z");
+        activeUser(RP, FEB, "2026-02-05T10:00:00Z");
+        authCount(RP, FEB, 1);
+        when(mauSketchAccumulator.isEnabled()).thenReturn(true);
+        // JAN predates SKETCH mode; only FEB has a sketch
+        when(mauSketchAccumulator.estimateMonthlyActiveUsers(RP, JAN, FEB)).thenReturn(Map.of(FEB, 42));
+
+        List<MonthlyUsage> usage = service.getUsageSummary(RP, JAN, FEB);
+
+        assertThat(usage).extracting(MonthlyUsage::mau).containsExactly(2, 42);
+    }
+
+    @Test
+    void activeRecently_startsAtMidnightZurich() {
+        // January's last 30 days start on Jan 2, 00:00 in Zurich, which is Jan 1, 23:00 UTC
+        activeUser(RP, JAN, "2026-01-01T22:30:00Z");
+        activeUser(RP, JAN, "2026-01-01T23:30:00Z");
+
+        assertThat(UsageMeteringService.activeRecentlySince(JAN))
+                .isEqualTo(Timestamp.from(Instant.parse("2026-01-01T23:00:00Z")));
+        assertThat(service.getUsageSummary(RP, JAN, JAN)).extracting(MonthlyUsage::activeRecently).containsExactly(1);
+        assertThat(service.getActiveRecently(RP, JAN, JAN)).containsExactly(Map.entry(JAN, 1));
+    }
+
+    private void activeUser(UUID relyingPartyId, LocalDate month, String lastSeenAt) {
+        activeUser(relyingPartyId, month, UUID.randomUUID(), lastSeenAt);
+    }
+
+    private void activeUser(UUID relyingPartyId, LocalDate month, UUID userId, String lastSeenAt) {
+        jdbcTemplate.update("""
+                INSERT INTO monthly_active_users (relying_party_id, user_id, month, first_seen_at, last_seen_at)
+                VALUES (?, ?, ?, ?, ?)
+                """, relyingPartyId, userId, Date.valueOf(month),
+                Timestamp.valueOf(month.atStartOfDay()), Timestamp.from(Instant.parse(lastSeenAt)));
+    }
+
+    private void authCount(UUID relyingPartyId, LocalDate month, long count) {
+        jdbcTemplate.update("INSERT INTO rp_monthly_counters (relying_party_id, month, auth_count) VALUES (?, ?, ?)",
+                relyingPartyId, Date.valueOf(month), count);
+    }
+}
@@ -0,0 +1,101 @@
+package ch.nullprofile.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UsageQueryExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private UsageQueryExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void reads_runConcurrently() throws Exception {
+        executor = new UsageQueryExecutor(4, 5000, meterRegistry);
+        CountDownLatch allStarted = new CountDownLatch(3);
+        long deadline = executor.deadline();
+
+        List<Future<Boolean>> reads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            // Each read only finishes once all three are running at the same time
+            reads.add(executor.submit(() -> {
+                allStarted.countDown();
+                return allStarted.await(2, TimeUnit.SECONDS);
+            }, deadline));
+        }
+
+        for (Future<Boolean> read : reads) {
+            assertThat(executor.await(read, deadline)).isTrue();
+        }
+    }
+
+    @Test
+    void concurrency_isBoundedByPermits() throws Exception {
+        executor = new UsageQueryExecutor(2, 5000, meterRegistry);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        long deadline = executor.deadline();
+
+        List<Future<Integer>> reads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            reads.add(executor.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return 1;
+            }, deadline));
+        }
+        for (Future<Integer> read : reads) {
+            executor.await(read, deadline);
+        }
+
+        assertThat(maxRunning.get()).isEqualTo(2);
+    }
+
+    @Test
+    void missedDeadline_isTimeoutOrFallback() {
+        executor = new UsageQueryExecutor(4, 50, meterRegistry);
+        long deadline = executor.deadline();
+        Future<String> slow = executor.submit(() -> {
+            Thread.sleep(5000);
+            return "late";
+        }, deadline);
+        Future<String> alsoSlow = executor.submit(() -> {
+            Thread.sleep(5000);
+            return "late";
+        }, deadline);
+
+        assertThatThrownBy(() -> executor.await(slow, deadline)).isInstanceOf(QueryTimeoutException.class);
+        assertThat(executor.awaitOrDefault(alsoSlow, deadline, "fallback", "test")).isEqualTo("fallback");
+        assertThat(slow.isCancelled()).isTrue();
+        assertThat(meterRegistry.counter("usage.summary.degraded").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void failure_isRethrownOrDegraded() {
+        executor = new UsageQueryExecutor(4, 5000, meterRegistry);
+        long deadline = executor.deadline();
+        Future<String> failing = executor.submit(() -> {
+            throw new IllegalStateException("database unavailable");
+        }, deadline);
+
+        assertThatThrownBy(() -> executor.await(failing, deadline)).hasMessage("database unavailable");
+        assertThat(executor.awaitOrDefault(failing, deadline, "fallback", "test")).isEqualTo("fallback");
+    }
+}
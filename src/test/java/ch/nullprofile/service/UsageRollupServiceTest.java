@@ -0,0 +1,191 @@
+package ch.nullprofile.service;
+
+import ch.nullprofile.dto.MonthlyUsage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UsageRollupServiceTest {
+
+    private static final UUID RP = UUID.randomUUID();
+    private static final UUID ALL = UsageRollupService.ALL_RELYING_PARTIES;
+
+    private JdbcTemplate jdbcTemplate;
+    private UsageMeteringService usageMeteringService;
+    private MauSketchAccumulator sketches;
+    private UsageRollupService service;
+    private LocalDate currentMonth;
+    private final List<RollupRow> storedRows = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        usageMeteringService = mock(UsageMeteringService.class);
+        sketches = mock(MauSketchAccumulator.class);
+        currentMonth = LocalDate.now().withDayOfMonth(1);
+        when(usageMeteringService.getMonthBucket(any(Instant.class))).thenReturn(currentMonth);
+
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (RollupRow row : storedRows) {
+                handler.processRow(row.toResultSet());
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        service = new UsageRollupService(jdbcTemplate, mock(PlatformTransactionManager.class),
+                usageMeteringService, mock(ActiveUserBitmaps.class), sketches, 24, 2, 1000, 24, 60, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void rolledUpMonths_areServedFromRollups_andOnlyCurrentMonthIsLive() {
+        LocalDate previous = currentMonth.minusMonths(1);
+        LocalDate twoAgo = currentMonth.minusMonths(2);
+        storedRows.add(new RollupRow(ALL, twoAgo, 0, 0, 0, 0));
+        storedRows.add(new RollupRow(ALL, previous, 50, 100, 10, 20));
+        storedRows.add(new RollupRow(RP, previous, 40, 80, 10, 15));
+        when(usageMeteringService.getUsageSummary(RP, currentMonth, currentMonth))
+                .thenReturn(List.of(new MonthlyUsage(currentMonth, 30, 60, 50, 30)));
+
+        List<MonthlyUsage> usage = service.getMonthlyUsage(RP, 3);
+
+        // twoAgo has no RP row: no activity, so it is omitted like before
+        assertThat(usage).containsExactly(
+                new MonthlyUsage(previous, 40, 80, 25, 15),
+                new MonthlyUsage(currentMonth, 30, 60, 50, 30));
+    }
+
+    @Test
+    void monthsNotYetRolledUp_areComputedLive() {
+        LocalDate previous = currentMonth.minusMonths(1);
+        LocalDate twoAgo = currentMonth.minusMonths(2);
+        storedRows.add(new RollupRow(ALL, twoAgo, 7, 9, 0, 1));
+        when(usageMeteringService.getUsageSummary(null, previous, currentMonth)).thenReturn(List.of(
+                new MonthlyUsage(previous, 5, 10, 20, 0),
+                new MonthlyUsage(currentMonth, 6, 0, 40, 0)));
+
+        List<MonthlyUsage> usage = service.getMonthlyUsage(null, 3);
+
+        assertThat(usage).containsExactly(
+                new MonthlyUsage(twoAgo, 7, 9, 0, 1),
+                new MonthlyUsage(previous, 5, 10, 20, 0),
+                new MonthlyUsage(currentMonth, 6, 0, 40, 0));
+    }
+
+    @Test
+    void finalMonthsAndLiveMonth_areServedFromMemoryOnRepeat() {
+        LocalDate previous = currentMonth.minusMonths(1);
+        storedRows.add(new RollupRow(ALL, previous, 50, 100, 10, 20));
+        storedRows.add(new RollupRow(RP, previous, 40, 80, 10, 15));
+        when(usageMeteringService.getUsageSummary(RP, currentMonth, currentMonth))
+                .thenReturn(List.of(new MonthlyUsage(currentMonth, 30, 60, 50, 30)));
+        // No reopen window: every rolled-up month is final
+        service = new UsageRollupService(jdbcTemplate, mock(PlatformTransactionManager.class),
+                usageMeteringService, mock(ActiveUserBitmaps.class), sketches, 24, 0, 1000, 24, 60, new SimpleMeterRegistry());
+
+        List<MonthlyUsage> first = service.getMonthlyUsage(RP, 2);
+        List<MonthlyUsage> second = service.getMonthlyUsage(RP, 2);
+
+        assertThat(second).isEqualTo(first).hasSize(2);
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        verify(usageMeteringService, times(1)).getUsageSummary(RP, currentMonth, currentMonth);
+
+        service.evict(RP);
+        service.getMonthlyUsage(RP, 2);
+        verify(usageMeteringService, times(2)).getUsageSummary(RP, currentMonth, currentMonth);
+    }
+
+    @Test
+    void sketchMode_rollsUpTheEstimatedMau_andKeepsTheExactOneForRetention() {
+        LocalDate month = currentMonth.minusMonths(1);
+        doAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            RowCallbackHandler handler = invocation.getArgument(1);
+            if (sql.contains("GROUP BY relying_party_id")) {
+                handler.processRow(activityRow(RP, 40, 15));
+            } else if (sql.contains("COUNT(DISTINCT user_id)")) {
+                handler.processRow(activityRow(null, 50, 20));
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        when(sketches.isEnabled()).thenReturn(true);
+        when(sketches.estimateMonth(month)).thenReturn(Map.of(RP, 41));
+        when(sketches.estimateMonthlyActiveUsers(null, month, month)).thenReturn(Map.of(month, 52));
+
+        service.rollUpMonth(month);
+
+        // Same cut-off as the live summary
+        verify(jdbcTemplate).query(contains("GROUP BY relying_party_id"), any(RowCallbackHandler.class),
+                eq(UsageMeteringService.activeRecentlySince(month)), eq(Date.valueOf(month)));
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(contains("INSERT INTO usage_monthly_rollups"), rows.capture());
+        // relying_party_id, month, mau, auth_count, retained, active_recently, exact_mau, computed_at
+        assertThat(rows.getValue()).extracting(row -> Arrays.asList(row).subList(0, 7)).containsExactly(
+                List.of(RP, Date.valueOf(month), 41, 0L, 0, 15, 40),
+                List.of(ALL, Date.valueOf(month), 52, 0L, 0, 20, 50));
+    }
+
+    @Test
+    void retention_isMeasuredAgainstTheExactMau() {
+        LocalDate previous = currentMonth.minusMonths(1);
+        // Estimated 42 users, of 40 exact users 10 were retained
+        storedRows.add(new RollupRow(ALL, previous, 42, 100, 10, 20, 40));
+        when(usageMeteringService.getUsageSummary(null, currentMonth, currentMonth)).thenReturn(List.of());
+
+        assertThat(service.getMonthlyUsage(null, 2)).containsExactly(new MonthlyUsage(previous, 42, 100, 25, 20));
+    }
+
+    private static ResultSet activityRow(UUID relyingPartyId, long mau, long activeRecently) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getObject("relying_party_id", UUID.class)).thenReturn(relyingPartyId);
+        when(rs.getLong("mau")).thenReturn(mau);
+        when(rs.getLong("active_recently")).thenReturn(activeRecently);
+        return rs;
+    }
+
+    private record RollupRow(UUID relyingPartyId, LocalDate month, int mau, long authCount, int retained,
+                             int activeRecently, int exactMau) {
+
+        RollupRow(UUID relyingPartyId, LocalDate month, int mau, long authCount, int retained, int activeRecently) {
+            this(relyingPartyId, month, mau, authCount, retained, activeRecently, mau);
+        }
+
+        ResultSet toResultSet() throws SQLException {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getObject("relying_party_id", UUID.class)).thenReturn(relyingPartyId);
+            when(rs.getDate("month")).thenReturn(Date.valueOf(month));
+            when(rs.getInt("mau")).thenReturn(mau);
+            when(rs.getLong("auth_count")).thenReturn(authCount);
+            when(rs.getInt("retained")).thenReturn(retained);
+            when(rs.getInt("active_recently")).thenReturn(activeRecently);
+            when(rs.getInt("exact_mau")).thenReturn(exactMau);
+            return rs;
+        }
+    }
+}
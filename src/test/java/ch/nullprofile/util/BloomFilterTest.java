@@ -0,0 +1,91 @@
+package ch.nullprofile.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTest {
+
+    private static final int INSERTIONS = 50_000;
+    private static final double FPP = 0.01;
+
+    @Test
+    void addedKeys_areAlwaysFound() {
+        BloomFilter filter = BloomFilter.create(INSERTIONS, FPP);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < INSERTIONS; i++) {
+            String key = UUID.randomUUID().toString();
+            keys.add(key);
+            filter.add(key);
+        }
+
+        assertThat(keys).allMatch(filter::mightContain);
+    }
+
+    @Test
+    void falsePositiveRate_staysNearConfiguredRate_atExpectedLoad() {
+        BloomFilter filter = BloomFilter.create(INSERTIONS, FPP);
+        for (int i = 0; i < INSERTIONS; i++) {
+            filter.add("revoked-" + i);
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("active-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        assertThat((double) falsePositives / probes).isLessThan(FPP * 2);
+    }
+
+    @Test
+    void sizing_followsStandardFormulas() {
+        BloomFilter filter = BloomFilter.create(100_000, 0.01);
+
+        // ~9.59 bits and ~6.6 hash functions per key at 1%
+        assertThat(filter.bitCount()).isBetween(958_000L, 958_600L);
+        assertThat(filter.hashCount()).isEqualTo(7);
+    }
+
+    @Test
+    void concurrentAdds_areAllVisible() throws Exception {
+        BloomFilter filter = BloomFilter.create(INSERTIONS, FPP);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            writers.add(pool.submit(() -> {
+                for (int i = 0; i < INSERTIONS / 4; i++) {
+                    filter.add(thread + "-" + i);
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(10, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        for (int t = 0; t < 4; t++) {
+            for (int i = 0; i < INSERTIONS / 4; i++) {
+                assertThat(filter.mightContain(t + "-" + i)).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void invalidParameters_areRejected() {
+        assertThatThrownBy(() -> BloomFilter.create(0, FPP)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BloomFilter.create(10, 1.0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,90 @@
+package ch.nullprofile.util;
+
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactJwsTest {
+
+    private static ECKey key;
+    private static ECDSASigner signer;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        key = new ECKeyGenerator(Curve.P_256).keyID("kid-1").generate();
+        signer = new ECDSASigner(key);
+    }
+
+    @Test
+    void signedToken_parsesAndVerifiesWithNimbus() throws Exception {
+        CompactJws.Header header = CompactJws.header(JWSAlgorithm.ES256, "kid-1", new JOSEObjectType("at+jwt"));
+
+        String token = CompactJws.sign(header, signer, json -> {
+            json.writeStringField("iss", "https://issuer.example.com");
+            json.writeStringField("sub", "subject");
+            json.writeNumberField("exp", 1_700_000_000L);
+        });
+
+        SignedJWT jwt = SignedJWT.parse(token);
+        assertThat(jwt.verify(new ECDSAVerifier(key.toPublicJWK()))).isTrue();
+        assertThat(jwt.getHeader().getKeyID()).isEqualTo("kid-1");
+        assertThat(jwt.getHeader().getType().getType()).isEqualTo("at+jwt");
+
+        JWTClaimsSet claims = jwt.getJWTClaimsSet();
+        assertThat(claims.getIssuer()).isEqualTo("https://issuer.example.com");
+        assertThat(claims.getSubject()).isEqualTo("subject");
+        assertThat(claims.getExpirationTime().toInstant().getEpochSecond()).isEqualTo(1_700_000_000L);
+    }
+
+    @Test
+    void claimValues_areEscaped() throws Exception {
+        CompactJws.Header header = CompactJws.header(JWSAlgorithm.ES256, "kid-1", null);
+        String nonce = "quote\" backslash\\ newline\n unicodeé";
+
+        String token = CompactJws.sign(header, signer, json -> json.writeStringField("nonce", nonce));
+
+        assertThat(SignedJWT.parse(token).getJWTClaimsSet().getStringClaim("nonce")).isEqualTo(nonce);
+    }
+
+    @Test
+    void pooledBuffers_doNotLeakBetweenTokens() throws Exception {
+        CompactJws.Header header = CompactJws.header(JWSAlgorithm.ES256, "kid-1", null);
+        String longValue = "x".repeat(5000);
+
+        CompactJws.sign(header, signer, json -> json.writeStringField("big", longValue));
+        String small = CompactJws.sign(header, signer, json -> json.writeStringField("sub", "s"));
+
+        assertThat(SignedJWT.parse(small).getJWTClaimsSet().getClaims()).containsOnlyKeys("sub");
+    }
+
+    @Test
+    void encodeBase64Url_matchesJdkEncoder() {
+        Base64.Encoder jdk = Base64.getUrlEncoder().withoutPadding();
+        Random random = new Random(42);
+        for (int length = 0; length <= 64; length++) {
+            byte[] src = new byte[length + 3];
+            random.nextBytes(src);
+            CompactJws.Buffer out = new CompactJws.Buffer(4);
+
+            CompactJws.encodeBase64Url(src, length, out);
+
+            assertThat(out.toString(StandardCharsets.US_ASCII))
+                    .isEqualTo(jdk.encodeToString(Arrays.copyOf(src, length)));
+        }
+    }
+}
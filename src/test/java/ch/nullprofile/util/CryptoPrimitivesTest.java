@@ -0,0 +1,63 @@
+package ch.nullprofile.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CryptoPrimitivesTest {
+
+    private static final byte[] KEY = "test-salt".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void sha256_matchesJdk() throws Exception {
+        byte[] input = "code-verifier".getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(CryptoPrimitives.sha256(input))
+                .isEqualTo(MessageDigest.getInstance("SHA-256").digest(input));
+    }
+
+    @Test
+    void hmacSha256_matchesJdk() throws Exception {
+        byte[] input = "user\u001Fsector".getBytes(StandardCharsets.UTF_8);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(KEY, "HmacSHA256"));
+
+        assertThat(CryptoPrimitives.hmacSha256(KEY).mac(input)).isEqualTo(mac.doFinal(input));
+    }
+
+    @Test
+    void pooledInstances_areSafeAcrossManyVirtualThreads() throws Exception {
+        CryptoPrimitives.HmacSha256 hmac = CryptoPrimitives.hmacSha256(KEY);
+        Mac reference = Mac.getInstance("HmacSHA256");
+        reference.init(new SecretKeySpec(KEY, "HmacSHA256"));
+
+        List<byte[]> inputs = new ArrayList<>();
+        List<byte[]> expected = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            byte[] input = ("input-" + i).getBytes(StandardCharsets.UTF_8);
+            inputs.add(input);
+            expected.add(reference.doFinal(input));
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (byte[] input : inputs) {
+                results.add(executor.submit(() -> hmac.mac(input)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i).get(10, TimeUnit.SECONDS)).isEqualTo(expected.get(i));
+            }
+        }
+    }
+}
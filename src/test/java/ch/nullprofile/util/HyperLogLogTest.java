@@ -0,0 +1,149 @@
+package ch.nullprofile.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HyperLogLogTest {
+
+    private static final double RELATIVE_ERROR = 0.01;
+
+    private static List<UUID> users(long seed, int count) {
+        Random random = new Random(seed);
+        List<UUID> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+        return users;
+    }
+
+    /**
+     * Estimate stays within three standard errors of the exact distinct count
+     */
+    private static void assertWithinBound(long estimate, long exact) {
+        assertThat((double) Math.abs(estimate - exact)).isLessThanOrEqualTo(3 * RELATIVE_ERROR * exact + 1);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {10, 1_000, 10_000, 200_000})
+    void estimate_matchesExactDistinctCount(int distinctUsers) {
+        List<UUID> users = users(distinctUsers, distinctUsers);
+        HyperLogLog hll = HyperLogLog.withRelativeError(RELATIVE_ERROR);
+        Set<UUID> exact = new HashSet<>();
+
+        // Every user logs in three times, as in a month of repeat logins
+        for (int round = 0; round < 3; round++) {
+            for (UUID user : users) {
+                hll.add(user);
+                exact.add(user);
+            }
+        }
+
+        assertWithinBound(hll.estimate(), exact.size());
+    }
+
+    @Test
+    void precision_isDerivedFromErrorBound() {
+        assertThat(HyperLogLog.precisionFor(0.01)).isEqualTo(14);
+        assertThat(HyperLogLog.precisionFor(0.02)).isEqualTo(12);
+        assertThat(HyperLogLog.precisionFor(0.0001)).isEqualTo(HyperLogLog.MAX_PRECISION);
+        assertThat(HyperLogLog.precisionFor(0.5)).isEqualTo(HyperLogLog.MIN_PRECISION);
+    }
+
+    @Test
+    void merge_estimatesUnionAcrossRelyingParties() {
+        List<UUID> shared = users(1, 20_000);
+        List<UUID> onlyA = users(2, 30_000);
+        List<UUID> onlyB = users(3, 10_000);
+        HyperLogLog rpA = HyperLogLog.withRelativeError(RELATIVE_ERROR);
+        HyperLogLog rpB = HyperLogLog.withRelativeError(RELATIVE_ERROR);
+        shared.forEach(rpA::add);
+        shared.forEach(rpB::add);
+        onlyA.forEach(rpA::add);
+        onlyB.forEach(rpB::add);
+
+        rpA.merge(rpB);
+
+        assertWithinBound(rpA.estimate(), 60_000);
+    }
+
+    @Test
+    void reducedPrecision_canBeMergedAndStaysAccurate() {
+        List<UUID> users = users(4, 50_000);
+        HyperLogLog fine = new HyperLogLog(14);
+        HyperLogLog coarse = new HyperLogLog(12);
+        users.subList(0, 25_000).forEach(fine::add);
+        users.subList(25_000, 50_000).forEach(coarse::add);
+
+        HyperLogLog union = fine.reducedTo(12);
+        union.merge(coarse);
+
+        HyperLogLog direct = new HyperLogLog(12);
+        users.forEach(direct::add);
+        assertThat(union).isEqualTo(direct);
+    }
+
+    @Test
+    void serializedSketch_roundTrips() {
+        HyperLogLog hll = new HyperLogLog(10);
+        users(5, 5_000).forEach(hll::add);
+
+        byte[] bytes = hll.toBytes();
+
+        assertThat(bytes).hasSize(1 + 1024);
+        assertThat(HyperLogLog.fromBytes(bytes)).isEqualTo(hll);
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[]{10, 0, 0}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void repeatAdd_doesNotChangeSketch() {
+        HyperLogLog hll = new HyperLogLog(12);
+        UUID user = UUID.randomUUID();
+
+        assertThat(hll.add(user)).isTrue();
+        assertThat(hll.add(user)).isFalse();
+    }
+
+    @Test
+    void concurrentAdds_areNotLost() throws Exception {
+        List<UUID> users = users(6, 100_000);
+        HyperLogLog concurrent = new HyperLogLog(14);
+        HyperLogLog sequential = new HyperLogLog(14);
+        users.forEach(sequential::add);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int offset = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = offset; i < users.size(); i += 8) {
+                        concurrent.add(users.get(i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(concurrent).isEqualTo(sequential);
+    }
+}
@@ -0,0 +1,60 @@
+package ch.nullprofile.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedirectUriMatcherTest {
+
+    private final RedirectUriMatcher matcher = RedirectUriMatcher.of(List.of(
+            "https://rp.example.com/callback",
+            "https://RP.Example.com:8443/Auth/Callback?tenant=A",
+            "http://localhost:3000/cb"
+    ));
+
+    @Test
+    void exactUri_matches() {
+        assertThat(matcher.matches("https://rp.example.com/callback")).isTrue();
+        assertThat(matcher.matches("http://localhost:3000/cb")).isTrue();
+    }
+
+    @Test
+    void schemeAndHost_areCaseInsensitive() {
+        assertThat(matcher.matches("HTTPS://Rp.Example.COM/callback")).isTrue();
+        assertThat(matcher.matches("https://rp.example.com:8443/Auth/Callback?tenant=A")).isTrue();
+    }
+
+    @Test
+    void pathQueryAndPort_mustMatchExactly() {
+        assertThat(matcher.matches("https://rp.example.com/Callback")).isFalse();
+        assertThat(matcher.matches("https://rp.example.com/callback/")).isFalse();
+        assertThat(matcher.matches("https://rp.example.com/callback?x=1")).isFalse();
+        assertThat(matcher.matches("https://rp.example.com:443/callback")).isFalse();
+        assertThat(matcher.matches("https://rp.example.com:8443/auth/callback?tenant=A")).isFalse();
+        assertThat(matcher.matches("https://rp.example.com:8443/Auth/Callback?tenant=a")).isFalse();
+    }
+
+    @Test
+    void userinfo_isNotLowerCased() {
+        RedirectUriMatcher withUserinfo = RedirectUriMatcher.of(List.of("https://User@rp.example.com/cb"));
+
+        assertThat(withUserinfo.matches("https://User@RP.example.com/cb")).isTrue();
+        assertThat(withUserinfo.matches("https://user@rp.example.com/cb")).isFalse();
+    }
+
+    @Test
+    void nullAndUnregistered_doNotMatch() {
+        assertThat(matcher.matches(null)).isFalse();
+        assertThat(matcher.matches("https://evil.example.com/callback")).isFalse();
+        assertThat(RedirectUriMatcher.of(List.of()).matches("https://rp.example.com/callback")).isFalse();
+    }
+
+    @Test
+    void alreadyNormalisedUri_isReturnedAsIs() {
+        String uri = "https://rp.example.com/Path?Q=1";
+
+        assertThat(RedirectUriMatcher.normalise(uri)).isSameAs(uri);
+    }
+}
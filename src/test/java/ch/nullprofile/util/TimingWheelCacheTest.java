@@ -0,0 +1,241 @@
+package ch.nullprofile.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelCacheTest {
+
+    private static final Duration TICK = Duration.ofSeconds(1);
+
+    private MutableClock clock;
+    private TimingWheelCache<String, String> cache;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+        cache = new TimingWheelCache<>(TICK, 16, 1_000, clock);
+    }
+
+    @Test
+    void entryIsRemovedOnceItsDeadlinePasses() {
+        cache.put("a", "value-a", clock.instant().plusSeconds(5));
+
+        clock.advance(Duration.ofSeconds(4));
+        assertThat(cache.advance(clock.instant())).isZero();
+        assertThat(cache.size()).isEqualTo(1);
+
+        clock.advance(Duration.ofSeconds(2));
+        assertThat(cache.advance(clock.instant())).isEqualTo(1);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void entriesExpireIndependently() {
+        cache.put("short", "s", clock.instant().plusSeconds(2));
+        cache.put("long", "l", clock.instant().plusSeconds(10));
+
+        clock.advance(Duration.ofSeconds(3));
+        cache.advance(clock.instant());
+
+        assertThat(cache.get("short")).isNull();
+        assertThat(cache.get("long")).isEqualTo("l");
+    }
+
+    @Test
+    void deadlineBeyondOneRevolution_survivesEarlierSweeps() {
+        cache.put("far", "f", clock.instant().plusSeconds(40)); // wheel spans 16 ticks
+
+        for (int i = 0; i < 39; i++) {
+            clock.advance(TICK);
+            cache.advance(clock.instant());
+        }
+        assertThat(cache.get("far")).isEqualTo("f");
+
+        clock.advance(Duration.ofSeconds(2));
+        assertThat(cache.advance(clock.instant())).isEqualTo(1);
+    }
+
+    @Test
+    void longPauseBetweenTicks_stillExpiresEverything() {
+        for (int i = 0; i < 100; i++) {
+            cache.put("k" + i, "v", clock.instant().plusSeconds(i % 30));
+        }
+
+        clock.advance(Duration.ofMinutes(5));
+
+        assertThat(cache.advance(clock.instant())).isEqualTo(100);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void getNeverReturnsExpiredEntryBeforeSweep() {
+        cache.put("a", "value-a", clock.instant().plusSeconds(1));
+
+        clock.advance(Duration.ofSeconds(2));
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.remove("a")).isNull();
+    }
+
+    @Test
+    void removeIsOneShot() {
+        cache.put("a", "value-a", clock.instant().plusSeconds(5));
+
+        assertThat(cache.remove("a")).isEqualTo("value-a");
+        assertThat(cache.remove("a")).isNull();
+    }
+
+    @Test
+    void updateKeepsDeadline() {
+        cache.put("a", "v1", clock.instant().plusSeconds(5));
+
+        assertThat(cache.update("a", v -> v + "-updated")).isEqualTo("v1-updated");
+
+        clock.advance(Duration.ofSeconds(6));
+        assertThat(cache.advance(clock.instant())).isEqualTo(1);
+        assertThat(cache.update("a", v -> v)).isNull();
+    }
+
+    @Test
+    void replacedEntryUsesNewDeadline() {
+        cache.put("a", "old", clock.instant().plusSeconds(2));
+        cache.put("a", "new", clock.instant().plusSeconds(10));
+
+        clock.advance(Duration.ofSeconds(3));
+        assertThat(cache.advance(clock.instant())).isZero();
+        assertThat(cache.get("a")).isEqualTo("new");
+    }
+
+    @Test
+    void capacityIsHardCapped_evictingSoonestExpiring() {
+        TimingWheelCache<String, String> small = new TimingWheelCache<>(TICK, 16, 3, clock);
+        small.put("expires-first", "1", clock.instant().plusSeconds(2));
+        small.put("b", "2", clock.instant().plusSeconds(8));
+        small.put("c", "3", clock.instant().plusSeconds(9));
+
+        small.put("d", "4", clock.instant().plusSeconds(10));
+
+        assertThat(small.size()).isEqualTo(3);
+        assertThat(small.get("expires-first")).isNull();
+        assertThat(small.get("d")).isEqualTo("4");
+    }
+
+    @Test
+    void eviction_skipsEntriesParkedForALaterRound() {
+        TimingWheelCache<String, String> small = new TimingWheelCache<>(TICK, 16, 2, clock);
+        // Parked in the bucket for tick +9, two revolutions early
+        small.put("far", "f", clock.instant().plusSeconds(40));
+        small.put("near", "n", clock.instant().plusSeconds(12));
+
+        small.put("new", "x", clock.instant().plusSeconds(20));
+
+        assertThat(small.get("near")).isNull();
+        assertThat(small.get("far")).isEqualTo("f");
+        assertThat(small.get("new")).isEqualTo("x");
+    }
+
+    @Test
+    void eviction_findsEntriesFiledBeforeThePreviousEviction() {
+        TimingWheelCache<String, String> small = new TimingWheelCache<>(TICK, 16, 2, clock);
+        small.put("a", "1", clock.instant().plusSeconds(10));
+        small.put("b", "2", clock.instant().plusSeconds(12));
+        small.put("c", "3", clock.instant().plusSeconds(14));
+        assertThat(small.get("a")).isNull();
+
+        // Due before the bucket the previous eviction stopped at
+        small.put("d", "4", clock.instant().plusSeconds(3));
+        small.put("e", "5", clock.instant().plusSeconds(15));
+
+        assertThat(small.get("b")).isNull();
+        assertThat(small.get("d")).isNull();
+        assertThat(small.get("c")).isEqualTo("3");
+        assertThat(small.get("e")).isEqualTo("5");
+    }
+
+    @Test
+    void eviction_fallsBackToLaterRoundsWhenNothingIsDueWithinARevolution() {
+        TimingWheelCache<String, String> small = new TimingWheelCache<>(TICK, 16, 2, clock);
+        small.put("later", "l", clock.instant().plusSeconds(100));
+        small.put("sooner", "s", clock.instant().plusSeconds(40));
+
+        small.put("new", "x", clock.instant().plusSeconds(200));
+
+        assertThat(small.get("sooner")).isNull();
+        assertThat(small.get("later")).isEqualTo("l");
+        assertThat(small.size()).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentPutsAtCapacity_neverExceedTheCap() throws Exception {
+        int cap = 64;
+        TimingWheelCache<String, String> small = new TimingWheelCache<>(TICK, 16, cap, clock);
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger maxSeen = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 2_000; i++) {
+                    small.put(thread + "-" + i, "v", clock.instant().plusSeconds(1 + i % 30));
+                    maxSeen.accumulateAndGet(small.size(), Math::max);
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertThat(maxSeen.get()).isLessThanOrEqualTo(cap);
+        assertThat(small.size()).isEqualTo(cap);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}